@@ -0,0 +1,82 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.bosonshiggs.discordinventor.fake.Payloads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of handing events from the socket thread to the UI thread through
+ * {@link GatewayDispatcher}. The benchmark thread plays the socket thread and the stub main looper
+ * plays the UI thread; an operation ends when the UI side has received the event.
+ *
+ * The BLOCK policy is used so no event is lost and every run delivers the same number of events.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GatewayDispatcherBenchmark {
+
+    private static final int EVENTS = 10000;
+
+    @Param({"1", "50"})
+    public int maxEventsPerFrame;
+
+    @Param({"100", "1000"})
+    public int capacity;
+
+    private GatewayDispatcher<String> dispatcher;
+    private volatile CountDownLatch delivered;
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        dispatcher = new GatewayDispatcher<>(new Handler(Looper.getMainLooper()),
+            new GatewayDispatcher.Listener<String>() {
+                @Override
+                public void onEvent(String type, String event) {
+                    delivered.countDown();
+                }
+            });
+        dispatcher.setOverflowPolicy(GatewayDispatcher.OverflowPolicy.BLOCK);
+        dispatcher.setCapacity(capacity);
+        dispatcher.setMaxEventsPerFrame(maxEventsPerFrame);
+        payload = Payloads.messageCreate(1100000000000002001L, 1200000000000000000L, "hello");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.clear();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void offerAndDeliver() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(EVENTS);
+        delivered = latch;
+        for (int i = 0; i < EVENTS; i++) {
+            dispatcher.offer("MESSAGE_CREATE", payload, System.nanoTime());
+        }
+        latch.await();
+    }
+}
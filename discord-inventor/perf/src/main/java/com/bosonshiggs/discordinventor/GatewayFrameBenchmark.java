@@ -0,0 +1,100 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import com.bosonshiggs.discordinventor.fake.Payloads;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of deciding what to do with a Gateway frame, on a stream where most frames are noise
+ * (typing and presence updates) that the default filter throws away.
+ *
+ * {@code peekAndFilter} is what {@link GatewayConnection} does for every frame: read the envelope
+ * with {@link GatewayFrames#peek}, ask the filter, and parse only frames that pass.
+ * {@code parseAndFilter} is the baseline of parsing every frame before looking at its type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GatewayFrameBenchmark {
+
+    private static final int FRAMES = 100;
+    private static final long CHANNEL_ID = 1100000000000002001L;
+
+    private String[] frames;
+    private GatewayEventFilter filter;
+
+    @Setup
+    public void setUp() {
+        frames = new String[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            int sequence = i + 1;
+            switch (i % 10) {
+                case 0:
+                case 1:
+                    frames[i] = Payloads.dispatchFrame("MESSAGE_CREATE", sequence,
+                        Payloads.messageCreate(CHANNEL_ID, 1200000000000000000L + i, "hello world " + i));
+                    break;
+                case 2:
+                case 3:
+                case 4:
+                    frames[i] = Payloads.dispatchFrame("TYPING_START", sequence, Payloads.typingStart(CHANNEL_ID));
+                    break;
+                default:
+                    frames[i] = Payloads.dispatchFrame("PRESENCE_UPDATE", sequence,
+                        Payloads.presenceUpdate(300000000000000000L + i));
+                    break;
+            }
+        }
+        filter = new GatewayEventFilter();
+        filter.setDenied(new HashSet<>(Arrays.asList("PRESENCE_UPDATE", "TYPING_START")));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void peekHeader(Blackhole blackhole) {
+        for (String frame : frames) {
+            blackhole.consume(GatewayFrames.peek(frame));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void peekAndFilter(Blackhole blackhole) {
+        for (String frame : frames) {
+            GatewayFrames.Header header = GatewayFrames.peek(frame);
+            if (filter.accept(header.type)) {
+                blackhole.consume(new JSONObject(frame).optJSONObject("d"));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void parseAndFilter(Blackhole blackhole) {
+        for (String frame : frames) {
+            JSONObject json = new JSONObject(frame);
+            if (filter.accept(json.optString("t"))) {
+                blackhole.consume(json.optJSONObject("d"));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.bosonshiggs.discordinventor.fake.FakeDiscord;
+import com.bosonshiggs.discordinventor.fake.GatewayRecording;
+import com.bosonshiggs.discordinventor.fake.Payloads;
+import com.google.appinventor.components.runtime.Component;
+import com.google.appinventor.components.runtime.EventDispatcher;
+import com.google.appinventor.components.runtime.Form;
+
+/**
+ * Soak test of the whole extension against {@link FakeDiscord}: a {@link DiscordEvents} component
+ * monitors the fake Gateway while it replays a synthetic event stream, and optionally a
+ * {@link DiscordText} component sends messages to the fake REST API at the same time. Prints one
+ * line per second with what was sent, what reached the app, and what the dispatcher saw.
+ *
+ * <pre>
+ * --rate N        Gateway events per second (default 5000, 0 for unpaced)
+ * --seconds N     how long to run (default 30)
+ * --rest-rate N   SendMessage calls per second (default 0)
+ * --compress B    zlib-stream transport compression (default false)
+ * --bucket-limit N/MS and --global-limit N as for FakeDiscord
+ * </pre>
+ */
+public final class GatewaySoak {
+
+    private GatewaySoak() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new TreeMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        double rate = Double.parseDouble(option(options, "rate", "5000"));
+        int seconds = Integer.parseInt(option(options, "seconds", "30"));
+        double restRate = Double.parseDouble(option(options, "rest-rate", "0"));
+
+        FakeDiscord fake = FakeDiscord.start();
+        String[] bucket = option(options, "bucket-limit", "5/5000").split("/");
+        fake.rest().setBucketLimit(Integer.parseInt(bucket[0]), bucket.length > 1 ? Long.parseLong(bucket[1]) : 1000);
+        fake.rest().setGlobalLimit(Integer.parseInt(option(options, "global-limit", "50")));
+
+        final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+        final AtomicReference<String> lastError = new AtomicReference<>();
+        EventDispatcher.setSink(new EventDispatcher.Sink() {
+            @Override
+            public void onEvent(Component component, String eventName, Object... eventArgs) {
+                String key = component.getClass().getSimpleName() + "." + eventName;
+                AtomicLong count = counts.get(key);
+                if (count == null) {
+                    counts.putIfAbsent(key, new AtomicLong());
+                    count = counts.get(key);
+                }
+                count.incrementAndGet();
+                if ("Error".equals(eventName)) {
+                    lastError.set(String.valueOf(eventArgs[eventArgs.length - 1]));
+                }
+            }
+        });
+
+        Form form = new Form();
+        final Handler ui = new Handler(Looper.getMainLooper());
+        final DiscordEvents events = onUiThread(ui, () -> {
+            DiscordEvents component = new DiscordEvents(form);
+            component.BotToken("soak-token");
+            component.ApiBaseUrl(fake.getApiBaseUrl());
+            component.GatewayUrl(fake.getGatewayUrl());
+            component.UseCompression(Boolean.parseBoolean(option(options, "compress", "false")));
+            component.StartMonitoring("soak");
+            return component;
+        });
+        final DiscordText text = onUiThread(ui, () -> {
+            DiscordText component = new DiscordText(form);
+            component.ApiBaseUrl(fake.getApiBaseUrl());
+            return component;
+        });
+
+        while (fake.gateway().getConnectedSessions() == 0) {
+            Thread.sleep(50);
+        }
+        GatewayRecording recording = GatewayRecording.synthetic(100000, 20, 1);
+        fake.gateway().replay(recording, rate, 0);
+
+        ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+        if (restRate > 0) {
+            final AtomicLong sent = new AtomicLong();
+            final String channelId = String.valueOf(Payloads.GUILD_ID + 2000);
+            sender.scheduleAtFixedRate(() -> ui.post(() -> text.SendMessage(String.valueOf(Payloads.GUILD_ID),
+                    channelId, "soak " + sent.incrementAndGet(), "soak", 0)),
+                0, Math.max(1, (long) (1000000 / restRate)), TimeUnit.MICROSECONDS);
+        }
+
+        long lastFrames = 0;
+        long lastDelivered = 0;
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000);
+            long frames = fake.gateway().getFramesSent();
+            long delivered = count(counts, "DiscordEvents.DiscordEvent") + count(counts, "DiscordEvents.EventReceived");
+            Map<?, ?> metrics = onUiThread(ui, () -> events.GetDispatcherMetrics());
+            System.out.println(second + "s  sent/s " + (frames - lastFrames) + "  delivered/s " + (delivered - lastDelivered)
+                + "  dispatcher " + metrics
+                + "  rest " + fake.rest().getRequestCount() + " (429: " + fake.rest().getRateLimitedCount() + ")"
+                + "  responses " + count(counts, "DiscordText.Response")
+                + "  errors " + (count(counts, "DiscordEvents.Error") + count(counts, "DiscordText.Error"))
+                + (lastError.get() != null ? " (last: " + lastError.getAndSet(null) + ")" : ""));
+            lastFrames = frames;
+            lastDelivered = delivered;
+        }
+
+        sender.shutdownNow();
+        if (restRate > 0) {
+            System.out.println("request metrics " + onUiThread(ui, () -> text.GetMetrics()));
+        }
+        onUiThread(ui, () -> {
+            events.StopMonitoring("soak");
+            return null;
+        });
+        fake.stop();
+        System.exit(0);
+    }
+
+    private interface UiCall<T> {
+        T call() throws Exception;
+    }
+
+    /** Components are created and called on the UI thread, as in an app. */
+    private static <T> T onUiThread(Handler ui, UiCall<T> call) throws Exception {
+        final Object[] result = new Object[1];
+        final Exception[] failure = new Exception[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        ui.post(() -> {
+            try {
+                result[0] = call.call();
+            } catch (Exception e) {
+                failure[0] = e;
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    private static long count(Map<String, AtomicLong> counts, String key) {
+        AtomicLong count = counts.get(key);
+        return count != null ? count.get() : 0;
+    }
+
+    private static String option(Map<String, String> options, String name, String fallback) {
+        String value = options.get(name);
+        return value != null ? value : fallback;
+    }
+}
@@ -0,0 +1,65 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.appinventor.components.runtime.util.YailList;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building and serializing the request bodies of {@link DiscordInteractions}, the part of each
+ * block that runs on the UI thread before the request is queued.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InteractionPayloadBenchmark {
+
+    private YailList options;
+    private YailList inputs;
+
+    @Setup
+    public void setUp() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            values.add("Option " + i);
+        }
+        options = YailList.makeList(values);
+        inputs = YailList.makeList(new Object[] {"name", "email", "age", "city", "comment"});
+    }
+
+    @Benchmark
+    public String buttonMessage() throws JSONException {
+        return DiscordInteractions.buttonMessage("Pick one", "Click me", "button_1", "1", true).toString();
+    }
+
+    @Benchmark
+    public String dropdownMessage() throws JSONException {
+        return DiscordInteractions.dropdownMessage("Choose", options, "select_1").toString();
+    }
+
+    @Benchmark
+    public String modalResponse() throws JSONException {
+        return DiscordInteractions.modalResponse("Sign up", "modal_1", inputs).toString();
+    }
+
+    @Benchmark
+    public String interactionResponse() throws JSONException {
+        return DiscordInteractions.interactionResponse("Thanks!", false).toString();
+    }
+}
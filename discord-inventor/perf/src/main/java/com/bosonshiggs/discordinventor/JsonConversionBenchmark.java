@@ -0,0 +1,56 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.concurrent.TimeUnit;
+
+import com.bosonshiggs.discordinventor.fake.Payloads;
+
+import com.google.appinventor.components.runtime.Form;
+import com.google.appinventor.components.runtime.util.YailDictionary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParseJsonString on GUILD_CREATE payloads of growing size, against the org.json based version it
+ * replaced ({@link LegacyJsonParser}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonConversionBenchmark {
+
+    @Param({"50", "1000"})
+    public int members;
+
+    private String guildCreate;
+    private DiscordEvents events;
+
+    @Setup
+    public void setUp() {
+        guildCreate = Payloads.guildCreate(Math.max(10, members / 10), 30, members);
+        events = new DiscordEvents(new Form());
+        events.JsonMaxLength(0);
+    }
+
+    @Benchmark
+    public YailDictionary parseJsonString() {
+        return events.ParseJsonString(guildCreate);
+    }
+
+    @Benchmark
+    public YailDictionary legacyParseJsonString() {
+        return LegacyJsonParser.parseJsonString(guildCreate);
+    }
+}
@@ -0,0 +1,40 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Iterator;
+
+import com.google.appinventor.components.runtime.util.YailDictionary;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * ParseJsonString as it was before {@link JsonYailConverter}, kept as the baseline for
+ * {@link JsonConversionBenchmark}: an org.json parse, then one more parse of every nested object's
+ * text.
+ */
+final class LegacyJsonParser {
+
+    private LegacyJsonParser() {
+    }
+
+    static YailDictionary parseJsonString(String jsonString) {
+        try {
+            JSONObject jsonObject = new JSONObject(jsonString);
+            YailDictionary yailDict = new YailDictionary();
+            Iterator<?> keys = jsonObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next().toString();
+                Object value = jsonObject.get(key);
+                if (value instanceof JSONObject) {
+                    value = parseJsonString(value.toString());
+                }
+                yailDict.put(key, value);
+            }
+            return yailDict;
+        } catch (JSONException e) {
+            YailDictionary errorDict = new YailDictionary();
+            errorDict.put("error", e.getMessage());
+            return errorDict;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.bosonshiggs.discordinventor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.appinventor.components.runtime.Form;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A request through {@link DiscordRequestHelper} against a local HTTP server that answers at once,
+ * so what is measured is the helper itself: queueing, rate limit bookkeeping, the connection, the
+ * response read and the hop back to the UI thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestDispatchBenchmark {
+
+    private static final int BURST = 64;
+    private static final int CHANNELS = 8;
+    private static final byte[] MESSAGE = ("{\"id\":\"1200000000000000000\",\"channel_id\":\"1100000000000002001\""
+        + ",\"content\":\"hello\",\"author\":{\"id\":\"300000000000000000\",\"username\":\"bot\"}}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private DiscordRequestHelper requestHelper;
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Without this the JDK server's separate header and body writes meet delayed ACKs and
+        // every response takes ~40 ms, which would drown out the client.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try (InputStream in = exchange.getRequestBody()) {
+                    byte[] buffer = new byte[4096];
+                    while (in.read(buffer) >= 0) {
+                        // Drain the request so the connection can be reused.
+                    }
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, MESSAGE.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(MESSAGE);
+                }
+            }
+        });
+        server.start();
+
+        DiscordRequestHelper.setMaxConcurrentRequests(8);
+
+        Form form = new Form();
+        TokenManager tokenManager = new TokenManager();
+        tokenManager.setBotToken(form, "benchmark-token");
+        requestHelper = new DiscordRequestHelper(tokenManager, new Handler(Looper.getMainLooper()), form);
+        requestHelper.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        // Discord's 50 requests per second would otherwise be all this measures.
+        requestHelper.getRateLimiter().setGlobalRequestsPerSecond(Integer.MAX_VALUE);
+        body = "{\"content\":\"hello\"}";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        requestHelper.getRateLimiter().setGlobalRequestsPerSecond(DiscordRateLimiter.GLOBAL_REQUESTS_PER_SECOND);
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void singleRequest() throws InterruptedException {
+        send(1, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burstAcrossChannels() throws InterruptedException {
+        send(BURST, CHANNELS);
+    }
+
+    private void send(int requests, int channels) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        DiscordRequestHelper.ResultCallback callback = new DiscordRequestHelper.ResultCallback() {
+            @Override
+            public void onResult(String tag, DiscordResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String tag, String error) {
+                failure.compareAndSet(null, error);
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < requests; i++) {
+            String endpoint = "/channels/" + (1100000000000002001L + i % channels) + "/messages";
+            requestHelper.makeRequestWithBody(endpoint, "POST", "bench", body, null, callback);
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException(failure.get());
+        }
+    }
+}
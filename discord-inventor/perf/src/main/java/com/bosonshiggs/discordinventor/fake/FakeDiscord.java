@@ -0,0 +1,146 @@
+package com.bosonshiggs.discordinventor.fake;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A fake Discord made of a {@link FakeRestServer} and a {@link FakeGatewayServer}, seeded with one
+ * guild ({@link Payloads#GUILD_ID}) and wired so that GET /gateway/bot points at the fake Gateway.
+ *
+ * Embed it in a test or benchmark with {@link #start}, then point the components at it:
+ * ApiBaseUrl = {@link #getApiBaseUrl()} and GatewayUrl = {@link #getGatewayUrl()}. Run
+ * {@link #main} to serve a phone or emulator instead, through adb reverse: the components only
+ * send the bot token over plain http/ws to 127.0.0.1.
+ */
+public final class FakeDiscord {
+
+    private final FakeRestServer rest;
+    private final FakeGatewayServer gateway;
+    private final String advertisedHost;
+
+    private FakeDiscord(FakeRestServer rest, FakeGatewayServer gateway, String advertisedHost) {
+        this.rest = rest;
+        this.gateway = gateway;
+        this.advertisedHost = advertisedHost;
+    }
+
+    /**
+     * Starts both servers on free ports of the loopback interface.
+     */
+    public static FakeDiscord start() throws IOException, InterruptedException {
+        return start("127.0.0.1", "127.0.0.1", 0, 0);
+    }
+
+    /**
+     * @param bindHost       interface to listen on, e.g. "0.0.0.0" to serve other devices
+     * @param advertisedHost host name clients use to reach this machine
+     * @param restPort       0 for any free port
+     * @param gatewayPort    0 for any free port
+     */
+    public static FakeDiscord start(String bindHost, String advertisedHost, int restPort, int gatewayPort)
+            throws IOException, InterruptedException {
+        FakeGatewayServer gateway = new FakeGatewayServer(bindHost, gatewayPort);
+        gateway.setAdvertisedHost(advertisedHost);
+        gateway.setGuildCreate(Payloads.guildCreate(20, 10, 100));
+        gateway.startAndWait();
+
+        FakeRestServer rest = new FakeRestServer(bindHost, restPort);
+        rest.seedGuild(Payloads.GUILD_ID, 20, 10, 100, 250, 120);
+        rest.setGateway("ws://" + advertisedHost + ":" + gateway.getPort(), 1);
+        rest.start();
+        return new FakeDiscord(rest, gateway, advertisedHost);
+    }
+
+    public FakeRestServer rest() {
+        return rest;
+    }
+
+    public FakeGatewayServer gateway() {
+        return gateway;
+    }
+
+    public String getApiBaseUrl() {
+        return rest.getBaseUrl(advertisedHost);
+    }
+
+    public String getGatewayUrl() {
+        return gateway.getGatewayUrl();
+    }
+
+    public void stop() throws InterruptedException {
+        gateway.shutdown();
+        rest.stop();
+    }
+
+    /**
+     * Serves a fake Discord until killed.
+     *
+     * <pre>
+     * --bind HOST            interface to listen on (default 0.0.0.0)
+     * --advertise HOST       host name the app uses to reach this machine (default 127.0.0.1)
+     * --rest-port N          REST port (default 8080)
+     * --gateway-port N       Gateway port (default 8081)
+     * --bucket-limit N/MS    requests per bucket and window (default 5/5000, 0 for none)
+     * --global-limit N       requests per second across all routes (default 50, 0 for none)
+     * --replay FILE          JSON lines recording to replay once a client has identified
+     * --synthetic N          replay N generated events instead of a file
+     * --rate N               events per second for the replay (default 1000, 0 for unpaced)
+     * --loops N              times to play the recording (default 0, forever)
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new TreeMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        String advertise = option(options, "advertise", "127.0.0.1");
+        FakeDiscord fake = start(option(options, "bind", "0.0.0.0"), advertise,
+            Integer.parseInt(option(options, "rest-port", "8080")),
+            Integer.parseInt(option(options, "gateway-port", "8081")));
+
+        String[] bucket = option(options, "bucket-limit", "5/5000").split("/");
+        fake.rest().setBucketLimit(Integer.parseInt(bucket[0]), bucket.length > 1 ? Long.parseLong(bucket[1]) : 1000);
+        fake.rest().setGlobalLimit(Integer.parseInt(option(options, "global-limit", "50")));
+
+        System.out.println("ApiBaseUrl: " + fake.getApiBaseUrl());
+        System.out.println("GatewayUrl: " + fake.getGatewayUrl());
+
+        GatewayRecording recording = null;
+        if (options.containsKey("replay")) {
+            recording = GatewayRecording.load(new File(options.get("replay")));
+        } else if (options.containsKey("synthetic")) {
+            recording = GatewayRecording.synthetic(Integer.parseInt(options.get("synthetic")), 20, 1);
+        }
+        if (recording != null) {
+            while (fake.gateway().getConnectedSessions() == 0) {
+                Thread.sleep(100);
+            }
+            System.out.println("Replaying " + recording.size() + " events");
+            fake.gateway().replay(recording, Double.parseDouble(option(options, "rate", "1000")),
+                Integer.parseInt(option(options, "loops", "0")));
+        }
+
+        long lastFrames = 0;
+        long lastRequests = 0;
+        while (true) {
+            Thread.sleep(1000);
+            long frames = fake.gateway().getFramesSent();
+            long requests = fake.rest().getRequestCount();
+            System.out.println("frames/s " + (frames - lastFrames) + "  requests/s " + (requests - lastRequests)
+                + "  429s " + fake.rest().getRateLimitedCount() + "  sessions " + fake.gateway().getConnectedSessions());
+            lastFrames = frames;
+            lastRequests = requests;
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String fallback) {
+        String value = options.get(name);
+        return value != null ? value : fallback;
+    }
+}
@@ -0,0 +1,441 @@
+package com.bosonshiggs.discordinventor.fake;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A stand-in for the Discord Gateway speaking the JSON encoding, optionally zlib-stream compressed.
+ *
+ * It greets with HELLO, answers heartbeats, accepts any non-empty token on IDENTIFY with READY
+ * followed by the configured GUILD_CREATE, and honours RESUME by replaying what the session missed
+ * from a bounded backlog. Events are pushed to every identified session with {@link #dispatch} or
+ * replayed from a {@link GatewayRecording} at a fixed rate with {@link #replay}. RECONNECT and
+ * INVALID_SESSION can be sent on demand to exercise the client's recovery.
+ */
+public final class FakeGatewayServer extends WebSocketServer {
+
+    /** Frames kept per session for RESUME. */
+    private static final int BACKLOG = 2000;
+
+    private static final class Session {
+        final String id = UUID.randomUUID().toString().replace("-", "");
+        final ArrayDeque<String> backlog = new ArrayDeque<>();
+        int sequence;
+        int firstBacklogSequence = 1;
+        volatile WebSocket socket;
+    }
+
+    private static final class Connection {
+        final Deflater deflater;
+        volatile Session session;
+
+        Connection(boolean compress) {
+            deflater = compress ? new Deflater() : null;
+        }
+    }
+
+    /** A replay in progress. */
+    public final class Replay {
+        private final GatewayRecording recording;
+        private final double eventsPerSecond;
+        private final int loops;
+        private final Thread thread;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicLong sent = new AtomicLong();
+        private volatile boolean stopped;
+
+        Replay(GatewayRecording recording, double eventsPerSecond, int loops) {
+            this.recording = recording;
+            this.eventsPerSecond = eventsPerSecond;
+            this.loops = loops;
+            this.thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runReplay();
+                }
+            }, "FakeGatewayReplay");
+            thread.setDaemon(true);
+        }
+
+        private void runReplay() {
+            try {
+                List<GatewayRecording.Event> events = recording.getEvents();
+                long start = System.nanoTime();
+                for (int loop = 0; !stopped && (loops <= 0 || loop < loops); loop++) {
+                    for (int i = 0; i < events.size() && !stopped; i++) {
+                        if (eventsPerSecond > 0) {
+                            long due = start + (long) (sent.get() * 1e9 / eventsPerSecond);
+                            long ahead = due - System.nanoTime();
+                            if (ahead > 200000) {
+                                LockSupport.parkNanos(ahead);
+                            }
+                        }
+                        GatewayRecording.Event event = events.get(i);
+                        dispatch(event.type, event.data);
+                        sent.incrementAndGet();
+                    }
+                    if (events.isEmpty()) {
+                        break;
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        public long getSent() {
+            return sent.get();
+        }
+
+        public void stop() {
+            stopped = true;
+        }
+
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+    }
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final List<Replay> replays = new CopyOnWriteArrayList<>();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong identifies = new AtomicLong();
+    private final AtomicLong resumes = new AtomicLong();
+    private volatile long heartbeatIntervalMs = 41250;
+    private volatile String advertisedHost = "127.0.0.1";
+    private volatile String guildCreate;
+
+    /**
+     * @param port 0 for any free port
+     */
+    public FakeGatewayServer(String host, int port) {
+        super(new InetSocketAddress(host, port));
+        setReuseAddr(true);
+    }
+
+    /**
+     * Starts the server and waits until it accepts connections.
+     */
+    public void startAndWait() throws InterruptedException {
+        start();
+        started.await();
+    }
+
+    public void shutdown() throws InterruptedException {
+        for (Replay replay : replays) {
+            replay.stop();
+        }
+        stop(1000);
+    }
+
+    /**
+     * The value for the extension's GatewayUrl property.
+     */
+    public String getGatewayUrl() {
+        return "ws://" + advertisedHost + ":" + getPort() + "/?v=10&encoding=json";
+    }
+
+    /**
+     * Host name clients should use to reach this server, reported as resume_gateway_url.
+     */
+    public void setAdvertisedHost(String host) {
+        advertisedHost = host;
+    }
+
+    public void setHeartbeatInterval(long millis) {
+        heartbeatIntervalMs = millis;
+    }
+
+    /**
+     * Payload of the GUILD_CREATE sent after READY, or null to send none.
+     */
+    public void setGuildCreate(String data) {
+        guildCreate = data;
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getIdentifyCount() {
+        return identifies.get();
+    }
+
+    public long getResumeCount() {
+        return resumes.get();
+    }
+
+    /**
+     * Number of sessions that currently have a socket.
+     */
+    public int getConnectedSessions() {
+        int count = 0;
+        for (Session session : sessions.values()) {
+            if (session.socket != null && session.socket.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sends a DISPATCH event to every identified session.
+     */
+    public void dispatch(String type, String data) {
+        for (Session session : sessions.values()) {
+            sendDispatch(session, type, data);
+        }
+    }
+
+    /**
+     * Replays a recording to every identified session.
+     *
+     * @param eventsPerSecond pace of the replay, or 0 to send as fast as possible
+     * @param loops           how many times to play the recording, or 0 to loop until stopped
+     */
+    public Replay replay(GatewayRecording recording, double eventsPerSecond, int loops) {
+        Replay replay = new Replay(recording, eventsPerSecond, loops);
+        replays.add(replay);
+        replay.thread.start();
+        return replay;
+    }
+
+    /**
+     * Sends RECONNECT (op 7) to every session; clients are expected to resume.
+     */
+    public void requestReconnect() {
+        sendToAll("{\"op\":7,\"d\":null}");
+    }
+
+    /**
+     * Sends INVALID_SESSION (op 9) to every session. Unless resumable, the sessions are forgotten
+     * and clients have to identify again.
+     */
+    public void invalidateSessions(boolean resumable) {
+        sendToAll("{\"op\":9,\"d\":" + resumable + "}");
+        if (!resumable) {
+            sessions.clear();
+        }
+    }
+
+    /**
+     * Drops every socket without a closing handshake, like a network failure.
+     */
+    public void dropConnections() {
+        for (WebSocket socket : getConnections()) {
+            socket.closeConnection(1006, "Dropped by test");
+        }
+    }
+
+    @Override
+    public void onStart() {
+        setConnectionLostTimeout(0);
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket socket, ClientHandshake handshake) {
+        String resource = handshake.getResourceDescriptor();
+        Connection connection = new Connection(resource != null && resource.contains("compress=zlib-stream"));
+        socket.setAttachment(connection);
+        send(socket, "{\"op\":10,\"d\":{\"heartbeat_interval\":" + heartbeatIntervalMs + "}}");
+    }
+
+    @Override
+    public void onMessage(WebSocket socket, String message) {
+        try {
+            JSONObject frame = new JSONObject(message);
+            switch (frame.optInt("op", -1)) {
+                case 1:
+                    send(socket, "{\"op\":11}");
+                    break;
+                case 2:
+                    identify(socket, frame.optJSONObject("d"));
+                    break;
+                case 6:
+                    resume(socket, frame.optJSONObject("d"));
+                    break;
+                default:
+                    break;
+            }
+        } catch (JSONException e) {
+            socket.close(4002, "Decode error");
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket socket, int code, String reason, boolean remote) {
+        Connection connection = socket.getAttachment();
+        if (connection != null) {
+            Session session = connection.session;
+            if (session != null && session.socket == socket) {
+                session.socket = null;
+            }
+            if (connection.deflater != null) {
+                synchronized (connection) {
+                    connection.deflater.end();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onError(WebSocket socket, Exception ex) {
+        if (socket == null) {
+            // Failure to bind; let startAndWait return so the caller sees the closed server.
+            started.countDown();
+        }
+    }
+
+    private void identify(WebSocket socket, JSONObject data) throws JSONException {
+        if (data == null || data.optString("token").isEmpty()) {
+            socket.close(4004, "Authentication failed");
+            return;
+        }
+        identifies.incrementAndGet();
+        Connection connection = socket.getAttachment();
+        Session session = new Session();
+        session.socket = socket;
+        connection.session = session;
+        sessions.put(session.id, session);
+
+        JSONArray shard = data.optJSONArray("shard");
+        JSONObject ready = new JSONObject()
+            .put("v", 10)
+            .put("user", new JSONObject()
+                .put("id", String.valueOf(FakeRestServer.botUserId()))
+                .put("username", "fake-bot")
+                .put("discriminator", "0")
+                .put("bot", true))
+            .put("guilds", new JSONArray().put(new JSONObject()
+                .put("id", String.valueOf(Payloads.GUILD_ID))
+                .put("unavailable", true)))
+            .put("session_id", session.id)
+            .put("resume_gateway_url", "ws://" + advertisedHost + ":" + getPort())
+            .put("application", new JSONObject().put("id", String.valueOf(FakeRestServer.botUserId())));
+        if (shard != null) {
+            ready.put("shard", shard);
+        }
+        sendDispatch(session, "READY", ready.toString());
+        String guild = guildCreate;
+        if (guild != null) {
+            sendDispatch(session, "GUILD_CREATE", guild);
+        }
+    }
+
+    private void resume(WebSocket socket, JSONObject data) {
+        Session session = data != null ? sessions.get(data.optString("session_id")) : null;
+        if (session == null) {
+            send(socket, "{\"op\":9,\"d\":false}");
+            return;
+        }
+        resumes.incrementAndGet();
+        Connection connection = socket.getAttachment();
+        connection.session = session;
+        int seq = data.optInt("seq", 0);
+        synchronized (session) {
+            session.socket = socket;
+            if (seq + 1 < session.firstBacklogSequence) {
+                // Too far behind to replay; Discord would invalidate the session as well.
+                sessions.remove(session.id);
+                send(socket, "{\"op\":9,\"d\":false}");
+                return;
+            }
+            int frameSequence = session.firstBacklogSequence;
+            for (String frame : session.backlog) {
+                if (frameSequence > seq) {
+                    send(socket, frame);
+                }
+                frameSequence++;
+            }
+            session.sequence++;
+            String resumed = "{\"t\":\"RESUMED\",\"s\":" + session.sequence + ",\"op\":0,\"d\":{}}";
+            remember(session, resumed);
+            send(socket, resumed);
+        }
+    }
+
+    private void sendDispatch(Session session, String type, String data) {
+        synchronized (session) {
+            session.sequence++;
+            String frame = "{\"t\":\"" + type + "\",\"s\":" + session.sequence + ",\"op\":0,\"d\":" + data + "}";
+            remember(session, frame);
+            WebSocket socket = session.socket;
+            if (socket != null && socket.isOpen()) {
+                send(socket, frame);
+            }
+        }
+    }
+
+    private static void remember(Session session, String frame) {
+        session.backlog.addLast(frame);
+        if (session.backlog.size() > BACKLOG) {
+            session.backlog.removeFirst();
+            session.firstBacklogSequence++;
+        }
+    }
+
+    private void sendToAll(String frame) {
+        List<WebSocket> sockets = new ArrayList<>(getConnections());
+        for (Iterator<WebSocket> it = sockets.iterator(); it.hasNext(); ) {
+            send(it.next(), frame);
+        }
+    }
+
+    private void send(WebSocket socket, String frame) {
+        if (!socket.isOpen()) {
+            return;
+        }
+        Connection connection = socket.getAttachment();
+        try {
+            if (connection != null && connection.deflater != null) {
+                synchronized (connection) {
+                    socket.send(deflate(connection.deflater, frame.getBytes(StandardCharsets.UTF_8)));
+                }
+            } else {
+                socket.send(frame);
+            }
+            framesSent.incrementAndGet();
+        } catch (RuntimeException e) {
+            // The socket closed between the check and the send.
+        }
+    }
+
+    /**
+     * Compresses one frame into the shared zlib stream, ending with the sync flush marker the
+     * client looks for.
+     */
+    private static byte[] deflate(Deflater deflater, byte[] input) {
+        deflater.setInput(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            out.write(buffer, 0, count);
+        } while (count == buffer.length);
+        return out.toByteArray();
+    }
+}
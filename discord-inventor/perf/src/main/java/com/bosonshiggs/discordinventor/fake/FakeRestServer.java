@@ -0,0 +1,930 @@
+package com.bosonshiggs.discordinventor.fake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bosonshiggs.discordinventor.DiscordRoute;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An in-memory stand-in for the Discord REST API under {@code /api/v10}.
+ *
+ * It serves the routes the extension's components call, keeps what they create (messages,
+ * threads, bans, roles) so later reads see it, and answers with Discord's rate limit headers.
+ * Every bucket allows {@link #setBucketLimit} requests per window and returns a 429 with
+ * retry_after beyond that; a global per-second limit applies on top. 429s can also be scripted
+ * for the next requests to a path with {@link #script429}.
+ *
+ * Requests must carry an {@code Authorization: Bot ...} header; any token is accepted.
+ */
+public final class FakeRestServer {
+
+    public static final String API_PREFIX = "/api/v10";
+
+    private static final long DISCORD_EPOCH = 1420070400000L;
+    private static final long BULK_DELETE_MAX_AGE_MS = 14L * 24 * 60 * 60 * 1000;
+
+    /** A fixed window of requests for one bucket. */
+    private static final class Window {
+        long start;
+        int count;
+    }
+
+    private static final class Scripted429 {
+        final String method;
+        final String pathPrefix;
+        final long retryAfterMs;
+        final boolean global;
+        int remaining;
+
+        Scripted429(String method, String pathPrefix, int times, long retryAfterMs, boolean global) {
+            this.method = method;
+            this.pathPrefix = pathPrefix;
+            this.remaining = times;
+            this.retryAfterMs = retryAfterMs;
+            this.global = global;
+        }
+    }
+
+    /** Response of a route handler. */
+    private static final class Reply {
+        final int status;
+        final String body;
+
+        Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static final Reply NO_CONTENT = new Reply(204, null);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile String gatewayUrl = "ws://127.0.0.1/";
+    private volatile int gatewayShards = 1;
+
+    private volatile int bucketLimit = 5;
+    private volatile long bucketWindowMs = 5000;
+    private volatile int globalLimit = 50;
+    private volatile long latencyMs;
+    private final Map<String, Window> windows = new HashMap<>();
+    private final Window globalWindow = new Window();
+    private final ConcurrentLinkedQueue<Scripted429> scripted = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> routeCounts = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Long, JSONObject> guilds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, JSONObject> channels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ConcurrentSkipListMap<Long, JSONObject>> messages = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ConcurrentSkipListMap<Long, JSONObject>> members = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ConcurrentSkipListMap<Long, JSONObject>> bans = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ConcurrentSkipListMap<Long, JSONObject>> auditLogs = new ConcurrentHashMap<>();
+
+    /**
+     * Binds the server; call {@link #start()} to begin serving.
+     *
+     * @param port 0 for any free port
+     */
+    public FakeRestServer(String host, int port) throws IOException {
+        // Without this the separate header and body writes meet delayed ACKs and every response
+        // takes ~40 ms. The property is read when the first server is created.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(host, port), 256);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(API_PREFIX, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * The value for the extension's ApiBaseUrl property, as seen from {@code host}.
+     */
+    public String getBaseUrl(String host) {
+        return "http://" + host + ":" + getPort() + API_PREFIX;
+    }
+
+    /**
+     * What GET /gateway/bot reports.
+     */
+    public void setGateway(String url, int shards) {
+        gatewayUrl = url;
+        gatewayShards = Math.max(1, shards);
+    }
+
+    /**
+     * Requests allowed per bucket and window; 0 turns per-bucket limits off. Discord's message
+     * routes allow about 5 per 5 seconds.
+     */
+    public synchronized void setBucketLimit(int requests, long windowMs) {
+        bucketLimit = Math.max(0, requests);
+        bucketWindowMs = Math.max(1, windowMs);
+        windows.clear();
+    }
+
+    /**
+     * Requests allowed per second across all routes; 0 turns the global limit off.
+     */
+    public void setGlobalLimit(int requestsPerSecond) {
+        globalLimit = Math.max(0, requestsPerSecond);
+    }
+
+    /**
+     * Delay added before every response.
+     */
+    public void setLatency(long millis) {
+        latencyMs = Math.max(0, millis);
+    }
+
+    /**
+     * Makes the next {@code times} requests whose path starts with {@code pathPrefix} (relative to
+     * /api/v10, e.g. "/channels/123/messages") fail with a 429.
+     *
+     * @param method HTTP method to match, or null for any
+     */
+    public void script429(String method, String pathPrefix, int times, long retryAfterMs, boolean global) {
+        scripted.add(new Scripted429(method, pathPrefix, times, retryAfterMs, global));
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    /**
+     * Requests served per route template, e.g. "POST /channels/{channel_id}/messages".
+     */
+    public Map<String, Long> getRouteCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : routeCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public synchronized void resetCounters() {
+        requests.set(0);
+        rateLimited.set(0);
+        routeCounts.clear();
+    }
+
+    // ---- Seeding -------------------------------------------------------------------------
+
+    /**
+     * Creates a guild with an @everyone role plus {@code roles} more, text channels, members, bans
+     * and audit log entries. The bot user is the first member and owns the guild.
+     */
+    public synchronized void seedGuild(long guildId, int channelCount, int roleCount, int memberCount,
+                                       int banCount, int auditLogCount) {
+        try {
+            JSONArray roleArray = new JSONArray();
+            roleArray.put(role(guildId, "@everyone", 0, 0x0000000000000400L | 0x0000000000000800L | 0x0000000000010000L));
+            for (int i = 1; i <= roleCount; i++) {
+                roleArray.put(role(guildId + i, "role-" + i, i, 0));
+            }
+            JSONObject guild = new JSONObject();
+            guild.put("id", String.valueOf(guildId));
+            guild.put("name", "Fake Guild " + guildId);
+            guild.put("owner_id", String.valueOf(botUserId()));
+            guild.put("roles", roleArray);
+            guild.put("features", new JSONArray());
+            guilds.put(guildId, guild);
+
+            for (int i = 0; i < channelCount; i++) {
+                JSONObject channel = new JSONObject();
+                channel.put("id", String.valueOf(guildId + 1000 + i));
+                channel.put("type", 0);
+                channel.put("guild_id", String.valueOf(guildId));
+                channel.put("name", "channel-" + i);
+                channel.put("position", i);
+                channel.put("permission_overwrites", new JSONArray());
+                channels.put(guildId + 1000 + i, channel);
+            }
+
+            ConcurrentSkipListMap<Long, JSONObject> guildMembers = mapFor(members, guildId);
+            for (int i = 0; i < memberCount; i++) {
+                long userId = i == 0 ? botUserId() : 300000000000000000L + i;
+                guildMembers.put(userId, member(userId, new JSONArray()));
+            }
+
+            ConcurrentSkipListMap<Long, JSONObject> guildBans = mapFor(bans, guildId);
+            for (int i = 0; i < banCount; i++) {
+                long userId = 400000000000000000L + i;
+                guildBans.put(userId, new JSONObject().put("reason", "Seeded ban " + i).put("user", user(userId)));
+            }
+
+            ConcurrentSkipListMap<Long, JSONObject> entries = mapFor(auditLogs, guildId);
+            for (int i = 0; i < auditLogCount; i++) {
+                long entryId = nextId();
+                entries.put(entryId, new JSONObject()
+                    .put("id", String.valueOf(entryId))
+                    .put("action_type", i % 2 == 0 ? 22 : 25)
+                    .put("user_id", String.valueOf(botUserId()))
+                    .put("target_id", String.valueOf(400000000000000000L + i)));
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds {@code count} messages to a channel, the newest {@code ageMillis} old and each earlier
+     * one a second older.
+     *
+     * @return the IDs of the new messages, oldest first
+     */
+    public List<Long> seedMessages(long channelId, int count, long ageMillis) {
+        long newest = System.currentTimeMillis() - ageMillis;
+        ConcurrentSkipListMap<Long, JSONObject> channelMessages = mapFor(messages, channelId);
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            long id = snowflakeAt(newest - i * 1000L);
+            channelMessages.put(id, message(id, channelId, "Seeded message " + (count - i)));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    public static long botUserId() {
+        return 200000000000000001L;
+    }
+
+    // ---- Serving -------------------------------------------------------------------------
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String method = exchange.getRequestMethod();
+            String rawPath = exchange.getRequestURI().getRawPath().substring(API_PREFIX.length());
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] requestBody = readAll(exchange.getRequestBody());
+
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            if (auth == null || !auth.startsWith("Bot ") || auth.length() <= 4) {
+                send(exchange, new Reply(401, error("401: Unauthorized", 0)));
+                return;
+            }
+
+            DiscordRoute route = DiscordRoute.of(method, rawPath);
+            String routeKey = route.routeKey();
+            count(routeKey);
+
+            if (rateLimit(exchange, method, rawPath, route)) {
+                return;
+            }
+
+            Reply reply;
+            try {
+                String body = new String(requestBody, StandardCharsets.UTF_8);
+                reply = route(method, rawPath.split("/"), query, body.isEmpty() ? null : new JSONObject(body));
+            } catch (JSONException | NumberFormatException e) {
+                reply = new Reply(400, error("400: Bad Request - " + e.getMessage(), 50035));
+            }
+            send(exchange, reply);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (RuntimeException e) {
+            send(exchange, new Reply(500, error("500: " + e, 0)));
+        }
+    }
+
+    /**
+     * Adds the bucket headers and answers with a 429 when a limit is hit.
+     *
+     * @return true if the request was rejected
+     */
+    private boolean rateLimit(HttpExchange exchange, String method, String path, DiscordRoute route) throws IOException {
+        long now = System.currentTimeMillis();
+
+        Scripted429 script = takeScripted(method, path);
+        if (script != null) {
+            reject(exchange, script.retryAfterMs, script.global);
+            return true;
+        }
+
+        long globalRetryAfter = 0;
+        synchronized (this) {
+            int global = globalLimit;
+            if (global > 0) {
+                if (now - globalWindow.start >= 1000) {
+                    globalWindow.start = now;
+                    globalWindow.count = 0;
+                }
+                if (globalWindow.count >= global) {
+                    globalRetryAfter = globalWindow.start + 1000 - now;
+                } else {
+                    globalWindow.count++;
+                }
+            }
+        }
+        if (globalRetryAfter > 0) {
+            reject(exchange, globalRetryAfter, true);
+            return true;
+        }
+
+        int limit = bucketLimit;
+        if (limit <= 0) {
+            return false;
+        }
+        String hash = Integer.toHexString(route.routeKey().hashCode());
+        long resetAfter;
+        int remaining;
+        synchronized (this) {
+            String key = hash + ":" + route.majorParameter;
+            Window window = windows.get(key);
+            if (window == null) {
+                window = new Window();
+                windows.put(key, window);
+            }
+            if (now - window.start >= bucketWindowMs) {
+                window.start = now;
+                window.count = 0;
+            }
+            resetAfter = window.start + bucketWindowMs - now;
+            if (window.count >= limit) {
+                remaining = -1;
+            } else {
+                window.count++;
+                remaining = limit - window.count;
+            }
+        }
+
+        exchange.getResponseHeaders().set("X-RateLimit-Limit", String.valueOf(limit));
+        exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(Math.max(0, remaining)));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset", seconds(now + resetAfter));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset-After", seconds(resetAfter));
+        exchange.getResponseHeaders().set("X-RateLimit-Bucket", hash);
+        if (remaining < 0) {
+            reject(exchange, resetAfter, false);
+            return true;
+        }
+        return false;
+    }
+
+    private Scripted429 takeScripted(String method, String path) {
+        for (Iterator<Scripted429> it = scripted.iterator(); it.hasNext(); ) {
+            Scripted429 script = it.next();
+            if ((script.method == null || script.method.equalsIgnoreCase(method)) && path.startsWith(script.pathPrefix)) {
+                synchronized (script) {
+                    if (script.remaining <= 0) {
+                        continue;
+                    }
+                    if (--script.remaining == 0) {
+                        it.remove();
+                    }
+                }
+                return script;
+            }
+        }
+        return null;
+    }
+
+    private void reject(HttpExchange exchange, long retryAfterMs, boolean global) throws IOException {
+        rateLimited.incrementAndGet();
+        String retryAfter = seconds(Math.max(1, retryAfterMs));
+        exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        exchange.getResponseHeaders().set("X-RateLimit-Scope", global ? "global" : "user");
+        if (global) {
+            exchange.getResponseHeaders().set("X-RateLimit-Global", "true");
+        }
+        String body;
+        try {
+            body = new JSONObject()
+                .put("message", "You are being rate limited.")
+                .put("retry_after", Double.parseDouble(retryAfter))
+                .put("global", global)
+                .toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        send(exchange, new Reply(429, body));
+    }
+
+    private Reply route(String method, String[] path, Map<String, String> query, JSONObject body) throws JSONException {
+        // path[0] is empty because the path starts with '/'.
+        int length = path.length;
+        String resource = length > 1 ? path[1] : "";
+
+        if ("gateway".equals(resource) && length == 3 && "bot".equals(path[2]) && "GET".equals(method)) {
+            return ok(new JSONObject()
+                .put("url", gatewayUrl)
+                .put("shards", gatewayShards)
+                .put("session_start_limit", new JSONObject()
+                    .put("total", 1000).put("remaining", 1000).put("reset_after", 0).put("max_concurrency", 1)));
+        }
+        if ("channels".equals(resource) && length >= 3) {
+            return routeChannel(method, path, query, body, Long.parseLong(path[2]));
+        }
+        if ("guilds".equals(resource) && length >= 3) {
+            return routeGuild(method, path, query, body, Long.parseLong(path[2]));
+        }
+        if ("interactions".equals(resource) && length == 5 && "callback".equals(path[4]) && "POST".equals(method)) {
+            return NO_CONTENT;
+        }
+        if ("webhooks".equals(resource) && length == 6 && "messages".equals(path[4])) {
+            if ("DELETE".equals(method)) {
+                return NO_CONTENT;
+            }
+            if ("PATCH".equals(method)) {
+                long id = "@original".equals(path[5]) ? nextId() : Long.parseLong(path[5]);
+                return ok(message(id, 0, body != null ? body.optString("content") : ""));
+            }
+        }
+        return notFound();
+    }
+
+    private Reply routeChannel(String method, String[] path, Map<String, String> query, JSONObject body,
+                               long channelId) throws JSONException {
+        int length = path.length;
+        if (length == 3) {
+            JSONObject channel = channel(channelId);
+            switch (method) {
+                case "GET":
+                    return ok(channel);
+                case "PATCH":
+                    if (body != null) {
+                        for (Iterator<String> keys = body.keys(); keys.hasNext(); ) {
+                            String key = keys.next();
+                            channel.put(key, body.get(key));
+                        }
+                    }
+                    return ok(channel);
+                case "DELETE":
+                    channels.remove(channelId);
+                    messages.remove(channelId);
+                    return ok(channel);
+                default:
+                    return notFound();
+            }
+        }
+
+        String sub = path[3];
+        if ("messages".equals(sub)) {
+            ConcurrentSkipListMap<Long, JSONObject> channelMessages = mapFor(messages, channelId);
+            if (length == 4) {
+                if ("GET".equals(method)) {
+                    return ok(page(channelMessages, query, 100, 50));
+                }
+                if ("POST".equals(method)) {
+                    long id = nextId();
+                    JSONObject message = message(id, channelId, body != null ? body.optString("content") : "");
+                    channelMessages.put(id, message);
+                    return ok(message);
+                }
+                return notFound();
+            }
+            if (length == 5 && "bulk-delete".equals(path[4]) && "POST".equals(method)) {
+                JSONArray ids = body != null ? body.optJSONArray("messages") : null;
+                if (ids == null || ids.length() < 2 || ids.length() > 100) {
+                    return new Reply(400, error("Invalid Form Body: messages must contain 2 to 100 ids", 50035));
+                }
+                long oldest = System.currentTimeMillis() - BULK_DELETE_MAX_AGE_MS;
+                for (int i = 0; i < ids.length(); i++) {
+                    if (timestampOf(Long.parseLong(ids.getString(i))) < oldest) {
+                        return new Reply(400, error("You can only bulk delete messages that are under 14 days old.", 50034));
+                    }
+                }
+                for (int i = 0; i < ids.length(); i++) {
+                    channelMessages.remove(Long.parseLong(ids.getString(i)));
+                }
+                return NO_CONTENT;
+            }
+            long messageId = Long.parseLong(path[4]);
+            if (length == 5) {
+                JSONObject message = channelMessages.get(messageId);
+                if (message == null) {
+                    return new Reply(404, error("Unknown Message", 10008));
+                }
+                switch (method) {
+                    case "GET":
+                        return ok(message);
+                    case "PATCH":
+                        if (body != null && body.has("content")) {
+                            message.put("content", body.optString("content"));
+                            message.put("edited_timestamp", isoNow());
+                        }
+                        return ok(message);
+                    case "DELETE":
+                        channelMessages.remove(messageId);
+                        return NO_CONTENT;
+                    default:
+                        return notFound();
+                }
+            }
+            if (length == 6 && "threads".equals(path[5]) && "POST".equals(method)) {
+                return ok(createThread(channelId, messageId, body));
+            }
+            return notFound();
+        }
+        if ("pins".equals(sub) && length == 5 && ("PUT".equals(method) || "DELETE".equals(method))) {
+            return NO_CONTENT;
+        }
+        if ("thread-members".equals(sub) && length == 5 && ("PUT".equals(method) || "DELETE".equals(method))) {
+            return NO_CONTENT;
+        }
+        if ("threads".equals(sub) && length == 5 && "active".equals(path[4]) && "GET".equals(method)) {
+            JSONArray threads = new JSONArray();
+            for (JSONObject channel : channels.values()) {
+                if (String.valueOf(channelId).equals(channel.optString("parent_id"))) {
+                    threads.put(channel);
+                }
+            }
+            return ok(new JSONObject().put("threads", threads).put("members", new JSONArray()));
+        }
+        return notFound();
+    }
+
+    private Reply routeGuild(String method, String[] path, Map<String, String> query, JSONObject body,
+                             long guildId) throws JSONException {
+        int length = path.length;
+        JSONObject guild = guilds.get(guildId);
+        if (guild == null) {
+            return new Reply(404, error("Unknown Guild", 10004));
+        }
+        if (length == 3) {
+            return "GET".equals(method) ? ok(guild) : notFound();
+        }
+
+        String sub = path[3];
+        if ("members".equals(sub) && length >= 5) {
+            long userId = Long.parseLong(path[4]);
+            ConcurrentSkipListMap<Long, JSONObject> guildMembers = mapFor(members, guildId);
+            JSONObject member = guildMembers.get(userId);
+            if (length == 5) {
+                switch (method) {
+                    case "GET":
+                        return member != null ? ok(member) : new Reply(404, error("Unknown Member", 10007));
+                    case "PATCH":
+                        if (member == null) {
+                            return new Reply(404, error("Unknown Member", 10007));
+                        }
+                        if (body != null) {
+                            for (Iterator<String> keys = body.keys(); keys.hasNext(); ) {
+                                String key = keys.next();
+                                member.put(key, body.get(key));
+                            }
+                        }
+                        return ok(member);
+                    case "DELETE":
+                        guildMembers.remove(userId);
+                        return NO_CONTENT;
+                    default:
+                        return notFound();
+                }
+            }
+            if (length == 7 && "roles".equals(path[5]) && member != null) {
+                String roleId = path[6];
+                JSONArray roles = member.getJSONArray("roles");
+                if ("PUT".equals(method)) {
+                    if (!contains(roles, roleId)) {
+                        roles.put(roleId);
+                    }
+                    return NO_CONTENT;
+                }
+                if ("DELETE".equals(method)) {
+                    JSONArray kept = new JSONArray();
+                    for (int i = 0; i < roles.length(); i++) {
+                        if (!roleId.equals(roles.getString(i))) {
+                            kept.put(roles.getString(i));
+                        }
+                    }
+                    member.put("roles", kept);
+                    return NO_CONTENT;
+                }
+            }
+            return notFound();
+        }
+        if ("bans".equals(sub)) {
+            ConcurrentSkipListMap<Long, JSONObject> guildBans = mapFor(bans, guildId);
+            if (length == 4 && "GET".equals(method)) {
+                return ok(page(guildBans, query, 1000, 1000));
+            }
+            if (length == 5) {
+                long userId = Long.parseLong(path[4]);
+                if ("PUT".equals(method)) {
+                    guildBans.put(userId, new JSONObject()
+                        .put("reason", body != null ? body.opt("reason") : JSONObject.NULL)
+                        .put("user", user(userId)));
+                    mapFor(members, guildId).remove(userId);
+                    return NO_CONTENT;
+                }
+                if ("DELETE".equals(method)) {
+                    return guildBans.remove(userId) != null ? NO_CONTENT : new Reply(404, error("Unknown Ban", 10026));
+                }
+            }
+            return notFound();
+        }
+        if ("audit-logs".equals(sub) && length == 4 && "GET".equals(method)) {
+            ConcurrentSkipListMap<Long, JSONObject> entries = mapFor(auditLogs, guildId);
+            String actionType = query.get("action_type");
+            NavigableMap<Long, JSONObject> source = entries;
+            if (actionType != null && !actionType.isEmpty()) {
+                ConcurrentSkipListMap<Long, JSONObject> filtered = new ConcurrentSkipListMap<>();
+                for (Map.Entry<Long, JSONObject> entry : entries.entrySet()) {
+                    if (actionType.equals(String.valueOf(entry.getValue().optInt("action_type")))) {
+                        filtered.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                source = filtered;
+            }
+            return ok(new JSONObject()
+                .put("audit_log_entries", page(source, query, 100, 50))
+                .put("users", new JSONArray())
+                .put("integrations", new JSONArray())
+                .put("threads", new JSONArray())
+                .put("webhooks", new JSONArray()));
+        }
+        return notFound();
+    }
+
+    /**
+     * A page of a map keyed by snowflake. "after" pages go oldest first; everything else newest
+     * first, like Discord.
+     */
+    private static JSONArray page(NavigableMap<Long, JSONObject> items, Map<String, String> query,
+                                  int maxLimit, int defaultLimit) {
+        int limit = defaultLimit;
+        if (query.containsKey("limit")) {
+            limit = Math.max(1, Math.min(maxLimit, Integer.parseInt(query.get("limit"))));
+        }
+        Iterator<JSONObject> source;
+        if (query.containsKey("after")) {
+            source = items.tailMap(Long.parseLong(query.get("after")), false).values().iterator();
+        } else if (query.containsKey("before")) {
+            source = items.headMap(Long.parseLong(query.get("before")), false).descendingMap().values().iterator();
+        } else {
+            source = items.descendingMap().values().iterator();
+        }
+        JSONArray page = new JSONArray();
+        while (source.hasNext() && page.length() < limit) {
+            page.put(source.next());
+        }
+        return page;
+    }
+
+    private JSONObject createThread(long parentId, long messageId, JSONObject body) throws JSONException {
+        JSONObject parent = channel(parentId);
+        JSONObject thread = new JSONObject();
+        thread.put("id", String.valueOf(messageId));
+        thread.put("type", 11);
+        thread.put("guild_id", parent.optString("guild_id"));
+        thread.put("parent_id", String.valueOf(parentId));
+        thread.put("name", body != null ? body.optString("name", "thread") : "thread");
+        thread.put("thread_metadata", new JSONObject()
+            .put("archived", false)
+            .put("auto_archive_duration", body != null ? body.optInt("auto_archive_duration", 1440) : 1440)
+            .put("locked", false));
+        channels.put(messageId, thread);
+        return thread;
+    }
+
+    /**
+     * The channel with this id, created on first use as a text channel of the first seeded guild
+     * so that any channel id works without seeding.
+     */
+    private JSONObject channel(long channelId) throws JSONException {
+        JSONObject channel = channels.get(channelId);
+        if (channel == null) {
+            JSONObject created = new JSONObject();
+            created.put("id", String.valueOf(channelId));
+            created.put("type", 0);
+            Iterator<Long> guildIds = guilds.keySet().iterator();
+            if (guildIds.hasNext()) {
+                created.put("guild_id", String.valueOf(guildIds.next()));
+            }
+            created.put("name", "channel-" + channelId);
+            created.put("permission_overwrites", new JSONArray());
+            channel = channels.putIfAbsent(channelId, created);
+            if (channel == null) {
+                channel = created;
+            }
+        }
+        return channel;
+    }
+
+    private static JSONObject message(long id, long channelId, String content) {
+        try {
+            return new JSONObject()
+                .put("id", String.valueOf(id))
+                .put("channel_id", String.valueOf(channelId))
+                .put("type", 0)
+                .put("content", content)
+                .put("author", user(botUserId()).put("bot", true))
+                .put("timestamp", iso(timestampOf(id)))
+                .put("edited_timestamp", JSONObject.NULL)
+                .put("attachments", new JSONArray())
+                .put("embeds", new JSONArray())
+                .put("mentions", new JSONArray())
+                .put("pinned", false);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JSONObject user(long userId) throws JSONException {
+        return new JSONObject()
+            .put("id", String.valueOf(userId))
+            .put("username", "user" + userId % 100000)
+            .put("discriminator", "0")
+            .put("avatar", JSONObject.NULL);
+    }
+
+    private static JSONObject member(long userId, JSONArray roles) throws JSONException {
+        return new JSONObject()
+            .put("user", user(userId))
+            .put("roles", roles)
+            .put("nick", JSONObject.NULL)
+            .put("joined_at", "2022-01-10T08:00:00.000000+00:00")
+            .put("deaf", false)
+            .put("mute", false)
+            .put("flags", 0);
+    }
+
+    private static JSONObject role(long id, String name, int position, long permissions) throws JSONException {
+        return new JSONObject()
+            .put("id", String.valueOf(id))
+            .put("name", name)
+            .put("position", position)
+            .put("permissions", String.valueOf(permissions))
+            .put("managed", false)
+            .put("mentionable", false);
+    }
+
+    private static boolean contains(JSONArray array, String value) throws JSONException {
+        for (int i = 0; i < array.length(); i++) {
+            if (value.equals(array.getString(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <V> ConcurrentSkipListMap<Long, V> mapFor(ConcurrentHashMap<Long, ConcurrentSkipListMap<Long, V>> maps,
+                                                            long key) {
+        ConcurrentSkipListMap<Long, V> map = maps.get(key);
+        if (map == null) {
+            maps.putIfAbsent(key, new ConcurrentSkipListMap<Long, V>());
+            map = maps.get(key);
+        }
+        return map;
+    }
+
+    private long nextId() {
+        return snowflakeAt(System.currentTimeMillis());
+    }
+
+    /**
+     * A unique snowflake for the given time; the low 22 bits are a running counter.
+     */
+    private long snowflakeAt(long millis) {
+        return ((millis - DISCORD_EPOCH) << 22) | (idSequence.incrementAndGet() & 0x3FFFFF);
+    }
+
+    private static long timestampOf(long snowflake) {
+        return (snowflake >>> 22) + DISCORD_EPOCH;
+    }
+
+    private void count(String routeKey) {
+        AtomicLong counter = routeCounts.get(routeKey);
+        if (counter == null) {
+            routeCounts.putIfAbsent(routeKey, new AtomicLong());
+            counter = routeCounts.get(routeKey);
+        }
+        counter.incrementAndGet();
+    }
+
+    private static Reply ok(Object json) {
+        return new Reply(200, json.toString());
+    }
+
+    private static Reply notFound() {
+        return new Reply(404, error("404: Not Found", 0));
+    }
+
+    private static String error(String message, int code) {
+        try {
+            return new JSONObject().put("message", message).put("code", code).toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static String isoNow() {
+        return iso(System.currentTimeMillis());
+    }
+
+    private static String iso(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'000+00:00'", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            try {
+                if (equals < 0) {
+                    query.put(URLDecoder.decode(pair, "UTF-8"), "");
+                } else {
+                    query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return query;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, Reply reply) throws IOException {
+        if (reply.body == null) {
+            exchange.sendResponseHeaders(reply.status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = reply.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
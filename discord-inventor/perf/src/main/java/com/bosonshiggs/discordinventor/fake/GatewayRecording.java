@@ -0,0 +1,131 @@
+package com.bosonshiggs.discordinventor.fake;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A stream of Gateway events to replay, one per line of a JSON lines file.
+ *
+ * Each line is either a whole DISPATCH frame ({@code {"op":0,"t":...,"s":...,"d":{...}}}) as captured
+ * from a socket, or just {@code {"t":...,"d":{...}}}. Other opcodes and blank lines are skipped, and
+ * sequence numbers are assigned again on replay.
+ */
+public final class GatewayRecording {
+
+    /** One event, with its payload kept as JSON text so replay does not serialize it again. */
+    public static final class Event {
+        public final String type;
+        public final String data;
+
+        public Event(String type, String data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private final List<Event> events;
+
+    public GatewayRecording(List<Event> events) {
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    public static GatewayRecording load(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return parse(lines);
+    }
+
+    public static GatewayRecording parse(Iterable<String> lines) {
+        List<Event> events = new ArrayList<>();
+        int number = 0;
+        for (String line : lines) {
+            number++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                JSONObject frame = new JSONObject(trimmed);
+                if (frame.optInt("op", 0) != 0 || !frame.has("t") || frame.optJSONObject("d") == null) {
+                    continue;
+                }
+                events.add(new Event(frame.getString("t"), frame.getJSONObject("d").toString()));
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("Line " + number + ": " + e.getMessage(), e);
+            }
+        }
+        return new GatewayRecording(events);
+    }
+
+    public void save(File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (Event event : events) {
+                writer.write("{\"t\":" + JSONObject.quote(event.type) + ",\"d\":" + event.data + "}");
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * A busy guild's traffic: mostly messages, with typing, presence, edits, deletes and reactions
+     * mixed in, spread over {@code channels} channels.
+     */
+    public static GatewayRecording synthetic(int count, int channels, long seed) {
+        Random random = new Random(seed);
+        List<Event> events = new ArrayList<>(count);
+        long messageId = 1200000000000000000L;
+        for (int i = 0; i < count; i++) {
+            long channelId = Payloads.GUILD_ID + 2000 + random.nextInt(Math.max(1, channels));
+            int kind = random.nextInt(100);
+            if (kind < 45) {
+                messageId += 1 + random.nextInt(1 << 20);
+                events.add(new Event("MESSAGE_CREATE",
+                    Payloads.messageCreate(channelId, messageId, "soak message " + i)));
+            } else if (kind < 65) {
+                events.add(new Event("TYPING_START", Payloads.typingStart(channelId)));
+            } else if (kind < 80) {
+                events.add(new Event("PRESENCE_UPDATE", Payloads.presenceUpdate(300000000000000000L + random.nextInt(1000))));
+            } else if (kind < 88) {
+                events.add(new Event("MESSAGE_UPDATE",
+                    Payloads.messageCreate(channelId, messageId, "edited soak message " + i)));
+            } else if (kind < 94) {
+                events.add(new Event("MESSAGE_DELETE", "{\"id\":\"" + messageId + "\",\"channel_id\":\"" + channelId
+                    + "\",\"guild_id\":\"" + Payloads.GUILD_ID + "\"}"));
+            } else {
+                events.add(new Event("MESSAGE_REACTION_ADD", "{\"user_id\":\"300000000000000000\",\"channel_id\":\""
+                    + channelId + "\",\"message_id\":\"" + messageId + "\",\"guild_id\":\"" + Payloads.GUILD_ID
+                    + "\",\"emoji\":{\"id\":null,\"name\":\"\\ud83d\\udc4d\"},\"type\":0}"));
+            }
+        }
+        return new GatewayRecording(events);
+    }
+}
@@ -0,0 +1,136 @@
+package com.bosonshiggs.discordinventor.fake;
+
+import java.util.Random;
+
+/**
+ * Gateway payloads shaped like Discord's, generated with a fixed seed so every run parses the
+ * same text.
+ */
+public final class Payloads {
+
+    /** Guild every generated payload belongs to. */
+    public static final long GUILD_ID = 1100000000000000001L;
+
+    private Payloads() {
+    }
+
+    /**
+     * A GUILD_CREATE event payload ("d" only) with the given number of channels, roles and members.
+     */
+    public static String guildCreate(int channels, int roles, int members) {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder(4096 + members * 400 + channels * 300);
+        json.append("{\"id\":\"").append(GUILD_ID).append("\",\"name\":\"Benchmark Guild \\u2728\"")
+            .append(",\"icon\":null,\"description\":null,\"splash\":null,\"owner_id\":\"")
+            .append(GUILD_ID + 7).append("\",\"afk_channel_id\":null,\"afk_timeout\":300")
+            .append(",\"verification_level\":1,\"default_message_notifications\":1")
+            .append(",\"explicit_content_filter\":2,\"features\":[\"COMMUNITY\",\"NEWS\",\"INVITE_SPLASH\"]")
+            .append(",\"mfa_level\":0,\"application_id\":null,\"system_channel_id\":\"")
+            .append(GUILD_ID + 1).append("\",\"premium_tier\":2,\"premium_subscription_count\":9")
+            .append(",\"preferred_locale\":\"en-US\",\"nsfw_level\":0,\"large\":")
+            .append(members > 250).append(",\"unavailable\":false,\"member_count\":").append(members)
+            .append(",\"joined_at\":\"2021-03-04T12:34:56.789000+00:00\"");
+
+        json.append(",\"roles\":[");
+        for (int i = 0; i < roles; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(i == 0 ? GUILD_ID : GUILD_ID + 1000 + i)
+                .append("\",\"name\":\"").append(i == 0 ? "@everyone" : "role-" + i)
+                .append("\",\"color\":").append(random.nextInt(0xFFFFFF))
+                .append(",\"hoist\":").append(random.nextBoolean())
+                .append(",\"icon\":null,\"unicode_emoji\":null,\"position\":").append(i)
+                .append(",\"permissions\":\"").append(random.nextLong() & 0x1FFFFFFFFFFL)
+                .append("\",\"managed\":false,\"mentionable\":").append(random.nextBoolean())
+                .append(",\"flags\":0}");
+        }
+        json.append(']');
+
+        json.append(",\"channels\":[");
+        for (int i = 0; i < channels; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(GUILD_ID + 2000 + i).append("\",\"type\":").append(i % 5 == 0 ? 4 : 0)
+                .append(",\"name\":\"channel-").append(i).append("\",\"position\":").append(i)
+                .append(",\"parent_id\":").append(i % 5 == 0 ? "null" : "\"" + (GUILD_ID + 2000 + i - i % 5) + "\"")
+                .append(",\"topic\":\"Topic for channel ").append(i).append(" \\\"quoted\\\"\"")
+                .append(",\"nsfw\":false,\"rate_limit_per_user\":0,\"last_message_id\":\"")
+                .append(1200000000000000000L + random.nextInt(1000000)).append("\",\"permission_overwrites\":[")
+                .append("{\"id\":\"").append(GUILD_ID).append("\",\"type\":0,\"allow\":\"0\",\"deny\":\"2048\"},")
+                .append("{\"id\":\"").append(GUILD_ID + 1001).append("\",\"type\":0,\"allow\":\"3072\",\"deny\":\"0\"}]}");
+        }
+        json.append(']');
+
+        json.append(",\"members\":[");
+        for (int i = 0; i < members; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            long userId = 300000000000000000L + i * 7919L;
+            json.append("{\"user\":{\"id\":\"").append(userId).append("\",\"username\":\"user").append(i)
+                .append("\",\"global_name\":").append(i % 3 == 0 ? "null" : "\"User " + i + "\"")
+                .append(",\"avatar\":\"").append(Long.toHexString(random.nextLong()))
+                .append(Long.toHexString(random.nextLong())).append("\",\"discriminator\":\"0\"")
+                .append(",\"public_flags\":").append(random.nextInt(256)).append(",\"bot\":").append(i % 50 == 0)
+                .append("},\"nick\":null,\"avatar\":null,\"roles\":[");
+            int roleCount = roles > 1 ? random.nextInt(Math.min(4, roles - 1)) : 0;
+            for (int r = 0; r < roleCount; r++) {
+                if (r > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(GUILD_ID + 1001 + random.nextInt(roles - 1)).append('"');
+            }
+            json.append("],\"joined_at\":\"2022-01-").append(10 + i % 18)
+                .append("T08:00:00.000000+00:00\",\"premium_since\":null,\"deaf\":false,\"mute\":false")
+                .append(",\"flags\":0,\"pending\":false,\"communication_disabled_until\":null}");
+        }
+        json.append(']');
+
+        json.append(",\"voice_states\":[],\"presences\":[],\"threads\":[],\"stage_instances\":[]")
+            .append(",\"guild_scheduled_events\":[],\"emojis\":[{\"id\":\"").append(GUILD_ID + 9000)
+            .append("\",\"name\":\"party\",\"roles\":[],\"require_colons\":true,\"managed\":false")
+            .append(",\"animated\":false,\"available\":true}],\"stickers\":[]}");
+        return json.toString();
+    }
+
+    /**
+     * A MESSAGE_CREATE event payload ("d" only).
+     */
+    public static String messageCreate(long channelId, long messageId, String content) {
+        return "{\"id\":\"" + messageId + "\",\"channel_id\":\"" + channelId + "\",\"guild_id\":\"" + GUILD_ID
+            + "\",\"type\":0,\"content\":\"" + content + "\",\"author\":{\"id\":\"300000000000000000\""
+            + ",\"username\":\"user0\",\"global_name\":\"User 0\",\"avatar\":null,\"discriminator\":\"0\""
+            + ",\"public_flags\":0},\"member\":{\"roles\":[\"" + (GUILD_ID + 1001) + "\"],\"nick\":null"
+            + ",\"joined_at\":\"2022-01-10T08:00:00.000000+00:00\",\"deaf\":false,\"mute\":false,\"flags\":0}"
+            + ",\"attachments\":[],\"embeds\":[],\"mentions\":[],\"mention_roles\":[],\"pinned\":false"
+            + ",\"mention_everyone\":false,\"tts\":false,\"timestamp\":\"2024-05-01T10:00:00.000000+00:00\""
+            + ",\"edited_timestamp\":null,\"flags\":0,\"components\":[],\"nonce\":\"" + messageId + "\"}";
+    }
+
+    /**
+     * A TYPING_START event payload ("d" only).
+     */
+    public static String typingStart(long channelId) {
+        return "{\"user_id\":\"300000000000000000\",\"timestamp\":1714557600,\"channel_id\":\"" + channelId
+            + "\",\"guild_id\":\"" + GUILD_ID + "\",\"member\":{\"user\":{\"id\":\"300000000000000000\""
+            + ",\"username\":\"user0\",\"avatar\":null,\"discriminator\":\"0\"},\"roles\":[],\"nick\":null}}";
+    }
+
+    /**
+     * A PRESENCE_UPDATE event payload ("d" only).
+     */
+    public static String presenceUpdate(long userId) {
+        return "{\"user\":{\"id\":\"" + userId + "\"},\"guild_id\":\"" + GUILD_ID + "\",\"status\":\"online\""
+            + ",\"activities\":[{\"name\":\"Benchmarking\",\"type\":0,\"created_at\":1714557600000}]"
+            + ",\"client_status\":{\"desktop\":\"online\"}}";
+    }
+
+    /**
+     * Wraps an event payload in a DISPATCH envelope, with the fields in Discord's order.
+     */
+    public static String dispatchFrame(String type, int sequence, String data) {
+        return "{\"t\":\"" + type + "\",\"s\":" + sequence + ",\"op\":0,\"d\":" + data + "}";
+    }
+}
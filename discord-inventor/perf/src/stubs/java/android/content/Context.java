@@ -0,0 +1,83 @@
+package android.content;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM stand-in for {@code android.content.Context} with in-memory preferences and a temporary files
+ * directory.
+ */
+public class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    private final Map<String, MemoryPreferences> preferences = new ConcurrentHashMap<>();
+    private File filesDir;
+
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        MemoryPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            preferences.putIfAbsent(name, new MemoryPreferences());
+            prefs = preferences.get(name);
+        }
+        return prefs;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public synchronized File getFilesDir() {
+        if (filesDir == null) {
+            filesDir = new File(System.getProperty("java.io.tmpdir"), "discord-inventor-perf-" + System.nanoTime());
+            filesDir.mkdirs();
+        }
+        return filesDir;
+    }
+
+    private static final class MemoryPreferences implements SharedPreferences {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+
+        @Override
+        public String getString(String key, String defValue) {
+            String value = values.get(key);
+            return value != null ? value : defValue;
+        }
+
+        @Override
+        public Editor edit() {
+            final Map<String, String> puts = new HashMap<>();
+            return new Editor() {
+                @Override
+                public Editor putString(String key, String value) {
+                    puts.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor remove(String key) {
+                    puts.put(key, null);
+                    return this;
+                }
+
+                @Override
+                public boolean commit() {
+                    for (Map.Entry<String, String> entry : puts.entrySet()) {
+                        if (entry.getValue() == null) {
+                            values.remove(entry.getKey());
+                        } else {
+                            values.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public void apply() {
+                    commit();
+                }
+            };
+        }
+    }
+}
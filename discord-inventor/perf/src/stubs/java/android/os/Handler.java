@@ -0,0 +1,33 @@
+package android.os;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM stand-in for {@code android.os.Handler}. Tasks run on the looper's thread; callbacks cannot
+ * be removed once posted.
+ */
+public class Handler {
+    private final Looper looper;
+
+    public Handler() {
+        this(Looper.getMainLooper());
+    }
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public boolean post(Runnable r) {
+        looper.executor.execute(r);
+        return true;
+    }
+
+    public boolean postDelayed(Runnable r, long delayMillis) {
+        looper.executor.schedule(r, delayMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    public Looper getLooper() {
+        return looper;
+    }
+}
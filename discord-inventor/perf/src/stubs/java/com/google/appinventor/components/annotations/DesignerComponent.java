@@ -0,0 +1,13 @@
+package com.google.appinventor.components.annotations;
+
+public @interface DesignerComponent {
+    int version();
+
+    String description() default "";
+
+    String iconName() default "";
+
+    String helpUrl() default "";
+
+    boolean nonVisible() default false;
+}
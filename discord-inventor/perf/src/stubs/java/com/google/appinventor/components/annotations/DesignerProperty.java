@@ -0,0 +1,9 @@
+package com.google.appinventor.components.annotations;
+
+public @interface DesignerProperty {
+    String editorType() default "text";
+
+    String defaultValue() default "";
+
+    String[] editorArgs() default {};
+}
@@ -0,0 +1,5 @@
+package com.google.appinventor.components.annotations;
+
+public enum PropertyCategory {
+    BEHAVIOR, APPEARANCE, ADVANCED, UNSET
+}
@@ -0,0 +1,7 @@
+package com.google.appinventor.components.annotations;
+
+public @interface SimpleFunction {
+    String description() default "";
+
+    boolean userVisible() default true;
+}
@@ -0,0 +1,9 @@
+package com.google.appinventor.components.annotations;
+
+public @interface SimpleProperty {
+    String description() default "";
+
+    PropertyCategory category() default PropertyCategory.UNSET;
+
+    boolean userVisible() default true;
+}
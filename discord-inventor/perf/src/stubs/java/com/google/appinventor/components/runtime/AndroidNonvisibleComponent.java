@@ -0,0 +1,9 @@
+package com.google.appinventor.components.runtime;
+
+public abstract class AndroidNonvisibleComponent implements Component {
+    protected final Form form;
+
+    protected AndroidNonvisibleComponent(Form form) {
+        this.form = form;
+    }
+}
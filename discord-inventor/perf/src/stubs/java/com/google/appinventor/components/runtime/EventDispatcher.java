@@ -0,0 +1,29 @@
+package com.google.appinventor.components.runtime;
+
+/**
+ * JVM stand-in for the App Inventor event dispatcher. Events go to the installed sink, if any.
+ */
+public final class EventDispatcher {
+
+    public interface Sink {
+        void onEvent(Component component, String eventName, Object... args);
+    }
+
+    private static volatile Sink sink;
+
+    private EventDispatcher() {
+    }
+
+    public static void setSink(Sink newSink) {
+        sink = newSink;
+    }
+
+    public static boolean dispatchEvent(Component component, String eventName, Object... args) {
+        Sink current = sink;
+        if (current == null) {
+            return false;
+        }
+        current.onEvent(component, eventName, args);
+        return true;
+    }
+}
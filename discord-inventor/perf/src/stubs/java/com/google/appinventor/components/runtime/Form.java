@@ -0,0 +1,13 @@
+package com.google.appinventor.components.runtime;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in for the App Inventor screen: a context that is also its own container.
+ */
+public class Form extends Context implements ComponentContainer {
+    @Override
+    public Form $form() {
+        return this;
+    }
+}
@@ -0,0 +1,25 @@
+package com.google.appinventor.components.runtime.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for {@code YailDictionary}, backed by a LinkedHashMap.
+ */
+public class YailDictionary extends LinkedHashMap<Object, Object> {
+
+    public YailDictionary() {
+    }
+
+    public YailDictionary(Map<?, ?> values) {
+        super(values);
+    }
+
+    public static YailDictionary makeDictionary() {
+        return new YailDictionary();
+    }
+
+    public static YailDictionary makeDictionary(Map<Object, Object> values) {
+        return new YailDictionary(values);
+    }
+}
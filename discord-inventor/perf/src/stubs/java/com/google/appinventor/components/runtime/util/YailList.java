@@ -0,0 +1,41 @@
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in for {@code YailList}, backed by an ArrayList. Like the real class, getString and
+ * getObject index from 0 while the list itself carries no header element.
+ */
+public class YailList extends ArrayList<Object> {
+
+    public static YailList makeEmptyList() {
+        return new YailList();
+    }
+
+    public static YailList makeList(List<?> values) {
+        YailList list = new YailList();
+        list.addAll(values);
+        return list;
+    }
+
+    public static YailList makeList(Object[] values) {
+        YailList list = new YailList();
+        for (Object value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    public Object getObject(int index) {
+        return get(index);
+    }
+
+    public String getString(int index) {
+        return String.valueOf(get(index));
+    }
+
+    public int length() {
+        return size();
+    }
+}
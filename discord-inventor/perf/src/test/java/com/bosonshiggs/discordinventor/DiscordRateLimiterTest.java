@@ -0,0 +1,137 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.bosonshiggs.discordinventor.fake.FakeRestServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Feeds the limiter the headers of real responses from {@link FakeRestServer}.
+ */
+public class DiscordRateLimiterTest {
+
+    private static final String MESSAGES = "/channels/1/messages";
+    private static final DiscordRoute ROUTE = DiscordRoute.of("GET", MESSAGES);
+    private static final DiscordRoute OTHER_CHANNEL = DiscordRoute.of("GET", "/channels/2/messages");
+
+    private FakeRestServer server;
+    private final DiscordRateLimiter limiter = new DiscordRateLimiter();
+    private int status;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeRestServer("127.0.0.1", 0);
+        server.setGlobalLimit(0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /** Sends a GET and returns its headers with lower-case names, like DiscordRequestHelper does. */
+    private Map<String, String> get(String endpoint) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUrl("127.0.0.1") + endpoint).openConnection();
+        connection.setRequestProperty("Authorization", "Bot test-token");
+        status = connection.getResponseCode();
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            body.close();
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null) {
+                headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    @Test
+    public void exhaustedBucketWaitsForReset() throws IOException {
+        server.setBucketLimit(2, 5000);
+        long now = 1000;
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0, limiter.reserve(ROUTE, now));
+            Map<String, String> headers = get(MESSAGES);
+            assertEquals(0, limiter.update(ROUTE, status, headers, now));
+        }
+        long wait = limiter.reserve(ROUTE, now);
+        assertTrue("waited " + wait, wait > 4000 && wait <= 5000);
+        // Other channels have their own bucket.
+        assertEquals(0, limiter.reserve(OTHER_CHANNEL, now));
+        assertEquals(0, limiter.reserve(ROUTE, now + wait));
+    }
+
+    @Test
+    public void scripted429BlocksTheBucket() throws IOException {
+        server.setBucketLimit(0, 1000);
+        server.script429("GET", MESSAGES, 1, 1500, false);
+        long now = 1000;
+        assertEquals(0, limiter.reserve(ROUTE, now));
+        Map<String, String> headers = get(MESSAGES);
+        assertEquals(429, status);
+        assertEquals(1500, limiter.update(ROUTE, status, headers, now));
+
+        assertEquals(1500, limiter.reserve(ROUTE, now));
+        assertEquals(0, limiter.reserve(OTHER_CHANNEL, now));
+        assertEquals(0, limiter.reserve(ROUTE, now + 1500));
+
+        get(MESSAGES);
+        assertEquals(200, status);
+    }
+
+    @Test
+    public void global429BlocksEveryRouteButInteractions() throws IOException {
+        server.setBucketLimit(0, 1000);
+        server.script429(null, "/channels/", 1, 2000, true);
+        long now = 1000;
+        Map<String, String> headers = get(MESSAGES);
+        assertEquals(429, status);
+        assertEquals(2000, limiter.update(ROUTE, status, headers, now));
+
+        assertEquals(1000, limiter.reserve(OTHER_CHANNEL, now + 1000));
+        assertEquals(0, limiter.reserve(DiscordRoute.of("POST", "/interactions/5/token/callback"), now));
+        assertEquals(0, limiter.reserve(OTHER_CHANNEL, now + 2000));
+    }
+
+    @Test
+    public void globalCapPerSecond() {
+        limiter.setGlobalRequestsPerSecond(3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.reserve(ROUTE, 100));
+        }
+        assertEquals(900, limiter.reserve(OTHER_CHANNEL, 100));
+        assertEquals(0, limiter.reserve(OTHER_CHANNEL, 1000));
+    }
+
+    @Test
+    public void resetForgetsBuckets() throws IOException {
+        server.script429("GET", MESSAGES, 1, 3000, false);
+        limiter.update(ROUTE, 429, get(MESSAGES), 0);
+        limiter.reset();
+        assertEquals(0, limiter.reserve(ROUTE, 0));
+    }
+
+    @Test
+    public void parsesFractionalSeconds() {
+        assertEquals(1500, DiscordRateLimiter.parseMillis("1.5"));
+        assertEquals(1, DiscordRateLimiter.parseMillis("0.0001"));
+        assertEquals(-1, DiscordRateLimiter.parseMillis("soon"));
+        assertEquals(-1, DiscordRateLimiter.parseMillis(null));
+    }
+}
@@ -0,0 +1,70 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DiscordRouteTest {
+
+    @Test
+    public void channelRouteKeepsChannelAsMajorParameter() {
+        DiscordRoute route = DiscordRoute.of("GET", "/channels/123/messages/456?limit=50");
+        assertEquals("/channels/{channel_id}/messages/{id}", route.template);
+        assertEquals("123", route.majorParameter);
+        assertEquals("GET /channels/{channel_id}/messages/{id}", route.routeKey());
+    }
+
+    @Test
+    public void guildRouteKeepsGuildAsMajorParameter() {
+        DiscordRoute route = DiscordRoute.of("PUT", "/guilds/42/members/7/roles/9");
+        assertEquals("/guilds/{guild_id}/members/{id}/roles/{id}", route.template);
+        assertEquals("42", route.majorParameter);
+    }
+
+    @Test
+    public void sameTemplateInDifferentChannelsSharesRouteKey() {
+        DiscordRoute first = DiscordRoute.of("POST", "/channels/1/messages");
+        DiscordRoute second = DiscordRoute.of("POST", "/channels/2/messages");
+        assertEquals(first.routeKey(), second.routeKey());
+        assertFalse(first.majorParameter.equals(second.majorParameter));
+    }
+
+    @Test
+    public void reactionEmojiIsTemplated() {
+        DiscordRoute route = DiscordRoute.of("PUT", "/channels/1/messages/2/reactions/%F0%9F%91%8D/@me");
+        assertEquals("/channels/{channel_id}/messages/{id}/reactions/{emoji}/@me", route.template);
+    }
+
+    @Test
+    public void webhookTokenIsPartOfMajorParameter() {
+        DiscordRoute route = DiscordRoute.of("PATCH", "/webhooks/10/abc-token/messages/@original");
+        assertEquals("/webhooks/{webhook_id}/{token}/messages/@original", route.template);
+        assertEquals("10/abc-token", route.majorParameter);
+    }
+
+    @Test
+    public void interactionCallbacksSkipTheGlobalLimit() {
+        DiscordRoute route = DiscordRoute.of("POST", "/interactions/55/tok/callback");
+        assertEquals("/interactions/{interaction_id}/{token}/callback", route.template);
+        assertEquals("55", route.majorParameter);
+        assertFalse(route.isGloballyLimited());
+        assertTrue(DiscordRoute.of("POST", "/channels/1/messages").isGloballyLimited());
+    }
+
+    @Test
+    public void unmajoredRouteHasEmptyMajorParameter() {
+        DiscordRoute route = DiscordRoute.of("GET", "/users/@me/guilds");
+        assertEquals("/users/@me/guilds", route.template);
+        assertEquals("", route.majorParameter);
+    }
+
+    @Test
+    public void snowflakeCheck() {
+        assertTrue(DiscordRoute.isSnowflake("1100000000000002001"));
+        assertFalse(DiscordRoute.isSnowflake(""));
+        assertFalse(DiscordRoute.isSnowflake("12a"));
+        assertFalse(DiscordRoute.isSnowflake("123456789012345678901"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Test;
+
+public class GatewayDispatcherTest {
+
+    @Test
+    public void throwingHandlerDoesNotStopDelivery() throws Exception {
+        final CountDownLatch failed = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        GatewayDispatcher<String> dispatcher = new GatewayDispatcher<>(new Handler(Looper.getMainLooper()),
+            new GatewayDispatcher.Listener<String>() {
+                @Override
+                public void onEvent(String type, String payload) {
+                    if ("BAD".equals(type)) {
+                        failed.countDown();
+                        throw new IllegalStateException("handler failed");
+                    }
+                    delivered.countDown();
+                }
+            });
+
+        dispatcher.offer("BAD", "", System.nanoTime());
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        dispatcher.offer("GOOD", "", System.nanoTime());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,65 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class GatewayFramesTest {
+
+    @Test
+    public void readsEnvelopeOfDispatch() {
+        GatewayFrames.Header header = GatewayFrames.peek(
+            "{\"t\":\"MESSAGE_CREATE\",\"s\":42,\"op\":0,\"d\":{\"content\":\"hi\"}}");
+        assertEquals(0, header.op);
+        assertEquals(42, header.sequence);
+        assertEquals("MESSAGE_CREATE", header.type);
+    }
+
+    @Test
+    public void readsEnvelopeAfterPayload() {
+        GatewayFrames.Header header = GatewayFrames.peek(
+            "{ \"d\" : {\"t\":\"NESTED\",\"op\":9,\"list\":[{\"s\":1}]}, \"op\" : 0, \"s\" : 7, \"t\" : \"TYPING_START\" }");
+        assertEquals(0, header.op);
+        assertEquals(7, header.sequence);
+        assertEquals("TYPING_START", header.type);
+    }
+
+    @Test
+    public void ignoresKeysInsideStrings() {
+        GatewayFrames.Header header = GatewayFrames.peek(
+            "{\"d\":{\"content\":\"\\\"t\\\":\\\"FAKE\\\"\"},\"t\":\"MESSAGE_UPDATE\",\"op\":0,\"s\":3}");
+        assertEquals("MESSAGE_UPDATE", header.type);
+    }
+
+    @Test
+    public void nonDispatchHasNullTypeAndSequence() {
+        GatewayFrames.Header header = GatewayFrames.peek("{\"op\":11,\"d\":null,\"s\":null,\"t\":null}");
+        assertEquals(11, header.op);
+        assertEquals(-1, header.sequence);
+        assertNull(header.type);
+    }
+
+    @Test
+    public void rejectsNonObjects() {
+        assertNull(GatewayFrames.peek("[1,2]"));
+        assertNull(GatewayFrames.peek("  "));
+        assertNull(GatewayFrames.peek("{\"t\":\"unterminated"));
+    }
+
+    @Test
+    public void peekDataReadsOnlyDirectFieldsOfPayload() {
+        String frame = "{\"t\":\"MESSAGE_CREATE\",\"s\":4,\"op\":0,\"d\":{\"author\":{\"id\":\"9\",\"channel_id\":\"x\"},"
+            + "\"content\":\"\\\"channel_id\\\":\\\"y\\\"\",\"channel_id\":\"123\",\"id\":\"77\",\"embeds\":[{\"guild_id\":\"z\"}]}}";
+        assertEquals("123", GatewayFrames.peekData(frame, "channel_id"));
+        assertEquals("77", GatewayFrames.peekData(frame, "id"));
+        assertNull(GatewayFrames.peekData(frame, "guild_id"));
+    }
+
+    @Test
+    public void peekDataIgnoresFieldsOutsidePayload() {
+        assertNull(GatewayFrames.peekData("{\"d\":{\"x\":1},\"guild_id\":\"5\"}", "guild_id"));
+        assertNull(GatewayFrames.peekData("{\"op\":11,\"d\":null}", "id"));
+        assertNull(GatewayFrames.peekData("[]", "id"));
+    }
+}
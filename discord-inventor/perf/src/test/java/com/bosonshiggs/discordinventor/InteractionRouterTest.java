@@ -0,0 +1,110 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class InteractionRouterTest {
+
+    private final InteractionRouter router = new InteractionRouter();
+
+    private static JSONObject interaction(int type, JSONObject data) throws Exception {
+        return new JSONObject()
+            .put("id", "1200000000000000000")
+            .put("token", "token")
+            .put("type", type)
+            .put("guild_id", "10")
+            .put("channel_id", "20")
+            .put("member", new JSONObject().put("user", new JSONObject().put("id", "30")))
+            .put("message", new JSONObject().put("id", "40"))
+            .put("data", data);
+    }
+
+    @Test
+    public void exactRouteWinsOverPrefix() {
+        router.addPrefix("vote:");
+        router.addExact("vote:yes");
+        assertEquals("vote:yes", router.match("vote:yes"));
+        assertEquals("vote:", router.match("vote:no"));
+    }
+
+    @Test
+    public void longestPrefixWins() {
+        router.addPrefix("a");
+        router.addPrefix("ab:");
+        router.addPrefix("ab:c:");
+        assertEquals("ab:c:", router.match("ab:c:1"));
+        assertEquals("ab:", router.match("ab:d"));
+        assertEquals("a", router.match("ab"));
+        assertNull(router.match("b"));
+    }
+
+    @Test
+    public void emptyPrefixMatchesEverything() {
+        router.addPrefix("");
+        assertEquals("", router.match("anything"));
+    }
+
+    @Test
+    public void removeAndClear() {
+        router.addExact("x");
+        router.addPrefix("x");
+        router.remove("x");
+        assertNull(router.match("x"));
+        router.addPrefix("p");
+        router.clear();
+        assertNull(router.match("p1"));
+    }
+
+    @Test
+    public void routesButtons() throws Exception {
+        router.addPrefix("vote:");
+        InteractionRouter.Routed routed = router.route(interaction(3,
+            new JSONObject().put("custom_id", "vote:7").put("component_type", 2)));
+        assertEquals(InteractionRouter.KIND_BUTTON, routed.kind);
+        assertEquals("vote:7", routed.customId);
+        assertEquals("vote:", routed.route);
+        assertEquals("30", routed.userId);
+        assertEquals("10", routed.guildId);
+        assertEquals("20", routed.channelId);
+        assertEquals("40", routed.messageId);
+    }
+
+    @Test
+    public void routesSelectValues() throws Exception {
+        router.addExact("colour");
+        InteractionRouter.Routed routed = router.route(interaction(3, new JSONObject()
+            .put("custom_id", "colour")
+            .put("component_type", 3)
+            .put("values", new JSONArray().put("red").put("blue"))));
+        assertEquals(InteractionRouter.KIND_SELECT, routed.kind);
+        assertEquals(Arrays.asList("red", "blue"), routed.values);
+    }
+
+    @Test
+    public void routesModalFieldsInRowsAndLabels() throws Exception {
+        router.addPrefix("form:");
+        JSONArray components = new JSONArray()
+            .put(new JSONObject().put("type", 1).put("components", new JSONArray()
+                .put(new JSONObject().put("type", 4).put("custom_id", "name").put("value", "Ada"))))
+            .put(new JSONObject().put("type", 18)
+                .put("component", new JSONObject().put("type", 4).put("custom_id", "bio").put("value", "Hi")));
+        InteractionRouter.Routed routed = router.route(interaction(5,
+            new JSONObject().put("custom_id", "form:1").put("components", components)));
+        assertEquals(InteractionRouter.KIND_MODAL, routed.kind);
+        assertEquals("Ada", routed.fields.get("name"));
+        assertEquals("Hi", routed.fields.get("bio"));
+    }
+
+    @Test
+    public void leavesCommandsAndUnmatchedIdsAlone() throws Exception {
+        router.addPrefix("vote:");
+        assertNull(router.route(interaction(2, new JSONObject().put("name", "ping"))));
+        assertNull(router.route(interaction(3, new JSONObject().put("custom_id", "other").put("component_type", 2))));
+    }
+}
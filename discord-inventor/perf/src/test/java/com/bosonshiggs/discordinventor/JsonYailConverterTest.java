@@ -0,0 +1,94 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+
+import com.google.appinventor.components.runtime.util.YailDictionary;
+import com.google.appinventor.components.runtime.util.YailList;
+
+import org.junit.Test;
+
+public class JsonYailConverterTest {
+
+    private static Object parse(String text) throws JsonYailConverter.JsonParseException {
+        return JsonYailConverter.parse(text, 0, 0);
+    }
+
+    private static void assertRejected(String text, int maxDepth, int maxLength) {
+        try {
+            JsonYailConverter.parse(text, maxDepth, maxLength);
+            fail("Accepted " + text);
+        } catch (JsonYailConverter.JsonParseException expected) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void objectsKeepKeyOrder() throws Exception {
+        YailDictionary object = (YailDictionary) parse("{\"b\":1,\"a\":\"x\",\"c\":true}");
+        assertEquals("[b, a, c]", object.keySet().toString());
+        assertEquals(1L, object.get("b"));
+        assertEquals("x", object.get("a"));
+        assertEquals(Boolean.TRUE, object.get("c"));
+    }
+
+    @Test
+    public void arraysBecomeLists() throws Exception {
+        YailList list = (YailList) parse("[1, [2, 3], {\"k\": []}, \"s\"]");
+        assertEquals(4, list.size());
+        assertEquals(1L, list.get(0));
+        assertEquals(YailList.makeList(new Object[] {2L, 3L}), list.get(1));
+        assertEquals(YailList.makeEmptyList(), ((YailDictionary) list.get(2)).get("k"));
+        assertEquals("s", list.get(3));
+    }
+
+    @Test
+    public void nullBecomesEmptyString() throws Exception {
+        YailDictionary object = (YailDictionary) parse("{\"edited\":null}");
+        assertEquals("", object.get("edited"));
+        assertEquals("", parse("null"));
+    }
+
+    @Test
+    public void numbers() throws Exception {
+        assertEquals(9223372036854775807L, parse("9223372036854775807"));
+        assertEquals(new BigInteger("18446744073709551616"), parse("18446744073709551616"));
+        assertEquals(-12L, parse("-12"));
+        assertEquals(1.5, parse("1.5"));
+        assertEquals(1000.0, parse("1e3"));
+    }
+
+    @Test
+    public void escapes() throws Exception {
+        assertEquals("a\"b\\c\né👍", parse("\"a\\\"b\\\\c\\n\\u00e9\\ud83d\\udc4d\""));
+    }
+
+    @Test
+    public void depthLimit() throws Exception {
+        assertTrue(JsonYailConverter.parse("[[[1]]]", 3, 0) instanceof YailList);
+        assertRejected("[[[[1]]]]", 3, 0);
+    }
+
+    @Test
+    public void lengthLimit() throws Exception {
+        assertEquals("abc", JsonYailConverter.parse("\"abc\"", 0, 5));
+        assertRejected("\"abcd\"", 0, 5);
+    }
+
+    @Test
+    public void malformedInput() {
+        assertRejected("", 0, 0);
+        assertRejected("{", 0, 0);
+        assertRejected("{\"a\"}", 0, 0);
+        assertRejected("{\"a\":}", 0, 0);
+        assertRejected("[1 2]", 0, 0);
+        assertRejected("[1,]", 0, 0);
+        assertRejected("{a:1}", 0, 0);
+        assertRejected("\"unterminated", 0, 0);
+        assertRejected("tru", 0, 0);
+        assertRejected("{} {}", 0, 0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.bosonshiggs.discordinventor.fake.FakeRestServer;
+import com.google.appinventor.components.runtime.Form;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessagePurgeTest {
+
+    private static final long CHANNEL = 1100000000000002001L;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private FakeRestServer server;
+    private DiscordRequestHelper requestHelper;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRestServer("127.0.0.1", 0);
+        server.setBucketLimit(0, 1000);
+        server.setGlobalLimit(0);
+        server.start();
+        Form form = new Form();
+        TokenManager tokenManager = new TokenManager();
+        tokenManager.setBotToken(form, "test-token");
+        requestHelper = new DiscordRequestHelper(tokenManager, uiHandler, form);
+        requestHelper.setBaseUrl(server.getBaseUrl("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void bulkBatchesStopAtTheFourteenDayEdge() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        ids.addAll(server.seedMessages(CHANNEL, 120, 13 * DAY_MS));
+        // Within a minute of turning 14 days old: too close to the edge for a bulk batch.
+        ids.addAll(server.seedMessages(CHANNEL, 3, 14 * DAY_MS - 30 * 1000));
+        ids.addAll(server.seedMessages(CHANNEL, 5, 15 * DAY_MS));
+        Collections.shuffle(ids);
+
+        final List<Object> messageIds = new ArrayList<Object>(ids);
+        messageIds.add(String.valueOf(ids.get(0)));
+        messageIds.add("not-an-id");
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] result = new int[3];
+        final List<String> failedIds = new ArrayList<>();
+        uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                new MessagePurge(requestHelper, String.valueOf(CHANNEL), messageIds, "purge", new MessagePurge.Listener() {
+                    @Override
+                    public void onProgress(int deleted, int failed, int total) {
+                    }
+
+                    @Override
+                    public void onCompleted(int deleted, int failed, int total, List<String> failures) {
+                        result[0] = deleted;
+                        result[1] = failed;
+                        result[2] = total;
+                        failedIds.addAll(failures);
+                        done.countDown();
+                    }
+                }).start();
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        // The duplicate is dropped and the invalid ID fails without a request.
+        assertEquals(128, result[0]);
+        assertEquals(1, result[1]);
+        assertEquals(129, result[2]);
+        assertEquals(Collections.singletonList("not-an-id"), failedIds);
+        Map<String, Long> routes = server.getRouteCounts();
+        assertEquals(Long.valueOf(2), routes.get("POST /channels/{channel_id}/messages/bulk-delete"));
+        assertEquals(Long.valueOf(8), routes.get("DELETE /channels/{channel_id}/messages/{id}"));
+    }
+
+    @Test
+    public void timestampOfReadsSnowflakeTime() {
+        assertEquals(MessagePurge.DISCORD_EPOCH, MessagePurge.timestampOf(0));
+        assertEquals(1420070400000L + 1000, MessagePurge.timestampOf(1000L << 22 | 5));
+    }
+}
@@ -0,0 +1,167 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PermissionCalculatorTest {
+
+    private static final long VIEW = DiscordPermissions.VIEW_CHANNEL;
+    private static final long SEND = 1L << 11;
+    private static final long MANAGE_MESSAGES = 1L << 13;
+
+    private static final long GUILD = 100;
+    private static final long OWNER = 1;
+    private static final long MODERATOR = 2;
+    private static final long ADMIN = 3;
+    private static final long MEMBER = 4;
+    private static final long MUTED = 5;
+    private static final long MOD_ROLE = 200;
+    private static final long ADMIN_ROLE = 300;
+    private static final long MUTED_ROLE = 400;
+    private static final long CHANNEL = 500;
+    private static final long THREAD = 501;
+
+    private EntityCache cache;
+    private PermissionCalculator calculator;
+
+    private static JSONObject role(long id, long permissions) throws Exception {
+        return new JSONObject().put("id", String.valueOf(id)).put("permissions", String.valueOf(permissions));
+    }
+
+    private static JSONObject member(long userId, long... roles) throws Exception {
+        JSONArray roleIds = new JSONArray();
+        for (long role : roles) {
+            roleIds.put(String.valueOf(role));
+        }
+        return new JSONObject().put("user", new JSONObject().put("id", String.valueOf(userId))).put("roles", roleIds);
+    }
+
+    private static JSONObject overwrite(long id, int type, long allow, long deny) throws Exception {
+        return new JSONObject().put("id", String.valueOf(id)).put("type", type)
+            .put("allow", String.valueOf(allow)).put("deny", String.valueOf(deny));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new EntityCache();
+        calculator = new PermissionCalculator(cache);
+        JSONObject channel = new JSONObject()
+            .put("id", String.valueOf(CHANNEL))
+            .put("type", 0)
+            .put("permission_overwrites", new JSONArray()
+                // Listed member-first, to show that the order in the payload doesn't matter.
+                .put(overwrite(MUTED, EntityCache.Overwrite.MEMBER, SEND, 0))
+                .put(overwrite(MUTED_ROLE, EntityCache.Overwrite.ROLE, 0, SEND | VIEW))
+                .put(overwrite(MOD_ROLE, EntityCache.Overwrite.ROLE, SEND, 0))
+                .put(overwrite(GUILD, EntityCache.Overwrite.ROLE, 0, SEND)));
+        JSONObject thread = new JSONObject()
+            .put("id", String.valueOf(THREAD))
+            .put("type", 11)
+            .put("parent_id", String.valueOf(CHANNEL));
+        cache.apply("GUILD_CREATE", new JSONObject()
+            .put("id", String.valueOf(GUILD))
+            .put("owner_id", String.valueOf(OWNER))
+            .put("roles", new JSONArray()
+                .put(role(GUILD, VIEW | SEND))
+                .put(role(MOD_ROLE, MANAGE_MESSAGES))
+                .put(role(ADMIN_ROLE, DiscordPermissions.ADMINISTRATOR))
+                .put(role(MUTED_ROLE, 0)))
+            .put("channels", new JSONArray().put(channel))
+            .put("members", new JSONArray()
+                .put(member(OWNER))
+                .put(member(MODERATOR, MOD_ROLE))
+                .put(member(ADMIN, ADMIN_ROLE))
+                .put(member(MEMBER))
+                .put(member(MUTED, MUTED_ROLE))));
+        cache.apply("CHANNEL_CREATE", thread.put("guild_id", String.valueOf(GUILD)));
+    }
+
+    @Test
+    public void guildPermissionsCombineEveryoneAndRoles() {
+        assertEquals(Long.valueOf(VIEW | SEND | MANAGE_MESSAGES), calculator.compute(GUILD, MODERATOR, 0));
+        assertEquals(Long.valueOf(VIEW | SEND), calculator.compute(GUILD, MEMBER, 0));
+    }
+
+    @Test
+    public void ownerHasEverything() {
+        assertEquals(Long.valueOf(DiscordPermissions.ALL), calculator.compute(GUILD, OWNER, CHANNEL));
+    }
+
+    @Test
+    public void administratorIgnoresOverwrites() {
+        assertEquals(Long.valueOf(DiscordPermissions.ALL), calculator.compute(GUILD, ADMIN, CHANNEL));
+    }
+
+    @Test
+    public void overwritesApplyEveryoneThenRolesThenMember() {
+        // @everyone loses SEND in the channel.
+        assertEquals(Long.valueOf(VIEW), calculator.compute(GUILD, MEMBER, CHANNEL));
+        // A role allow beats the @everyone deny.
+        assertEquals(Long.valueOf(VIEW | SEND | MANAGE_MESSAGES), calculator.compute(GUILD, MODERATOR, CHANNEL));
+        // A member allow beats a role deny, but the role's VIEW deny stands and takes everything with it.
+        assertEquals(Long.valueOf(0), calculator.compute(GUILD, MUTED, CHANNEL));
+    }
+
+    @Test
+    public void threadsUseParentOverwrites() {
+        assertEquals(calculator.compute(GUILD, MUTED, CHANNEL), calculator.compute(GUILD, MUTED, THREAD));
+    }
+
+    @Test
+    public void reportsWhatIsMissing() {
+        PermissionCalculator.Missing[] missing = new PermissionCalculator.Missing[1];
+        assertNull(calculator.compute(GUILD, 999, 0, missing));
+        assertEquals(PermissionCalculator.Missing.MEMBER, missing[0]);
+        assertNull(calculator.compute(GUILD, MEMBER, 999, missing));
+        assertEquals(PermissionCalculator.Missing.CHANNEL, missing[0]);
+        assertNull(calculator.compute(999, MEMBER, 0, missing));
+        assertEquals(PermissionCalculator.Missing.GUILD, missing[0]);
+    }
+
+    @Test
+    public void roleAndMemberUpdatesReachMemoizedResults() throws Exception {
+        assertEquals(Long.valueOf(VIEW | SEND), calculator.compute(GUILD, MEMBER, 0));
+
+        cache.apply("GUILD_ROLE_UPDATE", new JSONObject()
+            .put("guild_id", String.valueOf(GUILD))
+            .put("role", role(GUILD, VIEW)));
+        assertEquals(Long.valueOf(VIEW), calculator.compute(GUILD, MEMBER, 0));
+
+        cache.apply("GUILD_MEMBER_UPDATE", member(MEMBER, MOD_ROLE).put("guild_id", String.valueOf(GUILD)));
+        assertEquals(Long.valueOf(VIEW | MANAGE_MESSAGES), calculator.compute(GUILD, MEMBER, 0));
+    }
+
+    @Test
+    public void removedMemberIsMissingDespiteMemo() {
+        assertEquals(Long.valueOf(VIEW | SEND), calculator.compute(GUILD, MEMBER, 0));
+        cache.removeMember(GUILD, MEMBER);
+        PermissionCalculator.Missing[] missing = new PermissionCalculator.Missing[1];
+        assertNull(calculator.compute(GUILD, MEMBER, 0, missing));
+        assertEquals(PermissionCalculator.Missing.MEMBER, missing[0]);
+    }
+
+    @Test
+    public void timedOutMemberKeepsOnlyViewAndHistory() throws Exception {
+        cache.apply("GUILD_MEMBER_UPDATE", member(MODERATOR, MOD_ROLE).put("guild_id", String.valueOf(GUILD))
+            .put("communication_disabled_until", "2999-01-01T00:00:00.000000+00:00"));
+        assertEquals(Long.valueOf(VIEW), calculator.compute(GUILD, MODERATOR, 0));
+        assertEquals(Long.valueOf(VIEW), calculator.compute(GUILD, MODERATOR, CHANNEL));
+
+        cache.apply("GUILD_MEMBER_UPDATE", member(MODERATOR, MOD_ROLE).put("guild_id", String.valueOf(GUILD))
+            .put("communication_disabled_until", "2000-01-01T00:00:00+00:00"));
+        assertEquals(Long.valueOf(VIEW | SEND | MANAGE_MESSAGES), calculator.compute(GUILD, MODERATOR, CHANNEL));
+    }
+
+    @Test
+    public void parsesDiscordTimestamps() {
+        assertEquals(1640181778123L, EntityCache.parseTimestamp("2021-12-22T14:02:58.123000+00:00"));
+        assertEquals(1640181778000L, EntityCache.parseTimestamp("2021-12-22T15:02:58+01:00"));
+        assertEquals(1640181778500L, EntityCache.parseTimestamp("2021-12-22T14:02:58.5Z"));
+        assertEquals(0, EntityCache.parseTimestamp("yesterday"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+    private static final String MESSAGES = "https://discord.com/api/v10/channels/1/messages";
+    private static final DiscordRoute MESSAGES_ROUTE = DiscordRoute.of("GET", "/channels/1/messages");
+
+    private final ResponseCache cache = new ResponseCache();
+
+    private static DiscordResponse response(int status) {
+        byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+        return new DiscordResponse(status, Collections.<String, String>emptyMap(), body, body.length);
+    }
+
+    private void store(String key, DiscordRoute route, long now) {
+        cache.land(cache.join(key, route, "request"), response(200), now);
+    }
+
+    @Test
+    public void identicalRequestsShareOneFlight() {
+        ResponseCache.Flight<String> flight = cache.join(MESSAGES, MESSAGES_ROUTE, "first");
+        assertNotNull(flight);
+        assertNull(cache.join(MESSAGES, MESSAGES_ROUTE, "second"));
+        assertNull(cache.join(MESSAGES, MESSAGES_ROUTE, "third"));
+
+        assertEquals(Arrays.asList("first", "second", "third"), cache.land(flight, response(200), 0));
+        assertNotNull("The flight closed", cache.join(MESSAGES, MESSAGES_ROUTE, "fourth"));
+    }
+
+    @Test
+    public void responsesLiveForTheirRouteTtl() {
+        store(MESSAGES, MESSAGES_ROUTE, 1000);
+        assertNotNull(cache.get(MESSAGES, 5999));
+        assertNull(cache.get(MESSAGES, 6000));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void uncachedRoutesAndFailuresAreNotStored() {
+        store("https://discord.com/api/v10/users/@me", DiscordRoute.of("GET", "/users/@me"), 0);
+        cache.land(cache.join(MESSAGES, MESSAGES_ROUTE, "request"), response(404), 0);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidationDuringFlightKeepsResponseOut() {
+        ResponseCache.Flight<String> flight = cache.join(MESSAGES, MESSAGES_ROUTE, "request");
+        cache.invalidate("1", null);
+        cache.land(flight, response(200), 0);
+        assertNull(cache.get(MESSAGES, 0));
+    }
+
+    @Test
+    public void invalidationMatchesChannelAndTemplatePrefix() {
+        String channel = "https://discord.com/api/v10/channels/1";
+        store(channel, DiscordRoute.of("GET", "/channels/1"), 0);
+        store(MESSAGES, MESSAGES_ROUTE, 0);
+
+        cache.invalidate("2", null);
+        cache.invalidate("1", "/channels/{channel_id}/messages");
+        assertNull(cache.get(MESSAGES, 0));
+        assertNotNull(cache.get(channel, 0));
+    }
+
+    @Test
+    public void gatewayEventsDropStaleEntries() throws Exception {
+        store(MESSAGES, MESSAGES_ROUTE, 0);
+        cache.onGatewayEvent("MESSAGE_CREATE", new JSONObject().put("channel_id", "1"));
+        assertTrue(cache.isIdle());
+    }
+
+    @Test
+    public void skippedFramesDropStaleEntries() {
+        store(MESSAGES, MESSAGES_ROUTE, 0);
+        cache.onGatewayFrame("TYPING_START", "{\"t\":\"TYPING_START\",\"op\":0,\"d\":{\"channel_id\":\"1\"}}");
+        cache.onGatewayFrame("MESSAGE_CREATE", "{\"t\":\"MESSAGE_CREATE\",\"op\":0,\"d\":{\"channel_id\":\"2\"}}");
+        assertNotNull(cache.get(MESSAGES, 0));
+
+        cache.onGatewayFrame("MESSAGE_DELETE", "{\"t\":\"MESSAGE_DELETE\",\"op\":0,\"d\":{\"id\":\"9\",\"channel_id\":\"1\"}}");
+        assertNull(cache.get(MESSAGES, 0));
+    }
+}
@@ -0,0 +1,95 @@
+package com.bosonshiggs.discordinventor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class ZlibStreamDecoderTest {
+
+    /** One zlib stream for the whole connection, flushed after every payload like Discord does. */
+    private final Deflater deflater = new Deflater();
+
+    private byte[] compress(String payload) {
+        deflater.setInput(payload.getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[payload.length() + 64];
+        int length = 0;
+        while (true) {
+            length += deflater.deflate(buffer, length, buffer.length - length, Deflater.SYNC_FLUSH);
+            if (length < buffer.length) {
+                return Arrays.copyOf(buffer, length);
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+
+    private static ByteBuffer slice(byte[] data, int from, int to) {
+        return ByteBuffer.wrap(Arrays.copyOfRange(data, from, to));
+    }
+
+    @Test
+    public void decodesWholeFrames() throws Exception {
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        assertEquals("{\"op\":10}", decoder.feed(ByteBuffer.wrap(compress("{\"op\":10}"))));
+        assertEquals("{\"op\":11}", decoder.feed(ByteBuffer.wrap(compress("{\"op\":11}"))));
+    }
+
+    @Test
+    public void joinsPayloadSplitAcrossFrames() throws Exception {
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        StringBuilder json = new StringBuilder("{\"op\":0,\"d\":[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(1100000000000000000L + i).append("\"}");
+        }
+        String payload = json.append("]}").toString();
+        byte[] data = compress(payload);
+
+        int third = data.length / 3;
+        assertNull(decoder.feed(slice(data, 0, third)));
+        assertNull(decoder.feed(slice(data, third, 2 * third)));
+        assertEquals(payload, decoder.feed(slice(data, 2 * third, data.length)));
+        assertEquals(data.length, decoder.getCompressedBytes());
+        assertEquals(payload.length(), decoder.getInflatedBytes());
+    }
+
+    @Test
+    public void splitInsideSyncMarkerWaitsForTheRest() throws Exception {
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        byte[] data = compress("{\"op\":0,\"t\":\"READY\"}");
+        assertNull(decoder.feed(slice(data, 0, data.length - 2)));
+        assertEquals("{\"op\":0,\"t\":\"READY\"}", decoder.feed(slice(data, data.length - 2, data.length)));
+    }
+
+    @Test(timeout = 5000, expected = DataFormatException.class)
+    public void endedStreamFailsInsteadOfSpinning() throws Exception {
+        byte[] payload = "{\"op\":10}".getBytes(StandardCharsets.UTF_8);
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] buffer = new byte[256];
+        int length = deflater.deflate(buffer);
+        // Trailing bytes after the end of the stream, ending like a complete payload.
+        byte[] frame = Arrays.copyOf(buffer, length + 4);
+        frame[length + 2] = (byte) 0xFF;
+        frame[length + 3] = (byte) 0xFF;
+        new ZlibStreamDecoder().feed(ByteBuffer.wrap(frame));
+    }
+
+    @Test
+    public void resetStartsNewStreamAndCloseIgnoresFrames() throws Exception {
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        decoder.feed(ByteBuffer.wrap(compress("{\"op\":10}")));
+
+        decoder.close();
+        assertNull(decoder.feed(ByteBuffer.wrap(compress("{\"op\":11}"))));
+
+        decoder.reset();
+        deflater.reset();
+        assertEquals("{\"op\":10}", decoder.feed(ByteBuffer.wrap(compress("{\"op\":10}"))));
+    }
+}
@@ -1,21 +1,17 @@
 package com.bosonshiggs.discordinventor;
 
-import java.net.URI;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Locale;
+import java.util.HashSet;
+import java.util.Map;
 
 import android.os.Handler;
 import android.os.Looper;
 
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.Iterator;
-
 import com.google.appinventor.components.annotations.DesignerComponent;
 import com.google.appinventor.components.annotations.DesignerProperty;
 import com.google.appinventor.components.annotations.SimpleEvent;
@@ -32,8 +28,7 @@ import com.google.appinventor.components.runtime.util.YailDictionary;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.util.YailDictionary;
 
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONException;
 
@@ -44,18 +39,68 @@ import org.json.JSONException;
 	helpUrl = "https://github.com/iagolirapasssos/Discord-Inventor"
 )
 public class DiscordEvents extends AndroidNonvisibleComponent {
-    private WebSocketClient webSocketClient;
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private volatile List<GatewayConnection> connections = Collections.emptyList();
     private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final DiscordRequestHelper requestHelper;
+    private int shardCount = 1;
+    private int monitoringGeneration;
     private String botToken;
-    private final String GATEWAY_URL = "wss://gateway.discord.gg/?v=10&encoding=json";
-    private Timer heartbeatTimer;
+    private static final String DEFAULT_GATEWAY_URL = "wss://gateway.discord.gg/?v=10&encoding=json";
+    private String gatewayUrl = DEFAULT_GATEWAY_URL;
+    private static final String GATEWAY_ERROR = "GATEWAY";
+
+    private final GatewayDispatcher<GatewayEvent> dispatcher;
+    private volatile boolean handleDelivery = false;
+    private String droppableEventTypes = "TYPING_START,PRESENCE_UPDATE";
+    private boolean useCompression = false;
+
+    private static final String DEFAULT_INTENTS = "GUILDS,GUILD_MEMBERS,GUILD_MODERATION,GUILD_EXPRESSIONS,GUILD_INTEGRATIONS,GUILD_WEBHOOKS,GUILD_INVITES,GUILD_VOICE_STATES,GUILD_MESSAGES,GUILD_MESSAGE_REACTIONS,DIRECT_MESSAGES,DIRECT_MESSAGE_REACTIONS,MESSAGE_CONTENT,GUILD_SCHEDULED_EVENTS,AUTO_MODERATION_CONFIGURATION,AUTO_MODERATION_EXECUTION";
+    private String intents = DEFAULT_INTENTS;
+    private int intentsMask = GatewayIntents.fromString(DEFAULT_INTENTS);
+
+    private final GatewayEventFilter eventFilter = new GatewayEventFilter();
+    private final InteractionRouter interactionRouter = new InteractionRouter();
+    private String eventAllowList = "";
+    private String eventDenyList = "PRESENCE_UPDATE";
+
+    private final EntityCache entityCache = EntityCache.shared();
+    private volatile boolean cacheEnabled = true;
+
+    private static final String ARCHIVE_DIRECTORY = "discord-archive";
+    private EventArchive archive;
+    private volatile boolean archiveEnabled = false;
+    private int archiveRetentionDays = 0;
 
-    private final BlockingQueue<JSONObject> eventQueue = new LinkedBlockingQueue<>();
-    private Timer eventTimer;
+    private int jsonMaxDepth = 64;
+    private int jsonMaxLength = 4 * 1024 * 1024;
 
     public DiscordEvents(ComponentContainer container) {
         super(container.$form());
+        requestHelper = new DiscordRequestHelper(
+            new TokenManager(),
+            uiHandler,
+            form.getApplicationContext()
+        );
+        dispatcher = new GatewayDispatcher<>(uiHandler, new GatewayDispatcher.Listener<GatewayEvent>() {
+            @Override
+            public void onEvent(String eventType, GatewayEvent event) {
+                if (event instanceof InteractionRouter.Routed) {
+                    raiseInteraction((InteractionRouter.Routed) event);
+                    return;
+                }
+                if (handleDelivery) {
+                    EventReceived(eventType, event);
+                    return;
+                }
+                YailList eventInfoList = parseEventInfo(event);
+                if (!eventInfoList.isEmpty()) {
+                    DiscordEvent(eventType, eventInfoList);
+                }
+            }
+        });
+        DroppableEventTypes(droppableEventTypes);
+        EventDenyList(eventDenyList);
+        CacheEnabled(cacheEnabled);
     }
 
     /**
@@ -79,6 +124,717 @@ public class DiscordEvents extends AndroidNonvisibleComponent {
         return botToken;
     }
 
+    @SimpleProperty
+    public void ApiBaseUrl(String url) {
+        try {
+            requestHelper.setBaseUrl(url);
+        } catch (IllegalArgumentException e) {
+            uiHandler.post(() -> Error("ApiBaseUrl", e.getMessage()));
+        }
+    }
+
+    @SimpleProperty(description = "Root of the Discord REST API this component talks to, for testing against a local fake Discord server; empty restores the default. Must be https, or http to this device, since every request carries the bot token. Rate limits and cached responses are kept per root; request metrics are shared.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String ApiBaseUrl() {
+        return requestHelper.getBaseUrl();
+    }
+
+    @SimpleProperty
+    public void GatewayUrl(String url) {
+        String trimmed = url == null ? "" : url.trim();
+        if (trimmed.isEmpty()) {
+            trimmed = DEFAULT_GATEWAY_URL;
+        }
+        try {
+            DiscordRequestHelper.checkTrustedUrl(trimmed, "wss", "ws");
+        } catch (IllegalArgumentException e) {
+            uiHandler.post(() -> Error("GatewayUrl", e.getMessage()));
+            return;
+        }
+        gatewayUrl = trimmed;
+    }
+
+    @SimpleProperty(description = "Gateway WebSocket URL used by StartMonitoring, including the v and encoding parameters, for testing against a local fake Discord server; empty restores the default. Must be wss, or ws to this device, since the bot token is sent to it. Takes effect on the next StartMonitoring.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String GatewayUrl() {
+        return gatewayUrl;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_TEXTAREA,
+        defaultValue = "GUILDS,GUILD_MEMBERS,GUILD_MODERATION,GUILD_EXPRESSIONS,GUILD_INTEGRATIONS,GUILD_WEBHOOKS,GUILD_INVITES,GUILD_VOICE_STATES,GUILD_MESSAGES,GUILD_MESSAGE_REACTIONS,DIRECT_MESSAGES,DIRECT_MESSAGE_REACTIONS,MESSAGE_CONTENT,GUILD_SCHEDULED_EVENTS,AUTO_MODERATION_CONFIGURATION,AUTO_MODERATION_EXECUTION"
+    )
+    @SimpleProperty
+    public void Intents(String intentNames) {
+        try {
+            intentsMask = GatewayIntents.fromString(intentNames);
+            intents = intentNames;
+        } catch (IllegalArgumentException e) {
+            Error("INTENTS", e.getMessage());
+        }
+    }
+
+    @SimpleProperty(description = "Comma-separated Gateway intents to subscribe to, e.g. GUILDS,GUILD_MESSAGES,MESSAGE_CONTENT. Discord only sends events for these intents. ALL selects every intent the extension used before, including GUILD_PRESENCES and typing. Takes effect on the next StartMonitoring.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String Intents() {
+        return intents;
+    }
+
+    @SimpleProperty(description = "The intents bitmask sent in IDENTIFY.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int IntentsMask() {
+        return intentsMask;
+    }
+
+    @SimpleFunction(description = "Computes the Gateway intents bitmask for a list of intent names. Returns -1 and raises Error if a name is unknown.")
+    public int ComputeIntents(YailList intentNames) {
+        try {
+            return GatewayIntents.fromNames(Arrays.asList(intentNames.toArray()));
+        } catch (IllegalArgumentException e) {
+            Error("INTENTS", e.getMessage());
+            return -1;
+        }
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "50"
+    )
+    @SimpleProperty
+    public void MaxEventsPerFrame(int maxEvents) {
+        dispatcher.setMaxEventsPerFrame(maxEvents);
+    }
+
+    @SimpleProperty(description = "Maximum number of DiscordEvent events delivered in one pass of the UI thread before it is given back to draw the screen.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxEventsPerFrame() {
+        return dispatcher.getMaxEventsPerFrame();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "1000"
+    )
+    @SimpleProperty
+    public void EventQueueCapacity(int capacity) {
+        dispatcher.setCapacity(capacity);
+    }
+
+    @SimpleProperty(description = "Maximum number of events waiting to be delivered. What happens when it is full depends on OverflowPolicy.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int EventQueueCapacity() {
+        return dispatcher.getCapacity();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_CHOICES,
+        defaultValue = "DropOldest",
+        editorArgs = {"DropOldest", "DropByType", "Block"}
+    )
+    @SimpleProperty
+    public void OverflowPolicy(String policy) {
+        if ("Block".equalsIgnoreCase(policy)) {
+            dispatcher.setOverflowPolicy(GatewayDispatcher.OverflowPolicy.BLOCK);
+        } else if ("DropByType".equalsIgnoreCase(policy)) {
+            dispatcher.setOverflowPolicy(GatewayDispatcher.OverflowPolicy.DROP_BY_TYPE);
+        } else {
+            dispatcher.setOverflowPolicy(GatewayDispatcher.OverflowPolicy.DROP_OLDEST);
+        }
+    }
+
+    @SimpleProperty(description = "What to do when the event queue is full: DropOldest, DropByType (drop DroppableEventTypes first) or Block (pause reading from Discord for up to a second, then drop new events until there is room; longer pauses would miss heartbeat ACKs and make the connection reconnect).",
+                    category = PropertyCategory.BEHAVIOR)
+    public String OverflowPolicy() {
+        switch (dispatcher.getOverflowPolicy()) {
+            case BLOCK:
+                return "Block";
+            case DROP_BY_TYPE:
+                return "DropByType";
+            default:
+                return "DropOldest";
+        }
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_STRING,
+        defaultValue = "TYPING_START,PRESENCE_UPDATE"
+    )
+    @SimpleProperty
+    public void DroppableEventTypes(String eventTypes) {
+        droppableEventTypes = eventTypes;
+        dispatcher.setDroppableTypes(splitEventTypes(eventTypes));
+    }
+
+    @SimpleProperty(description = "Comma-separated event types the DropByType overflow policy discards first.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String DroppableEventTypes() {
+        return droppableEventTypes;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+        defaultValue = "False"
+    )
+    @SimpleProperty
+    public void UseCompression(boolean enabled) {
+        this.useCompression = enabled;
+    }
+
+    @SimpleProperty(description = "Whether the Gateway connection uses zlib-stream transport compression. Takes effect on the next StartMonitoring.",
+                    category = PropertyCategory.BEHAVIOR)
+    public boolean UseCompression() {
+        return useCompression;
+    }
+
+    @SimpleFunction(description = "Returns Gateway compression counters: CompressedBytes received, InflatedBytes of JSON they produced, and Ratio between them.")
+    public YailDictionary GetCompressionStats() {
+        long compressed = 0;
+        long inflated = 0;
+        for (GatewayConnection shard : connections) {
+            compressed += shard.getCompressedBytes();
+            inflated += shard.getInflatedBytes();
+        }
+        YailDictionary result = new YailDictionary();
+        result.put("CompressedBytes", compressed);
+        result.put("InflatedBytes", inflated);
+        result.put("Ratio", compressed == 0 ? 0 : (double) inflated / compressed);
+        return result;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_STRING,
+        defaultValue = ""
+    )
+    @SimpleProperty
+    public void EventAllowList(String eventTypes) {
+        eventAllowList = eventTypes;
+        eventFilter.setAllowed(splitEventTypes(eventTypes));
+    }
+
+    @SimpleProperty(description = "Comma-separated event types to deliver, e.g. MESSAGE_CREATE,GUILD_MEMBER_ADD. Leave empty to deliver every type not in EventDenyList. Other events are skipped before they are parsed.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String EventAllowList() {
+        return eventAllowList;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_STRING,
+        defaultValue = "PRESENCE_UPDATE"
+    )
+    @SimpleProperty
+    public void EventDenyList(String eventTypes) {
+        eventDenyList = eventTypes;
+        eventFilter.setDenied(splitEventTypes(eventTypes));
+    }
+
+    @SimpleProperty(description = "Comma-separated event types that are never delivered. They are skipped before they are parsed.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String EventDenyList() {
+        return eventDenyList;
+    }
+
+    @SimpleFunction(description = "Returns a dictionary with one entry per event type, each holding the Received, Skipped and Dispatched frame counts.")
+    public YailDictionary GetEventCounters() {
+        YailDictionary result = new YailDictionary();
+        for (Map.Entry<String, GatewayEventFilter.Counters> entry : eventFilter.getCounters().entrySet()) {
+            YailDictionary counts = new YailDictionary();
+            counts.put("Received", entry.getValue().getReceived());
+            counts.put("Skipped", entry.getValue().getSkipped());
+            counts.put("Dispatched", entry.getValue().getDispatched());
+            result.put(entry.getKey(), counts);
+        }
+        return result;
+    }
+
+    @SimpleFunction(description = "Resets the per-event-type counters.")
+    public void ResetEventCounters() {
+        eventFilter.resetCounters();
+    }
+
+    @SimpleProperty(description = "Round trip in milliseconds of the last Gateway heartbeat, averaged over the shards, or -1 when not connected yet.",
+                    category = PropertyCategory.BEHAVIOR)
+    public long GatewayLatency() {
+        long total = 0;
+        int measured = 0;
+        for (GatewayConnection shard : connections) {
+            long latency = shard.getLatencyMs();
+            if (latency >= 0) {
+                total += latency;
+                measured++;
+            }
+        }
+        return measured == 0 ? -1 : total / measured;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "1"
+    )
+    @SimpleProperty
+    public void ShardCount(int count) {
+        this.shardCount = count;
+    }
+
+    @SimpleProperty(description = "Number of Gateway connections (shards) to open. 0 uses the count Discord recommends for the bot. Takes effect on the next StartMonitoring.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int ShardCount() {
+        return shardCount;
+    }
+
+    @SimpleFunction(description = "Returns one dictionary per shard with ShardId, State, LatencyMs, Sequence, Resumable and ReconnectAttempts.")
+    public YailList GetShardStatus() {
+        List<YailDictionary> statuses = new ArrayList<>();
+        for (GatewayConnection shard : connections) {
+            YailDictionary status = new YailDictionary();
+            status.put("ShardId", shard.getShardId());
+            status.put("State", shard.getState());
+            status.put("LatencyMs", shard.getLatencyMs());
+            status.put("Sequence", shard.getSequence());
+            status.put("Resumable", shard.canResume());
+            status.put("ReconnectAttempts", shard.getReconnectAttempts());
+            statuses.add(status);
+        }
+        return YailList.makeList(statuses);
+    }
+
+    @SimpleFunction(description = "Raises ButtonClicked, SelectChosen or ModalSubmitted, instead of DiscordEvent or EventReceived, for interactions whose custom_id is exactly this one. INTERACTION_CREATE must not be filtered out by EventAllowList or EventDenyList.")
+    public void AddInteractionRoute(String customId) {
+        interactionRouter.addExact(customId);
+    }
+
+    @SimpleFunction(description = "Like AddInteractionRoute, for every custom_id starting with the prefix, such as \"vote:\" for \"vote:42\". An exact route wins over a prefix, and a longer prefix over a shorter one.")
+    public void AddInteractionPrefixRoute(String prefix) {
+        interactionRouter.addPrefix(prefix);
+    }
+
+    @SimpleFunction(description = "Removes the exact and the prefix route with this text.")
+    public void RemoveInteractionRoute(String route) {
+        interactionRouter.remove(route);
+    }
+
+    @SimpleFunction(description = "Removes every interaction route; all interactions arrive as DiscordEvent or EventReceived again.")
+    public void ClearInteractionRoutes() {
+        interactionRouter.clear();
+    }
+
+    @SimpleFunction(description = "Returns event delivery metrics: QueueDepth, MaxQueueDepth, Enqueued, Dispatched, Dropped and LastLagMs, AverageLagMs, MaxLagMs (time from arrival to delivery).")
+    public YailDictionary GetDispatcherMetrics() {
+        GatewayDispatcher.Metrics metrics = dispatcher.getMetrics();
+        YailDictionary result = new YailDictionary();
+        result.put("QueueDepth", metrics.queueDepth);
+        result.put("MaxQueueDepth", metrics.maxQueueDepth);
+        result.put("Enqueued", metrics.enqueued);
+        result.put("Dispatched", metrics.dispatched);
+        result.put("Dropped", metrics.dropped);
+        result.put("LastLagMs", metrics.lastLagMs);
+        result.put("AverageLagMs", metrics.averageLagMs);
+        result.put("MaxLagMs", metrics.maxLagMs);
+        return result;
+    }
+
+    @SimpleFunction(description = "Resets the event delivery metrics.")
+    public void ResetDispatcherMetrics() {
+        dispatcher.resetMetrics();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+        defaultValue = "True"
+    )
+    @SimpleProperty
+    public void CacheEnabled(boolean enabled) {
+        cacheEnabled = enabled;
+        updateObservedEvents();
+    }
+
+    @SimpleProperty(description = "Whether guilds, channels, members and roles from Gateway events are kept in memory for the GetCached blocks. The cache is shared by every component in the app.",
+                    category = PropertyCategory.BEHAVIOR)
+    public boolean CacheEnabled() {
+        return cacheEnabled;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "500"
+    )
+    @SimpleProperty
+    public void MaxCachedGuilds(int maxGuilds) {
+        entityCache.setMaxGuilds(maxGuilds);
+    }
+
+    @SimpleProperty(description = "Maximum number of guilds kept in the cache. The least recently used are evicted first.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxCachedGuilds() {
+        return entityCache.getMaxGuilds();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "10000"
+    )
+    @SimpleProperty
+    public void MaxCachedChannels(int maxChannels) {
+        entityCache.setMaxChannels(maxChannels);
+    }
+
+    @SimpleProperty(description = "Maximum number of channels kept in the cache. The least recently used are evicted first.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxCachedChannels() {
+        return entityCache.getMaxChannels();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "10000"
+    )
+    @SimpleProperty
+    public void MaxCachedMembers(int maxMembers) {
+        entityCache.setMaxMembers(maxMembers);
+    }
+
+    @SimpleProperty(description = "Maximum number of guild members kept in the cache. The least recently used are evicted first.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxCachedMembers() {
+        return entityCache.getMaxMembers();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "5000"
+    )
+    @SimpleProperty
+    public void MaxCachedRoles(int maxRoles) {
+        entityCache.setMaxRoles(maxRoles);
+    }
+
+    @SimpleProperty(description = "Maximum number of roles kept in the cache. The least recently used are evicted first.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxCachedRoles() {
+        return entityCache.getMaxRoles();
+    }
+
+    @SimpleFunction(description = "Returns the cached guild as a dictionary with Id, Name, OwnerId and MemberCount, or an empty dictionary if it is not cached.")
+    public YailDictionary GetCachedGuild(String guildId) {
+        EntityCache.Guild guild = entityCache.getGuild(EntityCache.parseSnowflake(guildId));
+        YailDictionary result = new YailDictionary();
+        if (guild != null) {
+            result.put("Id", Long.toString(guild.id));
+            result.put("Name", guild.name);
+            result.put("OwnerId", Long.toString(guild.ownerId));
+            result.put("MemberCount", guild.memberCount);
+        }
+        return result;
+    }
+
+    @SimpleFunction(description = "Returns the cached channel as a dictionary with Id, GuildId, Name, Type, ParentId and Position, or an empty dictionary if it is not cached.")
+    public YailDictionary GetCachedChannel(String channelId) {
+        EntityCache.Channel channel = entityCache.getChannel(EntityCache.parseSnowflake(channelId));
+        return channel != null ? channelToDictionary(channel) : new YailDictionary();
+    }
+
+    @SimpleFunction(description = "Returns the cached channels of a guild as a list of dictionaries.")
+    public YailList GetCachedChannels(String guildId) {
+        List<YailDictionary> result = new ArrayList<>();
+        for (EntityCache.Channel channel : entityCache.getChannels(EntityCache.parseSnowflake(guildId))) {
+            result.add(channelToDictionary(channel));
+        }
+        return YailList.makeList(result);
+    }
+
+    @SimpleFunction(description = "Returns the cached guild member as a dictionary with UserId, Username, Nick and Roles, or an empty dictionary if it is not cached.")
+    public YailDictionary GetCachedMember(String guildId, String userId) {
+        EntityCache.Member member = entityCache.getMember(EntityCache.parseSnowflake(guildId),
+                                                          EntityCache.parseSnowflake(userId));
+        YailDictionary result = new YailDictionary();
+        if (member != null) {
+            result.put("UserId", Long.toString(member.userId));
+            result.put("Username", member.username);
+            result.put("Nick", member.nick);
+            result.put("Roles", roleIdList(member.roleIds));
+        }
+        return result;
+    }
+
+    @SimpleFunction(description = "Returns the role IDs of a cached guild member, or an empty list if the member is not cached.")
+    public YailList GetCachedMemberRoles(String guildId, String userId) {
+        EntityCache.Member member = entityCache.getMember(EntityCache.parseSnowflake(guildId),
+                                                          EntityCache.parseSnowflake(userId));
+        return roleIdList(member != null ? member.roleIds : new long[0]);
+    }
+
+    @SimpleFunction(description = "Returns the cached roles of a guild as a list of dictionaries with Id, Name, Permissions and Position.")
+    public YailList GetCachedRoles(String guildId) {
+        List<YailDictionary> result = new ArrayList<>();
+        for (EntityCache.Role role : entityCache.getRoles(EntityCache.parseSnowflake(guildId))) {
+            YailDictionary dictionary = new YailDictionary();
+            dictionary.put("Id", Long.toString(role.id));
+            dictionary.put("Name", role.name);
+            dictionary.put("Permissions", Long.toString(role.permissions));
+            dictionary.put("Position", role.position);
+            result.add(dictionary);
+        }
+        return YailList.makeList(result);
+    }
+
+    @SimpleFunction(description = "Returns how many Guilds, Channels, Members and Roles are cached.")
+    public YailDictionary GetCacheStats() {
+        YailDictionary result = new YailDictionary();
+        result.put("Guilds", entityCache.getGuildCount());
+        result.put("Channels", entityCache.getChannelCount());
+        result.put("Members", entityCache.getMemberCount());
+        result.put("Roles", entityCache.getRoleCount());
+        return result;
+    }
+
+    @SimpleFunction(description = "Removes everything from the entity cache.")
+    public void ClearCache() {
+        entityCache.clear();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+        defaultValue = "False"
+    )
+    @SimpleProperty
+    public void ArchiveEnabled(boolean enabled) {
+        if (enabled) {
+            archive();
+        }
+        archiveEnabled = enabled;
+        updateObservedEvents();
+    }
+
+    @SimpleProperty(description = "Whether messages from the Gateway are stored on the device, so QueryArchive can return channel history after the app restarts. Edits and deletions are applied to the stored copies.",
+                    category = PropertyCategory.BEHAVIOR)
+    public boolean ArchiveEnabled() {
+        return archiveEnabled;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "0"
+    )
+    @SimpleProperty
+    public void ArchiveRetentionDays(int days) {
+        archiveRetentionDays = days;
+    }
+
+    @SimpleProperty(description = "Messages older than this many days are removed by CompactArchive. 0 keeps every message.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int ArchiveRetentionDays() {
+        return archiveRetentionDays;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "64"
+    )
+    @SimpleProperty
+    public void JsonMaxDepth(int depth) {
+        jsonMaxDepth = depth;
+    }
+
+    @SimpleProperty(description = "Deepest nesting of objects and arrays ParseJson and ParseJsonString accept. 0 means no limit.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int JsonMaxDepth() {
+        return jsonMaxDepth;
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "4194304"
+    )
+    @SimpleProperty
+    public void JsonMaxLength(int length) {
+        jsonMaxLength = length;
+    }
+
+    @SimpleProperty(description = "Longest text, in characters, ParseJson and ParseJsonString accept. 0 means no limit.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int JsonMaxLength() {
+        return jsonMaxLength;
+    }
+
+    @SimpleFunction(description = "Looks up archived messages of a channel created between two times, given in milliseconds since 1970 (0 leaves that end open). At most limit messages are returned, the newest of the range, oldest first; 0 returns all. The result arrives in ArchiveQueryResult.")
+    public void QueryArchive(String channelId, long fromMillis, long toMillis, int limit, String tag) {
+        archive().query(EntityCache.parseSnowflake(channelId), fromMillis, toMillis, limit,
+            new EventArchive.QueryCallback() {
+                @Override
+                public void onResult(List<String> messages) {
+                    YailList result = YailList.makeList(messages);
+                    uiHandler.post(() -> ArchiveQueryResult(tag, result));
+                }
+
+                @Override
+                public void onError(String error) {
+                    uiHandler.post(() -> Error(tag, "Archive query failed: " + error));
+                }
+            });
+    }
+
+    @SimpleFunction(description = "Rewrites the archive keeping only the latest version of each message that was not deleted, and drops messages older than ArchiveRetentionDays.")
+    public void CompactArchive(String tag) {
+        archive().compact(archiveRetentionDays, new EventArchive.CompactCallback() {
+            @Override
+            public void onCompacted(int messages) {
+                uiHandler.post(() -> Response(tag, "Archive compacted: " + messages + " messages kept."));
+            }
+
+            @Override
+            public void onError(String error) {
+                uiHandler.post(() -> Error(tag, "Archive compaction failed: " + error));
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Returns the number of archived Messages and Channels, the Segments files and their total Bytes.")
+    public YailDictionary GetArchiveStats() {
+        EventArchive current = archive();
+        YailDictionary result = new YailDictionary();
+        result.put("Messages", current.getMessageCount());
+        result.put("Channels", current.getChannelCount());
+        result.put("Segments", current.getSegmentCount());
+        result.put("Bytes", current.getTotalBytes());
+        return result;
+    }
+
+    @SimpleFunction(description = "Deletes every archived message from the device.")
+    public void ClearArchive() {
+        archive().clear();
+    }
+
+    private EventArchive archive() {
+        if (archive == null) {
+            archive = EventArchive.open(new File(form.getApplicationContext().getFilesDir(), ARCHIVE_DIRECTORY));
+            archive.load();
+        }
+        return archive;
+    }
+
+    private void raiseInteraction(InteractionRouter.Routed interaction) {
+        switch (interaction.kind) {
+            case InteractionRouter.KIND_BUTTON:
+                ButtonClicked(interaction.interactionId, interaction.interactionToken, interaction.customId,
+                    interaction.route, interaction.userId, interaction.guildId, interaction.channelId,
+                    interaction.messageId);
+                break;
+            case InteractionRouter.KIND_SELECT:
+                SelectChosen(interaction.interactionId, interaction.interactionToken, interaction.customId,
+                    interaction.route, YailList.makeList(interaction.values), interaction.userId,
+                    interaction.guildId, interaction.channelId, interaction.messageId);
+                break;
+            default:
+                YailDictionary fields = new YailDictionary();
+                for (Map.Entry<String, String> field : interaction.fields.entrySet()) {
+                    fields.put(field.getKey(), field.getValue());
+                }
+                ModalSubmitted(interaction.interactionId, interaction.interactionToken, interaction.customId,
+                    interaction.route, fields, interaction.userId, interaction.guildId, interaction.channelId);
+                break;
+        }
+    }
+
+    private void updateObservedEvents() {
+        // Interactions are tracked even when the app doesn't receive them. Cached REST responses need
+        // no full parse: skipped frames are scanned for their IDs instead.
+        HashSet<String> observed = new HashSet<>(InteractionDeadlines.EVENT_TYPES);
+        if (cacheEnabled) {
+            observed.addAll(EntityCache.EVENT_TYPES);
+        }
+        if (archiveEnabled) {
+            observed.addAll(EventArchive.EVENT_TYPES);
+        }
+        eventFilter.setObserved(observed);
+    }
+
+    private static YailDictionary channelToDictionary(EntityCache.Channel channel) {
+        YailDictionary result = new YailDictionary();
+        result.put("Id", Long.toString(channel.id));
+        result.put("GuildId", Long.toString(channel.guildId));
+        result.put("Name", channel.name);
+        result.put("Type", channel.type);
+        result.put("ParentId", channel.parentId != 0 ? Long.toString(channel.parentId) : "");
+        result.put("Position", channel.position);
+        return result;
+    }
+
+    private static YailList roleIdList(long[] roleIds) {
+        List<String> ids = new ArrayList<>(roleIds.length);
+        for (long roleId : roleIds) {
+            ids.add(Long.toString(roleId));
+        }
+        return YailList.makeList(ids);
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_CHOICES,
+        defaultValue = "List",
+        editorArgs = {"List", "Handle"}
+    )
+    @SimpleProperty
+    public void EventDelivery(String delivery) {
+        handleDelivery = "Handle".equalsIgnoreCase(delivery);
+    }
+
+    @SimpleProperty(description = "How events reach the app. List raises DiscordEvent with the event type and the payload as JSON text. Handle raises EventReceived with a handle on the parsed payload; read it with GetField or GetRawJson, so nothing is serialized or parsed again unless asked for.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String EventDelivery() {
+        return handleDelivery ? "Handle" : "List";
+    }
+
+    @SimpleFunction(description = "Reads a value from an event handle by path, e.g. author.id or embeds.0.title. Objects and arrays are returned as JSON text. Returns an empty string if the path does not exist.")
+    public Object GetField(Object event, String path) {
+        GatewayEvent handle = asEvent(event, "GetField");
+        if (handle == null) {
+            return "";
+        }
+        Object value = handle.getField(path);
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    @SimpleFunction(description = "Tells whether an event handle has a non-null value at a path.")
+    public boolean HasField(Object event, String path) {
+        GatewayEvent handle = asEvent(event, "HasField");
+        return handle != null && handle.getField(path) != null;
+    }
+
+    @SimpleFunction(description = "Returns the payload of an event handle as JSON text.")
+    public String GetRawJson(Object event) {
+        GatewayEvent handle = asEvent(event, "GetRawJson");
+        return handle != null ? handle.getRawJson() : "";
+    }
+
+    @SimpleFunction(description = "Returns the type of an event handle, e.g. MESSAGE_CREATE.")
+    public String GetEventType(Object event) {
+        GatewayEvent handle = asEvent(event, "GetEventType");
+        return handle != null ? handle.getType() : "";
+    }
+
+    private GatewayEvent asEvent(Object event, String block) {
+        if (event instanceof GatewayEvent) {
+            return (GatewayEvent) event;
+        }
+        Error(block, "Not an event handle from EventReceived");
+        return null;
+    }
+
+    private static HashSet<String> splitEventTypes(String eventTypes) {
+        HashSet<String> types = new HashSet<>();
+        for (String type : eventTypes.split(",")) {
+            String trimmed = type.trim().toUpperCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                types.add(trimmed);
+            }
+        }
+        return types;
+    }
+
     /**
      * Starts the WebSocket connection to monitor Discord events.
      * 
@@ -86,78 +842,124 @@ public class DiscordEvents extends AndroidNonvisibleComponent {
      */
     @SimpleFunction(description = "Starts monitoring Discord channels in real-time.")
 	public void StartMonitoring(String tag) {
-		new Thread(() -> {
-		    try {
-		        URI gatewayUri = new URI(GATEWAY_URL);
-		        webSocketClient = new WebSocketClient(gatewayUri) {
-		            @Override
-		            public void onOpen(ServerHandshake handshake) {
-		                uiHandler.post(() -> Response(tag, "Connected to Discord Gateway"));
-		                sendIdentifyPayload();
-		            }
+		closeConnections();
+		final int generation = ++monitoringGeneration;
+		if (shardCount == 1) {
+		    startShards(tag, 1, 1);
+		    return;
+		}
 
-		            @Override
-		            public void onMessage(String message) {
-		                try {
-		                    JSONObject json = new JSONObject(message);
-		                    int opCode = json.optInt("op");
-
-		                    if (opCode == 10) { // HELLO opcode - Start heartbeat
-		                        int heartbeatInterval = json.getJSONObject("d").optInt("heartbeat_interval");
-		                        startHeartbeat(heartbeatInterval);
-		                        startEventProcessing(); // Inicia processamento controlado
-		                    }
-
-		                    String eventType = json.optString("t");
-
-		                    // Ignorar o evento PRESENCE_UPDATE
-		                    if (eventType.equals("PRESENCE_UPDATE")) {
-		                        return; // Não processa o evento
-		                    }
-
-		                    JSONObject data = json.optJSONObject("d");
-		                    if (data != null) {
-		                        addEventToQueue(eventType, data); // Adiciona evento à fila
-		                    }
-
-		                } catch (Exception e) {
-		                    uiHandler.post(() -> Error("PARSE_ERROR", e.getMessage()));
-		                }
+		// The shard count and identify concurrency come from /gateway/bot.
+		requestHelper.makeRequestWithBody("/gateway/bot", "GET", tag, null, null,
+		    new DiscordRequestHelper.ResultCallback() {
+		        @Override
+		        public void onResult(String tag, DiscordResponse response) {
+		            if (generation != monitoringGeneration) {
+		                return;
 		            }
-
-		            @Override
-		            public void onClose(int code, String reason, boolean remote) {
-		                uiHandler.post(() -> Response(tag, "Connection closed: " + reason));
-		                reconnectWebSocket(tag);
+		            try {
+		                JSONObject gateway = response.getJsonObject();
+		                int shards = shardCount > 0 ? shardCount : Math.max(1, gateway.optInt("shards", 1));
+		                JSONObject limit = gateway.optJSONObject("session_start_limit");
+		                int maxConcurrency = limit != null ? limit.optInt("max_concurrency", 1) : 1;
+		                startShards(tag, shards, maxConcurrency);
+		            } catch (JSONException e) {
+		                Error(tag, "Invalid /gateway/bot response: " + e.getMessage());
 		            }
+		        }
 
-		            @Override
-		            public void onError(Exception ex) {
-		                uiHandler.post(() -> Error(tag, ex.getMessage()));
-		                reconnectWebSocket(tag);
+		        @Override
+		        public void onError(String tag, String error) {
+		            if (generation == monitoringGeneration) {
+		                Error(tag, error);
 		            }
-		        };
-
-		        webSocketClient.connect();
-		    } catch (Exception e) {
-		        uiHandler.post(() -> Error(tag, e.getMessage()));
-		    }
-		}).start();
+		        }
+		    });
 	}
 
+    /**
+     * Opens one Gateway connection per shard. All shards share the event filter and feed the same
+     * dispatcher, so the app sees a single stream of events.
+     */
+    private void startShards(String tag, int count, int maxConcurrency) {
+        GatewayIdentifyLimiter identifyLimiter = new GatewayIdentifyLimiter(maxConcurrency);
+        List<GatewayConnection> shards = new ArrayList<>(count);
+        for (int shardId = 0; shardId < count; shardId++) {
+            final String prefix = count > 1 ? "[Shard " + shardId + "] " : "";
+            shards.add(new GatewayConnection(gatewayUrl, botToken, intentsMask, useCompression, eventFilter,
+                shardId, count, identifyLimiter, new GatewayConnection.Listener() {
+                    @Override
+                    public void onStatus(String message) {
+                        uiHandler.post(() -> Response(tag, prefix + message));
+                    }
+
+                    @Override
+                    public void onError(String source, String message) {
+                        uiHandler.post(() -> Error(GATEWAY_ERROR.equals(source) ? tag : source, prefix + message));
+                    }
+
+                    @Override
+                    public void onStateEvent(String eventType, JSONObject data) {
+                        if (cacheEnabled) {
+                            entityCache.apply(eventType, data);
+                        }
+                        if (archiveEnabled) {
+                            archive.append(eventType, data);
+                        }
+                        DiscordRequestHelper.onGatewayEvent(eventType, data);
+                        if ("INTERACTION_CREATE".equals(eventType)) {
+                            InteractionDeadlines.track(data, requestHelper);
+                        }
+                    }
+
+                    @Override
+                    public void onSkippedEvent(String eventType, String frame) {
+                        DiscordRequestHelper.onGatewayFrame(eventType, frame);
+                    }
+
+                    @Override
+                    public void onDispatch(String eventType, JSONObject data, long receivedNanos) {
+                        if ("INTERACTION_CREATE".equals(eventType)) {
+                            GatewayEvent routed = interactionRouter.route(data);
+                            if (routed != null) {
+                                dispatcher.offer(eventType, routed, receivedNanos);
+                                return;
+                            }
+                        }
+                        GatewayEvent event = new GatewayEvent(eventType, data);
+                        if (!handleDelivery) {
+                            // The List delivery needs the JSON text; produce it here, off the UI thread.
+                            event.getRawJson();
+                        }
+                        dispatcher.offer(eventType, event, receivedNanos);
+                    }
+                }));
+        }
+        connections = Collections.unmodifiableList(shards);
+        for (GatewayConnection shard : shards) {
+            shard.connect();
+        }
+    }
+
+    private void closeConnections() {
+        for (GatewayConnection shard : connections) {
+            shard.close();
+        }
+        connections = Collections.emptyList();
+    }
+
 
     /**
      * Parses event information into a YailList.
      * 
-     * @param eventType The type of the event.
-     * @param data      The JSON object containing the event data.
+     * @param event The Gateway event.
      * @return A YailList with event details.
      */
-    private YailList parseEventInfo(String eventType, JSONObject data) {
+    private YailList parseEventInfo(GatewayEvent event) {
 		List<String> eventInfo = new ArrayList<>();
 		try {
-		    eventInfo.add(eventType);
-		    eventInfo.add(data.toString()); // Retorna todo o conteúdo da API como uma string JSON.
+		    eventInfo.add(event.getType());
+		    eventInfo.add(event.getRawJson()); // Retorna todo o conteúdo da API como uma string JSON.
 		} catch (Exception e) {
 		    eventInfo.add("error: " + e.getMessage());
 		}
@@ -166,74 +968,6 @@ public class DiscordEvents extends AndroidNonvisibleComponent {
 
 
 
-	private JSONObject getGuildContents(JSONObject data) {
-		JSONObject guildContents = new JSONObject();
-		try {
-		    guildContents.put("guildId", data.optString("id", "N/A"));
-		    guildContents.put("guildName", data.optString("name", "N/A"));
-
-		    // Adicionar canais da guilda
-		    if (data.has("channels")) {
-		        guildContents.put("channels", data.getJSONArray("channels"));
-		    }
-
-		    // Adicionar membros da guilda
-		    if (data.has("members")) {
-		        guildContents.put("members", data.getJSONArray("members"));
-		    }
-
-		    // Adicionar roles da guilda
-		    if (data.has("roles")) {
-		        guildContents.put("roles", data.getJSONArray("roles"));
-		    }
-		} catch (Exception e) {
-		    try {
-		        guildContents.put("error", e.getMessage());
-		    } catch (Exception ignored) {}
-		}
-		return guildContents;
-	}
-
-
-    /**
-     * Starts the heartbeat timer to maintain the connection.
-     * 
-     * @param interval The interval in milliseconds to send heartbeat.
-     */
-    private void startHeartbeat(int interval) {
-        if (heartbeatTimer != null) {
-            heartbeatTimer.cancel();
-        }
-        heartbeatTimer = new Timer();
-        heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (webSocketClient != null && webSocketClient.isOpen()) {
-                    try {
-                        JSONObject heartbeat = new JSONObject();
-                        heartbeat.put("op", 1);
-                        heartbeat.put("d", JSONObject.NULL);
-                        webSocketClient.send(heartbeat.toString());
-                    } catch (Exception e) {
-                        uiHandler.post(() -> Error("HEARTBEAT", e.getMessage()));
-                    }
-                }
-            }
-        }, 0, interval);
-    }
-
-    /**
-     * Attempts to reconnect the WebSocket after a connection loss.
-     * 
-     * @param tag The custom tag for identifying responses.
-     */
-    private void reconnectWebSocket(String tag) {
-        uiHandler.postDelayed(() -> {
-            uiHandler.post(() -> Response(tag, "Attempting to reconnect..."));
-            StartMonitoring(tag);
-        }, 5000); // Wait 5 seconds before attempting to reconnect
-    }
-
     /**
      * Stops the WebSocket connection.
      * 
@@ -241,69 +975,40 @@ public class DiscordEvents extends AndroidNonvisibleComponent {
      */
     @SimpleFunction(description = "Stops monitoring Discord channels.")
     public void StopMonitoring(String tag) {
-        if (webSocketClient != null) {
-            webSocketClient.close();
-        }
-        if (heartbeatTimer != null) {
-            heartbeatTimer.cancel();
-        }
+        monitoringGeneration++;
+        closeConnections();
+        dispatcher.clear();
         Response(tag, "Monitoring stopped.");
     }
 
-    /**
-     * Sends the IDENTIFY payload to authenticate with the Discord Gateway.
-     */
-    private void sendIdentifyPayload() {
-        try {
-            JSONObject identify = new JSONObject();
-            identify.put("op", 2);
-            JSONObject data = new JSONObject();
-            data.put("token", botToken);
-            data.put("intents", 3276799); // Includes MESSAGE_CONTENT intent
-            JSONObject properties = new JSONObject();
-            properties.put("os", "android");
-            properties.put("browser", "appinventor");
-            properties.put("device", "appinventor");
-            data.put("properties", properties);
-            identify.put("d", data);
-
-            webSocketClient.send(identify.toString());
-        } catch (Exception e) {
-            uiHandler.post(() -> Error("IDENTIFY", e.getMessage()));
-        }
-    }
-    
-    @SimpleFunction(description = "Converts a JSON-formatted string into a YailDictionary.")
+    @SimpleFunction(description = "Converts a JSON object string into a dictionary. Nested objects become dictionaries, arrays become lists and null becomes an empty string. On failure, or if the text is not an object, returns a dictionary with an \"error\" key.")
 	public YailDictionary ParseJsonString(String jsonString) {
 		try {
-		    // Convert string to JSONObject
-		    JSONObject jsonObject = new JSONObject(jsonString);
-
-		    // Convert JSONObject to YailDictionary
-		    YailDictionary yailDict = new YailDictionary();
-
-		    // Iterate through keys using keys() method and ensuring String type
-		    Iterator<?> keys = jsonObject.keys();
-		    while (keys.hasNext()) {
-		        String key = keys.next().toString();
-		        Object value = jsonObject.get(key);
-
-		        // If the value is a JSONObject, convert it recursively
-		        if (value instanceof JSONObject) {
-		            value = ParseJsonString(value.toString());
-		        }
-		        yailDict.put(key, value);
+		    Object value = JsonYailConverter.parse(jsonString, jsonMaxDepth, jsonMaxLength);
+		    if (value instanceof YailDictionary) {
+		        return (YailDictionary) value;
 		    }
-		    return yailDict;
-
-		} catch (JSONException e) {
-		    // Return a YailDictionary with error details
-		    YailDictionary errorDict = new YailDictionary();
-		    errorDict.put("error", e.getMessage());
-		    return errorDict;
+		    return jsonError("Expected a JSON object");
+		} catch (JsonYailConverter.JsonParseException e) {
+		    return jsonError(e.getMessage());
 		}
 	}
 
+    @SimpleFunction(description = "Converts any JSON string into blocks values: objects become dictionaries, arrays lists, null an empty string. On failure returns a dictionary with an \"error\" key.")
+    public Object ParseJson(String jsonString) {
+        try {
+            return JsonYailConverter.parse(jsonString, jsonMaxDepth, jsonMaxLength);
+        } catch (JsonYailConverter.JsonParseException e) {
+            return jsonError(e.getMessage());
+        }
+    }
+
+    private static YailDictionary jsonError(String message) {
+        YailDictionary errorDict = new YailDictionary();
+        errorDict.put("error", message);
+        return errorDict;
+    }
+
     /**
      * Event triggered for any Discord event.
      * 
@@ -315,6 +1020,37 @@ public class DiscordEvents extends AndroidNonvisibleComponent {
         EventDispatcher.dispatchEvent(this, "DiscordEvent", tag, eventInfoList);
     }
 
+    @SimpleEvent(description = "Triggered with the result of QueryArchive: a list of message JSON texts, oldest first.")
+    public void ArchiveQueryResult(String tag, YailList messages) {
+        EventDispatcher.dispatchEvent(this, "ArchiveQueryResult", tag, messages);
+    }
+
+    @SimpleEvent(description = "Triggered for each Discord event when EventDelivery is Handle. Read the event with GetField, HasField or GetRawJson.")
+    public void EventReceived(String eventType, Object event) {
+        EventDispatcher.dispatchEvent(this, "EventReceived", eventType, event);
+    }
+
+    @SimpleEvent(description = "Triggered when a button with a routed custom_id is clicked. Route is the custom_id or prefix that matched. Answer with DiscordInteractions.RespondToInteraction or TriggerModal.")
+    public void ButtonClicked(String interactionId, String interactionToken, String customId, String route,
+                              String userId, String guildId, String channelId, String messageId) {
+        EventDispatcher.dispatchEvent(this, "ButtonClicked", interactionId, interactionToken, customId, route,
+            userId, guildId, channelId, messageId);
+    }
+
+    @SimpleEvent(description = "Triggered when options are chosen in a select menu with a routed custom_id. Values lists the chosen option values.")
+    public void SelectChosen(String interactionId, String interactionToken, String customId, String route,
+                             YailList values, String userId, String guildId, String channelId, String messageId) {
+        EventDispatcher.dispatchEvent(this, "SelectChosen", interactionId, interactionToken, customId, route,
+            values, userId, guildId, channelId, messageId);
+    }
+
+    @SimpleEvent(description = "Triggered when a modal with a routed custom_id is submitted. Fields maps each text input's custom_id to the text entered.")
+    public void ModalSubmitted(String interactionId, String interactionToken, String customId, String route,
+                               YailDictionary fields, String userId, String guildId, String channelId) {
+        EventDispatcher.dispatchEvent(this, "ModalSubmitted", interactionId, interactionToken, customId, route,
+            fields, userId, guildId, channelId);
+    }
+
     /**
      * Event triggered when a response is received.
      * 
@@ -336,49 +1072,4 @@ public class DiscordEvents extends AndroidNonvisibleComponent {
     public void Error(String tag, String error) {
         EventDispatcher.dispatchEvent(this, "Error", tag, error);
     }
-
-    // Adiciona evento à fila com controle de rate limit
-    private void addEventToQueue(String eventType, JSONObject data) {
-        try {
-            JSONObject event = new JSONObject();
-            event.put("t", eventType);
-            event.put("d", data);
-            eventQueue.offer(event);
-        } catch (Exception e) {
-            uiHandler.post(() -> Error("QUEUE_ERROR", e.getMessage()));
-        }
-    }
-
-    // Inicia o processamento da fila com intervalo de 1 segundo (pode ser ajustado)
-    private void startEventProcessing() {
-		executor.scheduleAtFixedRate(() -> {
-		    try {
-		        JSONObject event = eventQueue.poll();
-		        if (event != null) {
-		            processEvent(event);
-		        }
-		    } catch (Exception e) {
-		        uiHandler.post(() -> Error("EVENT_PROCESSING", e.getMessage()));
-		    }
-		}, 0, 1, TimeUnit.SECONDS); // Ajuste o intervalo conforme necessário
-	}
-
-    private void processEvent(JSONObject event) {
-        try {
-            String eventType = event.optString("t");
-            JSONObject data = event.optJSONObject("d");
-
-            if (data != null && !eventType.equals("PRESENCE_UPDATE")) { // Filtra PRESENCE_UPDATE
-                YailList eventInfoList = parseEventInfo(eventType, data);
-                uiHandler.post(() -> {
-					if (!eventInfoList.isEmpty()) {
-						DiscordEvent(eventType, eventInfoList);
-					}
-				});
-
-            }
-        } catch (Exception e) {
-            uiHandler.post(() -> Error("EVENT_PROCESSING", e.getMessage()));
-        }
-    }
 }
@@ -4,14 +4,20 @@ import android.os.Handler;
 import android.os.Looper;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.google.appinventor.components.annotations.DesignerComponent;
+import com.google.appinventor.components.annotations.DesignerProperty;
+import com.google.appinventor.components.annotations.PropertyCategory;
 import com.google.appinventor.components.annotations.SimpleEvent;
 import com.google.appinventor.components.annotations.SimpleFunction;
+import com.google.appinventor.components.annotations.SimpleProperty;
+import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.AndroidNonvisibleComponent;
 import com.google.appinventor.components.runtime.ComponentContainer;
 import com.google.appinventor.components.runtime.EventDispatcher;
+import com.google.appinventor.components.runtime.util.YailDictionary;
 import com.google.appinventor.components.runtime.util.YailList;
 
 
@@ -25,6 +31,7 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
     private final TokenManager tokenManager;
     private final DiscordRequestHelper requestHelper;
     private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final RequestMetrics.Ticker metricsTicker = new RequestMetrics.Ticker(uiHandler, () -> MetricsSnapshot(GetMetrics()));
 
     public DiscordInteractions(ComponentContainer container) {
         super(container.$form());
@@ -36,34 +43,98 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
         );
     }
 
-    @SimpleFunction(description = "Creates a message with a button in a specified Discord channel.")
-	public void CreateButton(String guildId, String channelId, String content, String label, String customId, String style, boolean ephemeral, String tag) {
-		try {
-		    JSONObject json = new JSONObject();
-		    json.put("content", content);
+    @SimpleProperty
+    public void MaxConcurrentRequests(int maxConcurrent) {
+        DiscordRequestHelper.setMaxConcurrentRequests(maxConcurrent);
+    }
 
-		    // Configurar a flag ephemeral se necessário
-		    if (ephemeral) {
-		        json.put("flags", 64); // Tornar a mensagem ephemeral
-		    }
+    @SimpleProperty(description = "Maximum number of Discord requests running at the same time. Shared by all Discord components, so it is only set from blocks: setting it on one changes it for the others.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxConcurrentRequests() {
+        return DiscordRequestHelper.getMaxConcurrentRequests();
+    }
+
+    @SimpleProperty
+    public void MaxQueuedRequests(int maxQueued) {
+        DiscordRequestHelper.setMaxQueuedRequests(maxQueued);
+    }
+
+    @SimpleProperty(description = "Maximum number of Discord requests waiting for a free connection. Requests beyond this limit fail with an Error event. Shared by all Discord components, so it is only set from blocks: setting it on one changes it for the others.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxQueuedRequests() {
+        return DiscordRequestHelper.getMaxQueuedRequests();
+    }
 
-		    // Configurar os componentes (botões)
-		    JSONArray components = new JSONArray();
-		    JSONObject button = new JSONObject();
-		    button.put("type", 2); // Tipo de componente: botão
-		    button.put("label", label); // Texto no botão
-		    button.put("style", Integer.parseInt(style)); // Estilo do botão
-		    button.put("custom_id", customId); // ID personalizado para identificar o botão
+    @SimpleProperty
+    public void ResponseCacheSize(int maxEntries) {
+        DiscordRequestHelper.setResponseCacheSize(maxEntries);
+    }
 
-		    JSONArray actionRow = new JSONArray();
-		    actionRow.put(button);
+    @SimpleProperty(description = "How many GET responses (messages, channels, guilds, members, bans, active threads) are kept for a few seconds to a minute and reused by repeated calls. Entries are dropped when the app or a Gateway event changes the data. 0 turns the cache off. Shared by all Discord components, so it is only set from blocks.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int ResponseCacheSize() {
+        return DiscordRequestHelper.getResponseCacheSize();
+    }
 
-		    JSONObject actionRowObject = new JSONObject();
-		    actionRowObject.put("type", 1); // Tipo de ação: linha de ação
-		    actionRowObject.put("components", actionRow);
+    @SimpleProperty
+    public void ApiBaseUrl(String url) {
+        try {
+            requestHelper.setBaseUrl(url);
+        } catch (IllegalArgumentException e) {
+            uiHandler.post(() -> Error("ApiBaseUrl", e.getMessage()));
+        }
+    }
 
-		    components.put(actionRowObject);
-		    json.put("components", components);
+    @SimpleProperty(description = "Root of the Discord REST API this component talks to, for testing against a local fake Discord server; empty restores the default. Must be https, or http to this device, since every request carries the bot token. Rate limits and cached responses are kept per root; request metrics are shared.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String ApiBaseUrl() {
+        return requestHelper.getBaseUrl();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "2500"
+    )
+    @SimpleProperty
+    public void AutoDeferMillis(int millis) {
+        InteractionDeadlines.setAutoDeferMillis(millis);
+    }
+
+    @SimpleProperty(description = "Milliseconds after an interaction is created at which it is deferred automatically (\"thinking...\") if the app has not responded yet, so Discord's 3-second limit is not missed. A later RespondToInteraction then edits the original response instead. Only interactions received by a DiscordEvents component are tracked. 0 turns it off.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int AutoDeferMillis() {
+        return (int) InteractionDeadlines.getAutoDeferMillis();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "0"
+    )
+    @SimpleProperty
+    public void MetricsIntervalSeconds(int seconds) {
+        metricsTicker.setIntervalSeconds(seconds);
+    }
+
+    @SimpleProperty(description = "Seconds between MetricsSnapshot events. 0 turns them off.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MetricsIntervalSeconds() {
+        return metricsTicker.getIntervalSeconds();
+    }
+
+    @SimpleFunction(description = "Returns request metrics shared by all Discord components: InFlight, Pending, Rejected (queue full), CacheHits, Coalesced (answered by an identical request already on the wire), InteractionResponses, DeadlineMisses (interaction responses sent after Discord's 3 seconds), AutoDefers, Requests, Errors, RateLimited (429s), Retries, BytesSent, BytesReceived, and Routes, a dictionary from route (such as \"POST /channels/{channel_id}/messages\") to the same counters plus MeanMs, P50Ms, P90Ms, P99Ms and MaxMs latencies. Every HTTP attempt counts, including retries.")
+    public YailDictionary GetMetrics() {
+        return DiscordRequestHelper.getMetrics().toDictionary();
+    }
+
+    @SimpleFunction(description = "Resets the request metrics of all Discord components.")
+    public void ResetMetrics() {
+        DiscordRequestHelper.resetMetrics();
+    }
+
+    @SimpleFunction(description = "Creates a message with a button in a specified Discord channel.")
+	public void CreateButton(String guildId, String channelId, String content, String label, String customId, String style, boolean ephemeral, String tag) {
+		try {
+		    JSONObject json = buttonMessage(content, label, customId, style, ephemeral);
 
 		    // Endpoint para criar a mensagem no canal
 		    String endpoint = "/channels/" + channelId + "/messages";
@@ -95,35 +166,7 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
     @SimpleFunction(description = "Creates a message with a dropdown menu in a Discord channel.")
 	public void CreateMessageWithDropdown(String guildId, String channelId, String content, YailList options, String customId, String tag) {
 		try {
-		    JSONObject json = new JSONObject();
-		    json.put("content", content);
-
-		    // Configurar o dropdown
-		    JSONArray components = new JSONArray();
-		    JSONObject dropdown = new JSONObject();
-		    dropdown.put("type", 3); // Tipo: Dropdown
-		    dropdown.put("custom_id", customId); // ID para identificar o dropdown
-
-		    // Adicionar opções ao dropdown
-		    JSONArray optionArray = new JSONArray();
-		    for (Object option : options.toArray()) {
-		        JSONObject optionObject = new JSONObject();
-		        optionObject.put("label", option.toString()); // Texto visível
-		        optionObject.put("value", option.toString()); // Valor enviado
-		        optionArray.put(optionObject);
-		    }
-		    dropdown.put("options", optionArray);
-
-		    // Adicionar dropdown à linha de ação
-		    JSONArray actionRow = new JSONArray();
-		    actionRow.put(dropdown);
-
-		    JSONObject actionRowObject = new JSONObject();
-		    actionRowObject.put("type", 1); // Tipo de ação: Linha de ação
-		    actionRowObject.put("components", actionRow);
-
-		    components.put(actionRowObject);
-		    json.put("components", components);
+		    JSONObject json = dropdownMessage(content, options, customId);
 
 		    // Endpoint para criar a mensagem
 		    String endpoint = "/channels/" + channelId + "/messages";
@@ -155,48 +198,26 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
     @SimpleFunction(description = "Creates a modal to be triggered by a button interaction.")
 	public void TriggerModal(String interactionId, String interactionToken, String modalTitle, String modalCustomId, YailList inputs, String tag) {
 		try {
-		    JSONObject json = new JSONObject();
-		    json.put("type", 9); // Tipo: Modal
-
-		    JSONObject data = new JSONObject();
-		    data.put("title", modalTitle); // Título do modal
-		    data.put("custom_id", modalCustomId); // ID único do modal
-
-		    // Configurar os campos de entrada
-		    JSONArray components = new JSONArray();
-		    for (Object input : inputs.toArray()) {
-		        JSONObject textInput = new JSONObject();
-		        textInput.put("type", 4); // Tipo: Input de texto
-		        textInput.put("custom_id", input.toString()); // ID do campo
-		        textInput.put("label", "Enter " + input.toString()); // Rótulo
-		        textInput.put("style", 1); // Estilo: Linha única
-		        textInput.put("required", true); // Campo obrigatório
-
-		        JSONArray actionRow = new JSONArray();
-		        actionRow.put(textInput);
-
-		        JSONObject actionRowObject = new JSONObject();
-		        actionRowObject.put("type", 1); // Tipo de ação: Linha de ação
-		        actionRowObject.put("components", actionRow);
-
-		        components.put(actionRowObject);
-		    }
+		    JSONObject json = modalResponse(modalTitle, modalCustomId, inputs);
 
-		    data.put("components", components);
-		    json.put("data", data);
+		    if (InteractionDeadlines.claim(interactionId) != null) {
+		        // A modal can only be the first response, and the automatic defer already was.
+		        uiHandler.post(() -> Error(tag, "Failed to trigger modal: the interaction was already deferred automatically."));
+		        return;
+		    }
 
 		    // Endpoint para responder à interação com o modal
 		    String endpoint = "/interactions/" + interactionId + "/" + interactionToken + "/callback";
 
-		    requestHelper.makeRequestWithBody(
+		    requestHelper.sendInteractionResponse(
 		        endpoint,
 		        "POST",
 		        tag,
 		        json.toString(),
-		        null,
-		        new DiscordRequestHelper.Callback() {
+		        InteractionDeadlines.deadlineOf(interactionId, System.currentTimeMillis()),
+		        new DiscordRequestHelper.ResultCallback() {
 		            @Override
-		            public void onResponse(String tag, String response) {
+		            public void onResult(String tag, DiscordResponse response) {
 		                Response(tag, "Modal triggered successfully.");
 		            }
 
@@ -215,38 +236,39 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
 	@SimpleFunction(description = "Responds to an interaction to avoid timeout errors.")
 	public void RespondToInteraction(String interactionId, String interactionToken, String content, boolean defer, String tag) {
 		try {
-		    JSONObject json = new JSONObject();
+		    JSONObject json = interactionResponse(content, defer);
+		    DiscordRequestHelper.ResultCallback callback = new DiscordRequestHelper.ResultCallback() {
+		        @Override
+		        public void onResult(String tag, DiscordResponse response) {
+		            Response(tag, "Interaction response sent successfully.");
+		        }
 
-		    if (defer) {
-		        // Defer the interaction (acknowledge it but send a response later)
-		        json.put("type", 5); // Deferred channel message with source
-		    } else {
-		        // Respond immediately with a message
-		        json.put("type", 4); // Channel message with source
-		        JSONObject data = new JSONObject();
-		        data.put("content", content);
-		        json.put("data", data);
+		        @Override
+		        public void onError(String tag, String error) {
+		            Error(tag, "Failed to respond to interaction: " + error);
+		        }
+		    };
+
+		    InteractionDeadlines.Interaction deferred = InteractionDeadlines.claim(interactionId);
+		    if (deferred != null) {
+		        // Already deferred automatically: a defer is done, a message replaces "thinking...".
+		        if (defer) {
+		            uiHandler.post(() -> callback.onResult(tag, null));
+		        } else {
+		            InteractionDeadlines.editOriginal(deferred, requestHelper, tag, json.getJSONObject("data"), callback);
+		        }
+		        return;
 		    }
 
 		    String endpoint = "/interactions/" + interactionId + "/" + interactionToken + "/callback";
 
-		    requestHelper.makeRequestWithBody(
+		    requestHelper.sendInteractionResponse(
 		        endpoint,
 		        "POST",
 		        tag,
 		        json.toString(),
-		        null,
-		        new DiscordRequestHelper.Callback() {
-		            @Override
-		            public void onResponse(String tag, String response) {
-		                Response(tag, "Interaction response sent successfully.");
-		            }
-
-		            @Override
-		            public void onError(String tag, String error) {
-		                Error(tag, "Failed to respond to interaction: " + error);
-		            }
-		        }
+		        InteractionDeadlines.deadlineOf(interactionId, System.currentTimeMillis()),
+		        callback
 		    );
 		} catch (Exception e) {
 		    uiHandler.post(() -> Error(tag, "Error responding to interaction: " + e.getMessage()));
@@ -290,6 +312,105 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
 	}
 
 
+    /**
+     * Message with one action row holding a single button.
+     */
+    static JSONObject buttonMessage(String content, String label, String customId, String style,
+                                    boolean ephemeral) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("content", content);
+
+        // Configurar a flag ephemeral se necessário
+        if (ephemeral) {
+            json.put("flags", 64); // Tornar a mensagem ephemeral
+        }
+
+        JSONObject button = new JSONObject();
+        button.put("type", 2); // Tipo de componente: botão
+        button.put("label", label); // Texto no botão
+        button.put("style", Integer.parseInt(style)); // Estilo do botão
+        button.put("custom_id", customId); // ID personalizado para identificar o botão
+
+        json.put("components", new JSONArray().put(actionRow(button)));
+        return json;
+    }
+
+    /**
+     * Message with one action row holding a string select; each option is its own label and value.
+     */
+    static JSONObject dropdownMessage(String content, YailList options, String customId) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("content", content);
+
+        JSONObject dropdown = new JSONObject();
+        dropdown.put("type", 3); // Tipo: Dropdown
+        dropdown.put("custom_id", customId); // ID para identificar o dropdown
+
+        JSONArray optionArray = new JSONArray();
+        for (Object option : options.toArray()) {
+            JSONObject optionObject = new JSONObject();
+            optionObject.put("label", option.toString()); // Texto visível
+            optionObject.put("value", option.toString()); // Valor enviado
+            optionArray.put(optionObject);
+        }
+        dropdown.put("options", optionArray);
+
+        json.put("components", new JSONArray().put(actionRow(dropdown)));
+        return json;
+    }
+
+    /**
+     * MODAL interaction callback with one required single-line text input per entry of inputs.
+     */
+    static JSONObject modalResponse(String title, String customId, YailList inputs) throws JSONException {
+        JSONObject data = new JSONObject();
+        data.put("title", title); // Título do modal
+        data.put("custom_id", customId); // ID único do modal
+
+        JSONArray components = new JSONArray();
+        for (Object input : inputs.toArray()) {
+            JSONObject textInput = new JSONObject();
+            textInput.put("type", 4); // Tipo: Input de texto
+            textInput.put("custom_id", input.toString()); // ID do campo
+            textInput.put("label", "Enter " + input.toString()); // Rótulo
+            textInput.put("style", 1); // Estilo: Linha única
+            textInput.put("required", true); // Campo obrigatório
+            components.put(actionRow(textInput));
+        }
+        data.put("components", components);
+
+        JSONObject json = new JSONObject();
+        json.put("type", 9); // Tipo: Modal
+        json.put("data", data);
+        return json;
+    }
+
+    /**
+     * CHANNEL_MESSAGE_WITH_SOURCE callback, or DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE when deferring.
+     */
+    static JSONObject interactionResponse(String content, boolean defer) throws JSONException {
+        JSONObject json = new JSONObject();
+        if (defer) {
+            // Defer the interaction (acknowledge it but send a response later)
+            json.put("type", 5);
+        } else {
+            // Respond immediately with a message
+            json.put("type", 4);
+            JSONObject data = new JSONObject();
+            data.put("content", content);
+            json.put("data", data);
+        }
+        return json;
+    }
+
+    private static JSONObject actionRow(JSONObject component) throws JSONException {
+        JSONObject row = new JSONObject();
+        row.put("type", 1); // Tipo de ação: linha de ação
+        row.put("components", new JSONArray().put(component));
+        return row;
+    }
+
+
     @SimpleEvent(description = "Triggered when a successful response is received.")
     public void Response(String tag, String response) {
         EventDispatcher.dispatchEvent(this, "Response", tag, response);
@@ -299,5 +420,9 @@ public class DiscordInteractions extends AndroidNonvisibleComponent {
     public void Error(String tag, String error) {
         EventDispatcher.dispatchEvent(this, "Error", tag, error);
     }
-}
 
+    @SimpleEvent(description = "Triggered every MetricsIntervalSeconds with the same dictionary GetMetrics returns.")
+    public void MetricsSnapshot(YailDictionary metrics) {
+        EventDispatcher.dispatchEvent(this, "MetricsSnapshot", metrics);
+    }
+}
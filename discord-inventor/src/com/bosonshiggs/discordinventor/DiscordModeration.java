@@ -1,12 +1,7 @@
 package com.bosonshiggs.discordinventor;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.List;
 
 import org.json.JSONObject;
 
@@ -14,12 +9,16 @@ import android.os.Handler;
 import android.os.Looper;
 
 import com.google.appinventor.components.annotations.DesignerComponent;
+import com.google.appinventor.components.annotations.DesignerProperty;
 import com.google.appinventor.components.annotations.SimpleEvent;
 import com.google.appinventor.components.annotations.SimpleFunction;
+import com.google.appinventor.components.annotations.SimpleProperty;
+import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.AndroidNonvisibleComponent;
 import com.google.appinventor.components.runtime.ComponentContainer;
 import com.google.appinventor.components.runtime.EventDispatcher;
 import com.google.appinventor.components.annotations.PropertyCategory;
+import com.google.appinventor.components.runtime.util.YailDictionary;
 import com.google.appinventor.components.runtime.util.YailList;
 
 @DesignerComponent(
@@ -31,9 +30,35 @@ import com.google.appinventor.components.runtime.util.YailList;
 public class DiscordModeration extends AndroidNonvisibleComponent {
     private final TokenManager tokenManager;
     private DiscordRequestHelper requestHelper;
-    
-    private final String BASE_URL = "https://discord.com/api/v10";
+
     private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final RequestMetrics.Ticker metricsTicker = new RequestMetrics.Ticker(uiHandler, () -> MetricsSnapshot(GetMetrics()));
+
+    private final EntityCache entityCache = EntityCache.shared();
+    private final PermissionCalculator permissionCalculator = PermissionCalculator.shared();
+    private final DiscordPager.Registry pagers = new DiscordPager.Registry(new DiscordPager.Listener() {
+        @Override
+        public void onPage(String tag, String page, int pageNumber, int itemCount, int totalFetched) {
+            PageReceived(tag, page, pageNumber, itemCount, totalFetched);
+        }
+
+        @Override
+        public void onCompleted(String tag, int totalFetched, boolean cancelled) {
+            PagingCompleted(tag, totalFetched, cancelled);
+        }
+
+        @Override
+        public void onError(String tag, String error) {
+            Error(tag, error);
+        }
+    });
+
+
+    private static final int MAX_BANS_PAGE_SIZE = 1000;
+    private static final int MAX_AUDIT_LOG_PAGE_SIZE = 100;
+
+    /** Enough to fetch the guild, the member and the channel once each. */
+    private static final int MAX_PERMISSION_FETCHES = 3;
 
     public DiscordModeration(ComponentContainer container) {
         super(container.$form());
@@ -45,53 +70,187 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
 		);
     }
 
-    @SimpleFunction(description = "Checks if a user has a specific permission in a guild.")
+    @SimpleProperty
+    public void MaxConcurrentRequests(int maxConcurrent) {
+        DiscordRequestHelper.setMaxConcurrentRequests(maxConcurrent);
+    }
+
+    @SimpleProperty(description = "Maximum number of Discord requests running at the same time. Shared by all Discord components, so it is only set from blocks: setting it on one changes it for the others.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxConcurrentRequests() {
+        return DiscordRequestHelper.getMaxConcurrentRequests();
+    }
+
+    @SimpleProperty
+    public void MaxQueuedRequests(int maxQueued) {
+        DiscordRequestHelper.setMaxQueuedRequests(maxQueued);
+    }
+
+    @SimpleProperty(description = "Maximum number of Discord requests waiting for a free connection. Requests beyond this limit fail with an Error event. Shared by all Discord components, so it is only set from blocks: setting it on one changes it for the others.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MaxQueuedRequests() {
+        return DiscordRequestHelper.getMaxQueuedRequests();
+    }
+
+    @SimpleProperty
+    public void ResponseCacheSize(int maxEntries) {
+        DiscordRequestHelper.setResponseCacheSize(maxEntries);
+    }
+
+    @SimpleProperty(description = "How many GET responses (messages, channels, guilds, members, bans, active threads) are kept for a few seconds to a minute and reused by repeated calls. Entries are dropped when the app or a Gateway event changes the data. 0 turns the cache off. Shared by all Discord components, so it is only set from blocks.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int ResponseCacheSize() {
+        return DiscordRequestHelper.getResponseCacheSize();
+    }
+
+    @SimpleProperty
+    public void ApiBaseUrl(String url) {
+        try {
+            requestHelper.setBaseUrl(url);
+        } catch (IllegalArgumentException e) {
+            uiHandler.post(() -> Error("ApiBaseUrl", e.getMessage()));
+        }
+    }
+
+    @SimpleProperty(description = "Root of the Discord REST API this component talks to, for testing against a local fake Discord server; empty restores the default. Must be https, or http to this device, since every request carries the bot token. Rate limits and cached responses are kept per root; request metrics are shared.",
+                    category = PropertyCategory.BEHAVIOR)
+    public String ApiBaseUrl() {
+        return requestHelper.getBaseUrl();
+    }
+
+    @DesignerProperty(
+        editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+        defaultValue = "0"
+    )
+    @SimpleProperty
+    public void MetricsIntervalSeconds(int seconds) {
+        metricsTicker.setIntervalSeconds(seconds);
+    }
+
+    @SimpleProperty(description = "Seconds between MetricsSnapshot events. 0 turns them off.",
+                    category = PropertyCategory.BEHAVIOR)
+    public int MetricsIntervalSeconds() {
+        return metricsTicker.getIntervalSeconds();
+    }
+
+    @SimpleFunction(description = "Returns request metrics shared by all Discord components: InFlight, Pending, Rejected (queue full), CacheHits, Coalesced (answered by an identical request already on the wire), InteractionResponses, DeadlineMisses (interaction responses sent after Discord's 3 seconds), AutoDefers, Requests, Errors, RateLimited (429s), Retries, BytesSent, BytesReceived, and Routes, a dictionary from route (such as \"POST /channels/{channel_id}/messages\") to the same counters plus MeanMs, P50Ms, P90Ms, P99Ms and MaxMs latencies. Every HTTP attempt counts, including retries.")
+    public YailDictionary GetMetrics() {
+        return DiscordRequestHelper.getMetrics().toDictionary();
+    }
+
+    @SimpleFunction(description = "Resets the request metrics of all Discord components.")
+    public void ResetMetrics() {
+        DiscordRequestHelper.resetMetrics();
+    }
+
+    @SimpleFunction(description = "Checks if a user has a specific permission in a guild. The permission is a name such as BAN_MEMBERS, a comma-separated list of names, or a number. Answers from the cache when the guild is known, otherwise fetches the missing data first.")
 	public void CheckUserPermission(String guildId, String userId, String permission, String tag) {
-		requestHelper.makeRequest(
-		    "/guilds/" + guildId + "/members/" + userId,
-		    "GET",
-		    tag,
-		    null,
-		    guildId,
-		    new DiscordRequestHelper.Callback() {
-		        @Override
-		        public void onResponse(String tag, String response) {
-		            try {
-		                JSONObject data = new JSONObject(response);
-		                boolean hasPermission = data.getJSONObject("roles").toString().contains(permission);
-		                Response(tag, "User has permission: " + hasPermission);
-		            } catch (Exception e) {
-		                Error(tag, "Error parsing permission data: " + e.getMessage());
-		            }
-		        }
+		checkPermission(guildId, userId, "", permission, tag);
+	}
 
-		        @Override
-		        public void onError(String tag, String error) {
-		            Error(tag, error);
-		        }
+    @SimpleFunction(description = "Checks if a user has a specific permission in a channel, taking the channel's permission overwrites into account.")
+	public void CheckChannelPermission(String guildId, String channelId, String userId, String permission, String tag) {
+		checkPermission(guildId, userId, channelId, permission, tag);
+	}
+
+    @SimpleFunction(description = "Returns the permission bitmask of a user in a guild, or in a channel if channelId is not empty, computed from the cache only. Returns an empty string if the data is not cached.")
+	public String GetCachedPermissions(String guildId, String userId, String channelId) {
+		Long permissions = permissionCalculator.compute(EntityCache.parseSnowflake(guildId),
+		                                                EntityCache.parseSnowflake(userId),
+		                                                EntityCache.parseSnowflake(channelId));
+		return permissions != null ? Long.toString(permissions) : "";
+	}
+
+	private void checkPermission(String guildId, String userId, String channelId, String permission, String tag) {
+		final long required;
+		try {
+		    required = DiscordPermissions.parse(permission);
+		} catch (IllegalArgumentException e) {
+		    uiHandler.post(() -> Error(tag, e.getMessage()));
+		    return;
+		}
+		withPermissions(guildId, userId, channelId, tag, 0, new PermissionsCallback() {
+		    @Override
+		    public void onPermissions(long permissions) {
+		        Response(tag, "User has permission: " + DiscordPermissions.has(permissions, required));
 		    }
-		);
+		});
 	}
 
     @SimpleFunction(description = "Checks if a user is an administrator or the owner of the bot.")
 	public void CheckAdminOrOwner(String guildId, String userId, String tag) {
+		withPermissions(guildId, userId, "", tag, 0, new PermissionsCallback() {
+		    @Override
+		    public void onPermissions(long permissions) {
+		        EntityCache.Guild guild = entityCache.getGuild(EntityCache.parseSnowflake(guildId));
+		        boolean isOwner = guild != null && guild.ownerId == EntityCache.parseSnowflake(userId);
+		        boolean isAdmin = DiscordPermissions.has(permissions, DiscordPermissions.ADMINISTRATOR);
+		        Response(tag, "Is Admin: " + isAdmin + ", Is Owner: " + isOwner);
+		    }
+		});
+	}
+
+	private interface PermissionsCallback {
+		void onPermissions(long permissions);
+	}
+
+	/**
+	 * Computes permissions from the cache. Whatever is missing (guild with its roles, member or
+	 * channel) is fetched once, stored in the cache, and the computation is tried again. What is
+	 * fetched here expires after a short time, as no Gateway event may ever update it.
+	 */
+	private void withPermissions(String guildId, String userId, String channelId, String tag, int fetches,
+	                             PermissionsCallback callback) {
+		PermissionCalculator.Missing[] missing = new PermissionCalculator.Missing[1];
+		Long permissions = permissionCalculator.compute(EntityCache.parseSnowflake(guildId),
+		                                                EntityCache.parseSnowflake(userId),
+		                                                EntityCache.parseSnowflake(channelId), missing);
+		if (permissions != null) {
+		    uiHandler.post(() -> callback.onPermissions(permissions));
+		    return;
+		}
+		if (fetches >= MAX_PERMISSION_FETCHES) {
+		    uiHandler.post(() -> Error(tag, "Could not resolve permissions: " + missing[0] + " data unavailable"));
+		    return;
+		}
+
+		final String endpoint;
+		final String eventType;
+		switch (missing[0]) {
+		    case MEMBER:
+		        endpoint = "/guilds/" + guildId + "/members/" + userId;
+		        eventType = "GUILD_MEMBER_UPDATE";
+		        break;
+		    case CHANNEL:
+		        endpoint = "/channels/" + channelId;
+		        eventType = "CHANNEL_UPDATE";
+		        break;
+		    default:
+		        // The guild object carries owner_id and every role with its permissions.
+		        endpoint = "/guilds/" + guildId;
+		        eventType = "GUILD_UPDATE";
+		        break;
+		}
 		requestHelper.makeRequest(
-		    "/guilds/" + guildId + "/members/" + userId,
+		    endpoint,
 		    "GET",
 		    tag,
 		    null,
 		    guildId,
-		    new DiscordRequestHelper.Callback() {
+		    new DiscordRequestHelper.ResultCallback() {
 		        @Override
-		        public void onResponse(String tag, String response) {
+		        public void onResult(String tag, DiscordResponse response) {
 		            try {
-		                JSONObject data = new JSONObject(response);
-		                boolean isAdmin = data.getBoolean("is_admin");
-		                boolean isOwner = data.getBoolean("is_owner");
-		                Response(tag, "Is Admin: " + isAdmin + ", Is Owner: " + isOwner);
+		                JSONObject data = response.getJsonObject();
+		                if (!data.has("guild_id")) {
+		                    data.put("guild_id", guildId);
+		                }
+		                entityCache.applyFetched(eventType, data);
 		            } catch (Exception e) {
-		                Error(tag, "Error parsing admin/owner data: " + e.getMessage());
+		                Error(tag, "Error parsing permission data: " + e.getMessage());
+		                return;
 		            }
+		            withPermissions(guildId, userId, channelId, tag, fetches + 1, callback);
 		        }
 
 		        @Override
@@ -102,6 +261,14 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
 		);
 	}
 
+	/**
+	 * Drops a member this component just changed from the shared cache, so the next permission
+	 * check loads it again instead of answering from the old roles.
+	 */
+	private void forgetMember(String guildId, String userId) {
+		entityCache.removeMember(EntityCache.parseSnowflake(guildId), EntityCache.parseSnowflake(userId));
+	}
+
 
     @SimpleFunction(description = "Kicks a user from the specified guild.")
 	public void KickUser(String guildId, String userId, String reason, String tag) {
@@ -120,6 +287,7 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
 		        new DiscordRequestHelper.Callback() {
 		            @Override
 		            public void onResponse(String tag, String response) {
+		                forgetMember(guildId, userId);
 		                Response(tag, "User kicked successfully.");
 		            }
 
@@ -153,6 +321,7 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
 		        new DiscordRequestHelper.Callback() {
 		            @Override
 		            public void onResponse(String tag, String response) {
+		                forgetMember(guildId, userId);
 		                Response(tag, "User banned successfully.");
 		            }
 
@@ -192,28 +361,26 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
     
     @SimpleFunction(description = "Warns a user in a specified channel.")
 	public void WarnUser(String guildId, String channelId, String userId, String warningMessage, String tag) {
-		new Thread(() -> {
-		    try {
-		        JSONObject json = new JSONObject();
-		        json.put("content", warningMessage);
-		        json.put("guild_id", guildId);
-
-		        requestHelper.makeRequestWithBody("/channels/" + channelId + "/messages", "POST", tag, json.toString(), guildId,
-					new DiscordRequestHelper.Callback() {
-						@Override
-						public void onResponse(String tag, String response) {
-							Response(tag, response); // Chama o método Response da extensão
-						}
-
-						@Override
-						public void onError(String tag, String error) {
-							Error(tag, error); // Chama o método Error da extensão
-						}
-					});
-		    } catch (Exception e) {
-		        uiHandler.post(() -> Error(tag, "Error warning user: " + e.getMessage()));
-		    }
-		}).start();
+		try {
+		    JSONObject json = new JSONObject();
+		    json.put("content", warningMessage);
+		    json.put("guild_id", guildId);
+
+		    requestHelper.makeRequestWithBody("/channels/" + channelId + "/messages", "POST", tag, json.toString(), guildId,
+				new DiscordRequestHelper.Callback() {
+					@Override
+					public void onResponse(String tag, String response) {
+						Response(tag, response); // Chama o método Response da extensão
+					}
+
+					@Override
+					public void onError(String tag, String error) {
+						Error(tag, error); // Chama o método Error da extensão
+					}
+				});
+		} catch (Exception e) {
+		    uiHandler.post(() -> Error(tag, "Error warning user: " + e.getMessage()));
+		}
 	}
 	
  	@SimpleFunction(description = "Mutes a user in a specific guild.")
@@ -265,6 +432,7 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
 		        new DiscordRequestHelper.Callback() {
 		            @Override
 		            public void onResponse(String tag, String response) {
+		                forgetMember(guildId, userId);
 		                Response(tag, "User timeout updated successfully.");
 		            }
 
@@ -341,6 +509,7 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
             new DiscordRequestHelper.Callback() {
                 @Override
                 public void onResponse(String tag, String response) {
+                    forgetMember(guildId, userId);
                     Response(tag, "Role added successfully.");
                 }
 
@@ -363,6 +532,7 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
             new DiscordRequestHelper.Callback() {
                 @Override
                 public void onResponse(String tag, String response) {
+                    forgetMember(guildId, userId);
                     Response(tag, "Role removed successfully.");
                 }
 
@@ -401,43 +571,71 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
         );
     }
 
-    @SimpleFunction(description = "Bulk deletes messages in a channel.")
-	public void BulkDeleteMessages(String channelId, YailList messageIds, String tag) {
-		try {
-		    // Converte YailList para JSONArray
-		    org.json.JSONArray jsonArray = new org.json.JSONArray();
-		    for (Object messageId : messageIds.toArray()) {
-		        jsonArray.put(messageId.toString());
-		    }
+    @SimpleFunction(description = "Walks a guild's ban list one page at a time, in user ID order. Each page arrives in PageReceived. Leave afterUserId empty to start at the beginning. pageSize is 1 to 1000; maxBans 0 means the whole list.")
+    public void StreamBans(String guildId, String afterUserId, int pageSize, int maxBans, String tag) {
+        int size = Math.max(1, Math.min(MAX_BANS_PAGE_SIZE, pageSize));
+        pagers.start(new DiscordPager(requestHelper, "/guilds/" + guildId + "/bans", null, "after", "user.id",
+                afterUserId, size, maxBans, tag, guildId, pagers));
+    }
 
-		    // Cria o objeto JSON com os IDs das mensagens
-		    JSONObject json = new JSONObject();
-		    json.put("messages", jsonArray);
+    @SimpleFunction(description = "Walks a guild's audit log from newest to oldest, one page at a time. Each page arrives in PageReceived. actionType may be empty. Leave beforeEntryId empty to start at the newest entry. pageSize is 1 to 100; maxEntries 0 means the whole log.")
+    public void StreamAuditLogs(String guildId, String actionType, String beforeEntryId, int pageSize, int maxEntries,
+                                String tag) {
+        String endpoint = "/guilds/" + guildId + "/audit-logs";
+        if (actionType != null && !actionType.isEmpty()) {
+            endpoint += "?action_type=" + actionType;
+        }
+        int size = Math.max(1, Math.min(MAX_AUDIT_LOG_PAGE_SIZE, pageSize));
+        pagers.start(new DiscordPager(requestHelper, endpoint, "audit_log_entries", "before", "id",
+                beforeEntryId, size, maxEntries, tag, guildId, pagers));
+    }
 
-		    requestHelper.makeRequestWithBody(
-		        "/channels/" + channelId + "/messages/bulk-delete",
-		        "POST",
-		        tag,
-		        json.toString(),
-		        null,
-		        new DiscordRequestHelper.Callback() {
-		            @Override
-		            public void onResponse(String tag, String response) {
-		                Response(tag, "Messages deleted successfully.");
-		            }
+    @SimpleFunction(description = "Stops a StreamBans or StreamAuditLogs walk after the page in flight. PagingCompleted then reports it as cancelled.")
+    public void CancelPaging(String tag) {
+        pagers.cancel(tag);
+    }
 
-		            @Override
-		            public void onError(String tag, String error) {
-		                Error(tag, error);
-		            }
+    @SimpleFunction(description = "Deletes any number of messages in a channel. Messages younger than 14 days are removed in bulk batches of up to 100, older ones one at a time. Reports PurgeProgress while running and PurgeCompleted at the end.")
+	public void BulkDeleteMessages(String channelId, YailList messageIds, String tag) {
+		List<Object> ids = Arrays.asList(messageIds.toArray());
+		new MessagePurge(requestHelper, channelId, ids, tag, new MessagePurge.Listener() {
+		    @Override
+		    public void onProgress(int deleted, int failed, int total) {
+		        PurgeProgress(tag, deleted, failed, total);
+		    }
+
+		    @Override
+		    public void onCompleted(int deleted, int failed, int total, List<String> failedIds) {
+		        PurgeCompleted(tag, deleted, failed, YailList.makeList(failedIds));
+		        if (failed == 0) {
+		            Response(tag, "Messages deleted successfully.");
+		        } else {
+		            Error(tag, failed + " of " + total + " messages could not be deleted.");
 		        }
-		    );
-		} catch (Exception e) {
-		    uiHandler.post(() -> Error(tag, "Error deleting messages: " + e.getMessage()));
-		}
+		    }
+		}).start();
 	}
 
 
+    @SimpleEvent(description = "Triggered after each request of a BulkDeleteMessages purge with the running counts.")
+    public void PurgeProgress(String tag, int deleted, int failed, int total) {
+        EventDispatcher.dispatchEvent(this, "PurgeProgress", tag, deleted, failed, total);
+    }
+
+    @SimpleEvent(description = "Triggered when a BulkDeleteMessages purge has finished, with the number of messages deleted and the IDs that could not be deleted.")
+    public void PurgeCompleted(String tag, int deleted, int failed, YailList failedIds) {
+        EventDispatcher.dispatchEvent(this, "PurgeCompleted", tag, deleted, failed, failedIds);
+    }
+
+    @SimpleEvent(description = "Triggered for each page of a StreamBans or StreamAuditLogs walk. Page is the JSON text of the page as Discord returned it.")
+    public void PageReceived(String tag, String page, int pageNumber, int itemCount, int totalFetched) {
+        EventDispatcher.dispatchEvent(this, "PageReceived", tag, page, pageNumber, itemCount, totalFetched);
+    }
+
+    @SimpleEvent(description = "Triggered when a StreamBans or StreamAuditLogs walk has reached the end of the list, its maximum or was cancelled.")
+    public void PagingCompleted(String tag, int totalFetched, boolean cancelled) {
+        EventDispatcher.dispatchEvent(this, "PagingCompleted", tag, totalFetched, cancelled);
+    }
 
     @SimpleEvent(description = "Triggered when a successful response is received.")
     public void Response(String tag, String response) {
@@ -448,4 +646,9 @@ public class DiscordModeration extends AndroidNonvisibleComponent {
     public void Error(String tag, String error) {
         EventDispatcher.dispatchEvent(this, "Error", tag, error);
     }
+
+    @SimpleEvent(description = "Triggered every MetricsIntervalSeconds with the same dictionary GetMetrics returns.")
+    public void MetricsSnapshot(YailDictionary metrics) {
+        EventDispatcher.dispatchEvent(this, "MetricsSnapshot", metrics);
+    }
 }
@@ -0,0 +1,211 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Walks a paginated Discord list endpoint one page at a time.
+ *
+ * Each page is requested with a limit and a before/after cursor taken from the last item of the
+ * previous page, and handed to the listener as soon as it arrives; nothing is buffered across
+ * pages. The next page is requested only when the previous one has been delivered, so a long walk
+ * holds one page in memory and is paced by {@link DiscordRequestHelper}'s rate limiting.
+ *
+ * Request callbacks arrive on the UI thread, which is the only thread touching the pager.
+ */
+public class DiscordPager {
+
+    public interface Listener {
+        /** A page as the raw response body, with the number of items in it and fetched so far. */
+        void onPage(String tag, String page, int pageNumber, int itemCount, int totalFetched);
+
+        void onCompleted(String tag, int totalFetched, boolean cancelled);
+
+        void onError(String tag, String error);
+    }
+
+    /**
+     * The walks a component has running, by tag. Starting a walk under a tag that is still paging
+     * cancels the old one, and a walk is forgotten once it has finished. Pass the registry as the
+     * pager's listener; it hands every callback on to the component's listener.
+     */
+    public static final class Registry implements Listener {
+        private final Map<String, DiscordPager> running = new HashMap<>();
+        private final Listener listener;
+
+        public Registry(Listener listener) {
+            this.listener = listener;
+        }
+
+        public void start(DiscordPager pager) {
+            DiscordPager previous = running.put(pager.tag, pager);
+            if (previous != null) {
+                previous.cancel();
+            }
+            pager.start();
+        }
+
+        public void cancel(String tag) {
+            DiscordPager pager = running.get(tag);
+            if (pager != null) {
+                pager.cancel();
+            }
+        }
+
+        @Override
+        public void onPage(String tag, String page, int pageNumber, int itemCount, int totalFetched) {
+            listener.onPage(tag, page, pageNumber, itemCount, totalFetched);
+        }
+
+        @Override
+        public void onCompleted(String tag, int totalFetched, boolean cancelled) {
+            finish(tag);
+            listener.onCompleted(tag, totalFetched, cancelled);
+        }
+
+        @Override
+        public void onError(String tag, String error) {
+            finish(tag);
+            listener.onError(tag, error);
+        }
+
+        // A cancelled walk reports after its replacement was registered under the same tag.
+        private void finish(String tag) {
+            DiscordPager pager = running.get(tag);
+            if (pager != null && pager.isFinished()) {
+                running.remove(tag);
+            }
+        }
+    }
+
+    private final DiscordRequestHelper requestHelper;
+    private final String endpoint;
+    private final String itemsKey;
+    private final String cursorParameter;
+    private final String cursorPath;
+    private final int pageSize;
+    private final int maxTotal;
+    private final String tag;
+    private final String guildId;
+    private final Listener listener;
+
+    private String cursor;
+    private int pageNumber;
+    private int totalFetched;
+    private boolean cancelled;
+    private boolean finished;
+
+    /**
+     * @param endpoint        path, optionally with a query string of its own
+     * @param itemsKey        key of the item array in the response object, or null if the response
+     *                        is the array itself
+     * @param cursorParameter "before" or "after"
+     * @param cursorPath      field of an item holding its cursor value, e.g. "id" or "user.id"
+     * @param cursor          first cursor, or empty to start at the beginning of the list
+     * @param maxTotal        stop after this many items, or 0 for no limit
+     */
+    public DiscordPager(DiscordRequestHelper requestHelper, String endpoint, String itemsKey,
+                        String cursorParameter, String cursorPath, String cursor, int pageSize, int maxTotal,
+                        String tag, String guildId, Listener listener) {
+        this.requestHelper = requestHelper;
+        this.endpoint = endpoint;
+        this.itemsKey = itemsKey;
+        this.cursorParameter = cursorParameter;
+        this.cursorPath = cursorPath;
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+        this.maxTotal = maxTotal;
+        this.tag = tag;
+        this.guildId = guildId;
+        this.listener = listener;
+    }
+
+    public void start() {
+        requestNextPage();
+    }
+
+    /**
+     * Stops after the page in flight. Its result is discarded and onCompleted reports the
+     * cancellation.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void requestNextPage() {
+        int limit = maxTotal > 0 ? Math.min(pageSize, maxTotal - totalFetched) : pageSize;
+        StringBuilder url = new StringBuilder(endpoint);
+        url.append(endpoint.indexOf('?') >= 0 ? '&' : '?').append("limit=").append(limit);
+        if (cursor != null && !cursor.isEmpty()) {
+            url.append('&').append(cursorParameter).append('=').append(cursor);
+        }
+
+        requestHelper.makeRequestWithBody(url.toString(), "GET", tag, null, guildId, DiscordRequestHelper.Priority.BULK,
+            new DiscordRequestHelper.ResultCallback() {
+                @Override
+                public void onResult(String tag, DiscordResponse response) {
+                    if (cancelled) {
+                        complete();
+                        return;
+                    }
+                    JSONArray items;
+                    try {
+                        items = itemsKey == null ? response.getJsonArray()
+                                                 : response.getJsonObject().getJSONArray(itemsKey);
+                    } catch (Exception e) {
+                        fail("Error parsing page: " + e.getMessage());
+                        return;
+                    }
+                    int count = items.length();
+                    totalFetched += count;
+                    pageNumber++;
+                    if (count > 0) {
+                        cursor = cursorOf(items.optJSONObject(count - 1));
+                        listener.onPage(DiscordPager.this.tag, response.getBody(), pageNumber, count, totalFetched);
+                    }
+
+                    boolean lastPage = count < limit || cursor == null || cursor.isEmpty();
+                    boolean capReached = maxTotal > 0 && totalFetched >= maxTotal;
+                    if (cancelled || lastPage || capReached) {
+                        complete();
+                    } else {
+                        requestNextPage();
+                    }
+                }
+
+                @Override
+                public void onError(String tag, String error) {
+                    fail(error);
+                }
+            });
+    }
+
+    private String cursorOf(JSONObject item) {
+        if (item == null) {
+            return null;
+        }
+        String[] path = cursorPath.split("\\.");
+        JSONObject current = item;
+        for (int i = 0; i < path.length - 1 && current != null; i++) {
+            current = current.optJSONObject(path[i]);
+        }
+        return current != null ? current.optString(path[path.length - 1], null) : null;
+    }
+
+    private void complete() {
+        finished = true;
+        listener.onCompleted(tag, totalFetched, cancelled);
+    }
+
+    private void fail(String error) {
+        finished = true;
+        listener.onError(tag, error);
+    }
+}
@@ -0,0 +1,78 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Discord permission names and their bits.
+ */
+public final class DiscordPermissions {
+
+    public static final long ADMINISTRATOR = 1L << 3;
+    public static final long VIEW_CHANNEL = 1L << 10;
+    public static final long READ_MESSAGE_HISTORY = 1L << 16;
+
+    /** Every permission, as granted to the guild owner and administrators. */
+    public static final long ALL = Long.MAX_VALUE;
+
+    private static final Map<String, Long> BITS = new HashMap<>();
+
+    static {
+        String[] names = {
+            "CREATE_INSTANT_INVITE", "KICK_MEMBERS", "BAN_MEMBERS", "ADMINISTRATOR",
+            "MANAGE_CHANNELS", "MANAGE_GUILD", "ADD_REACTIONS", "VIEW_AUDIT_LOG",
+            "PRIORITY_SPEAKER", "STREAM", "VIEW_CHANNEL", "SEND_MESSAGES",
+            "SEND_TTS_MESSAGES", "MANAGE_MESSAGES", "EMBED_LINKS", "ATTACH_FILES",
+            "READ_MESSAGE_HISTORY", "MENTION_EVERYONE", "USE_EXTERNAL_EMOJIS", "VIEW_GUILD_INSIGHTS",
+            "CONNECT", "SPEAK", "MUTE_MEMBERS", "DEAFEN_MEMBERS",
+            "MOVE_MEMBERS", "USE_VAD", "CHANGE_NICKNAME", "MANAGE_NICKNAMES",
+            "MANAGE_ROLES", "MANAGE_WEBHOOKS", "MANAGE_GUILD_EXPRESSIONS", "USE_APPLICATION_COMMANDS",
+            "REQUEST_TO_SPEAK", "MANAGE_EVENTS", "MANAGE_THREADS", "CREATE_PUBLIC_THREADS",
+            "CREATE_PRIVATE_THREADS", "USE_EXTERNAL_STICKERS", "SEND_MESSAGES_IN_THREADS", "USE_EMBEDDED_ACTIVITIES",
+            "MODERATE_MEMBERS", "VIEW_CREATOR_MONETIZATION_ANALYTICS", "USE_SOUNDBOARD", "CREATE_GUILD_EXPRESSIONS",
+            "CREATE_EVENTS", "USE_EXTERNAL_SOUNDS", "SEND_VOICE_MESSAGES", null,
+            null, "SEND_POLLS", "USE_EXTERNAL_APPS"
+        };
+        for (int bit = 0; bit < names.length; bit++) {
+            if (names[bit] != null) {
+                BITS.put(names[bit], 1L << bit);
+            }
+        }
+        // Older names still found in bots and docs.
+        BITS.put("MANAGE_EMOJIS_AND_STICKERS", 1L << 30);
+        BITS.put("USE_SLASH_COMMANDS", 1L << 31);
+        BITS.put("START_EMBEDDED_ACTIVITIES", 1L << 39);
+    }
+
+    private DiscordPermissions() {
+    }
+
+    /**
+     * Parses comma-separated permission names (case-insensitive) or a decimal bitmask.
+     *
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static long parse(String permissions) {
+        long mask = 0;
+        for (String part : permissions.split(",")) {
+            String name = part.trim().toUpperCase(Locale.ROOT);
+            if (name.isEmpty()) {
+                continue;
+            }
+            Long bit = BITS.get(name);
+            if (bit != null) {
+                mask |= bit;
+            } else if (DiscordRoute.isSnowflake(name)) {
+                mask |= Long.parseLong(name);
+            } else {
+                throw new IllegalArgumentException("Unknown permission: " + part.trim());
+            }
+        }
+        return mask;
+    }
+
+    public static boolean has(long permissions, long required) {
+        return (permissions & required) == required;
+    }
+}
@@ -0,0 +1,207 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks Discord's rate limit buckets from the X-RateLimit-* response headers.
+ *
+ * Before a request is sent, {@link #reserve} takes one slot from its bucket, or returns how many
+ * milliseconds the caller has to wait. After the response, {@link #update} stores what Discord
+ * reported for the bucket. Times are in milliseconds from a monotonic clock supplied by the caller.
+ */
+public class DiscordRateLimiter {
+
+    /** Discord allows 50 requests per second per bot across all routes, unless raised for the bot. */
+    static final int GLOBAL_REQUESTS_PER_SECOND = 50;
+    /** Wait used when a bucket is exhausted but Discord has not told us when it resets yet. */
+    private static final long UNKNOWN_RESET_WAIT_MS = 250;
+
+    private final Map<String, String> bucketHashes = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final Object globalLock = new Object();
+    private volatile int globalRequestsPerSecond = GLOBAL_REQUESTS_PER_SECOND;
+    private long globalBlockedUntil;
+    private long globalWindowStart;
+    private int globalWindowCount;
+
+    private static final class Bucket {
+        int limit = 1;
+        int remaining = 1;
+        long resetAt;
+        boolean known;
+    }
+
+    /**
+     * Sets the global cap, for bots Discord has granted a higher limit.
+     */
+    public void setGlobalRequestsPerSecond(int requestsPerSecond) {
+        globalRequestsPerSecond = Math.max(1, requestsPerSecond);
+    }
+
+    public int getGlobalRequestsPerSecond() {
+        return globalRequestsPerSecond;
+    }
+
+    /**
+     * Reserves a slot for the route.
+     *
+     * @return 0 if the request may be sent now, otherwise the number of milliseconds to wait
+     *         before trying again
+     */
+    public long reserve(DiscordRoute route, long now) {
+        boolean global = route.isGloballyLimited();
+        long globalWait = global ? reserveGlobal(now, false) : 0;
+        if (globalWait > 0) {
+            return globalWait;
+        }
+
+        Bucket bucket = buckets.get(bucketKey(route));
+        if (bucket != null) {
+            synchronized (bucket) {
+                if (bucket.resetAt > 0 && now >= bucket.resetAt) {
+                    bucket.remaining = bucket.limit;
+                    bucket.resetAt = 0;
+                }
+                if (bucket.remaining <= 0) {
+                    return bucket.resetAt > 0 ? bucket.resetAt - now : UNKNOWN_RESET_WAIT_MS;
+                }
+                bucket.remaining--;
+            }
+        }
+
+        long wait = global ? reserveGlobal(now, true) : 0;
+        if (wait > 0 && bucket != null) {
+            synchronized (bucket) {
+                bucket.remaining++;
+            }
+        }
+        return wait;
+    }
+
+    private long reserveGlobal(long now, boolean take) {
+        synchronized (globalLock) {
+            if (now < globalBlockedUntil) {
+                return globalBlockedUntil - now;
+            }
+            if (now - globalWindowStart >= 1000) {
+                globalWindowStart = now;
+                globalWindowCount = 0;
+            }
+            if (globalWindowCount >= globalRequestsPerSecond) {
+                return globalWindowStart + 1000 - now;
+            }
+            if (take) {
+                globalWindowCount++;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Stores the rate limit state reported in a response.
+     *
+     * @param headers response headers with lower-case names
+     * @return for a 429, how many milliseconds to wait before retrying; otherwise 0
+     */
+    public long update(DiscordRoute route, int status, Map<String, String> headers, long now) {
+        String hash = headers.get("x-ratelimit-bucket");
+        if (hash != null) {
+            bucketHashes.put(route.routeKey(), hash);
+        }
+
+        String key = bucketKey(route);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null && (hash != null || status == 429)) {
+            Bucket created = new Bucket();
+            Bucket existing = buckets.putIfAbsent(key, created);
+            bucket = existing != null ? existing : created;
+        }
+
+        long resetAfter = parseMillis(headers.get("x-ratelimit-reset-after"));
+        if (bucket != null) {
+            synchronized (bucket) {
+                int limit = parseInt(headers.get("x-ratelimit-limit"), -1);
+                int remaining = parseInt(headers.get("x-ratelimit-remaining"), -1);
+                if (limit > 0) {
+                    bucket.limit = limit;
+                }
+                long resetAt = resetAfter >= 0 ? now + resetAfter : bucket.resetAt;
+                boolean newWindow = !bucket.known || bucket.resetAt == 0 || resetAt > bucket.resetAt + 100;
+                if (remaining >= 0) {
+                    // Within the same window, requests still in flight already took their slot,
+                    // so only ever lower the count; a new window starts from Discord's number.
+                    bucket.remaining = newWindow ? remaining : Math.min(bucket.remaining, remaining);
+                    bucket.known = true;
+                }
+                bucket.resetAt = resetAt;
+            }
+        }
+
+        if (status != 429) {
+            return 0;
+        }
+
+        long retryAfter = parseMillis(headers.get("retry-after"));
+        if (retryAfter < 0) {
+            retryAfter = resetAfter >= 0 ? resetAfter : 1000;
+        }
+        boolean global = "true".equalsIgnoreCase(headers.get("x-ratelimit-global"))
+                || "global".equalsIgnoreCase(headers.get("x-ratelimit-scope"));
+        if (global) {
+            synchronized (globalLock) {
+                globalBlockedUntil = Math.max(globalBlockedUntil, now + retryAfter);
+            }
+        } else if (bucket != null) {
+            synchronized (bucket) {
+                bucket.remaining = 0;
+                bucket.resetAt = Math.max(bucket.resetAt, now + retryAfter);
+            }
+        }
+        return retryAfter;
+    }
+
+    /**
+     * Forgets every bucket, for example after the bot token changes.
+     */
+    public void reset() {
+        bucketHashes.clear();
+        buckets.clear();
+        synchronized (globalLock) {
+            globalBlockedUntil = 0;
+            globalWindowStart = 0;
+            globalWindowCount = 0;
+        }
+    }
+
+    private String bucketKey(DiscordRoute route) {
+        String hash = bucketHashes.get(route.routeKey());
+        return (hash != null ? hash : route.routeKey()) + ":" + route.majorParameter;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses a duration in (possibly fractional) seconds, as Discord sends it, into milliseconds.
+     */
+    static long parseMillis(String seconds) {
+        if (seconds == null) {
+            return -1;
+        }
+        try {
+            return (long) Math.ceil(Double.parseDouble(seconds.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,8 +1,29 @@
 package com.bosonshiggs.discordinventor;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 import org.json.JSONObject;
 
@@ -11,10 +32,138 @@ import android.os.Handler;
 
 public class DiscordRequestHelper {
 
-    private final String BASE_URL = "https://discord.com/api/v10";
+    /**
+     * Order in which queued requests get a worker. Interaction responses have their own workers
+     * and are taken earliest deadline first; among the rest, NORMAL requests go before BULK ones
+     * (purges, paging, batches), and requests of the same priority go in the order they were made.
+     */
+    public enum Priority {
+        INTERACTION,
+        NORMAL,
+        BULK
+    }
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 256;
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int INTERACTION_WORKERS = 2;
+    private static final String CONTENT_TYPE = "application/json";
+    private static final String ACCEPT_ENCODING = "gzip";
+
+    /** Per-worker scratch buffer the response stream is read through. */
+    private static final ThreadLocal<byte[]> readBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[READ_BUFFER_SIZE];
+        }
+    };
+
+    /*
+     * One worker pool for every component. Requests beyond maxQueuedRequests are rejected
+     * with an error instead of piling up. HttpURLConnection's own keep-alive pool (on by default,
+     * and left at its platform settings) lets the workers reuse the TLS connections to discord.com
+     * as long as every response body is drained and closed.
+     */
+    private static final ThreadPoolExecutor sharedExecutor;
+    private static final AtomicInteger pendingRequests = new AtomicInteger();
+    private static final AtomicLong requestSequence = new AtomicLong();
+    private static volatile int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+
+    /*
+     * Interaction responses must reach Discord within 3 seconds of the interaction, so they never
+     * wait behind the shared pool's queue. They are not rejected when the queue is full either.
+     */
+    private static final ThreadPoolExecutor interactionExecutor;
+
+    /*
+     * Requests that have to wait for a rate limit bucket are parked on this scheduler instead of
+     * sleeping on a worker, so a slow bucket never holds up requests to other routes.
+     */
+    private static final ScheduledExecutorService delayScheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DiscordRateLimit");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    /*
+     * Buckets are kept per API root, so a local fake server's limits never mix with discord.com's.
+     * The response cache keys entries by full URL for the same reason; metrics are shared.
+     */
+    private static final Map<String, DiscordRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private static final RequestMetrics metrics = new RequestMetrics();
+    private static final ResponseCache responseCache = new ResponseCache();
+    public static final String DEFAULT_BASE_URL = "https://discord.com/api/v10";
+
+    static {
+        sharedExecutor = new ThreadPoolExecutor(
+            DEFAULT_MAX_CONCURRENT_REQUESTS,
+            DEFAULT_MAX_CONCURRENT_REQUESTS,
+            30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(16, new Comparator<Runnable>() {
+                @Override
+                public int compare(Runnable a, Runnable b) {
+                    PendingRequest first = (PendingRequest) a;
+                    PendingRequest second = (PendingRequest) b;
+                    int order = first.priority.compareTo(second.priority);
+                    return order != 0 ? order : Long.compare(first.sequence, second.sequence);
+                }
+            }),
+            workerFactory("DiscordRequest-"));
+        sharedExecutor.allowCoreThreadTimeOut(true);
+
+        interactionExecutor = new ThreadPoolExecutor(
+            INTERACTION_WORKERS,
+            INTERACTION_WORKERS,
+            30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(16, new Comparator<Runnable>() {
+                @Override
+                public int compare(Runnable a, Runnable b) {
+                    PendingRequest first = (PendingRequest) a;
+                    PendingRequest second = (PendingRequest) b;
+                    int order = Long.compare(first.deadline, second.deadline);
+                    return order != 0 ? order : Long.compare(first.sequence, second.sequence);
+                }
+            }),
+            workerFactory("DiscordInteraction-"));
+        interactionExecutor.allowCoreThreadTimeOut(true);
+
+        // Buckets belong to the bot, so a new token starts from a clean slate.
+        TokenManager.addListener(new TokenManager.Listener() {
+            @Override
+            public void onTokenChanged(TokenManager.Credentials credentials) {
+                for (DiscordRateLimiter rateLimiter : rateLimiters.values()) {
+                    rateLimiter.reset();
+                }
+                responseCache.clear();
+            }
+        });
+    }
+
+    private static ThreadFactory workerFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     private final TokenManager tokenManager;
     private final Handler uiHandler;
     private final Context context;
+    private volatile String baseUrl = DEFAULT_BASE_URL;
+    private volatile DiscordRateLimiter rateLimiter = rateLimiterFor(DEFAULT_BASE_URL);
 
     public DiscordRequestHelper(TokenManager tokenManager, Handler uiHandler, Context context) {
         this.tokenManager = tokenManager;
@@ -22,72 +171,501 @@ public class DiscordRequestHelper {
         this.context = context;
     }
 
-    public void makeRequestWithBody(String endpoint, String method, String tag, String jsonBody, String guildId, 
+    /**
+     * Sets how many requests may be on the wire at the same time, across all components. Only the
+     * worker pool changes; how many idle connections HttpURLConnection keeps is left to the platform.
+     */
+    public static synchronized void setMaxConcurrentRequests(int maxConcurrent) {
+        int size = Math.max(1, maxConcurrent);
+        if (size > sharedExecutor.getMaximumPoolSize()) {
+            sharedExecutor.setMaximumPoolSize(size);
+            sharedExecutor.setCorePoolSize(size);
+        } else {
+            sharedExecutor.setCorePoolSize(size);
+            sharedExecutor.setMaximumPoolSize(size);
+        }
+    }
+
+    public static int getMaxConcurrentRequests() {
+        return sharedExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets how many requests may wait for a free worker before new ones are rejected.
+     */
+    public static void setMaxQueuedRequests(int maxQueued) {
+        maxQueuedRequests = Math.max(0, maxQueued);
+    }
+
+    public static int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    /**
+     * Sets how many GET responses are kept for reuse, across all components. 0 turns the cache
+     * off; identical GETs in flight at the same time are still sent only once.
+     */
+    public static void setResponseCacheSize(int maxEntries) {
+        responseCache.setMaxEntries(maxEntries);
+    }
+
+    public static int getResponseCacheSize() {
+        return responseCache.getMaxEntries();
+    }
+
+    /** Counts an interaction that {@link InteractionDeadlines} deferred on the app's behalf. */
+    static void countAutoDefer() {
+        metrics.autoDeferred();
+    }
+
+    /**
+     * Drops cached responses the Gateway event makes stale. Called on the socket thread.
+     */
+    static void onGatewayEvent(String eventType, JSONObject data) {
+        responseCache.onGatewayEvent(eventType, data);
+    }
+
+    /**
+     * Drops cached responses made stale by an event the filter skipped without parsing. Called on
+     * the socket thread.
+     */
+    static void onGatewayFrame(String eventType, String frame) {
+        responseCache.onGatewayFrame(eventType, frame);
+    }
+
+    /**
+     * Points this helper at another API root, such as a local mock server. Requests already
+     * queued go to the new root too.
+     *
+     * @throws IllegalArgumentException unless the URL is https, or http to this device, since
+     *                                  every request carries the bot token
+     */
+    public void setBaseUrl(String url) {
+        String trimmed = url == null ? "" : url.trim();
+        if (trimmed.isEmpty()) {
+            trimmed = DEFAULT_BASE_URL;
+        }
+        checkTrustedUrl(trimmed, "https", "http");
+        String root = trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+        rateLimiter = rateLimiterFor(root);
+        baseUrl = root;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /** The rate limit buckets of this helper's API root. */
+    DiscordRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    private static DiscordRateLimiter rateLimiterFor(String root) {
+        DiscordRateLimiter limiter = rateLimiters.get(root);
+        if (limiter == null) {
+            DiscordRateLimiter created = new DiscordRateLimiter();
+            limiter = rateLimiters.putIfAbsent(root, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Accepts a URL with the secure scheme, or the plain one when the host is this device, so the
+     * bot token is never sent in the clear over the network.
+     *
+     * @throws IllegalArgumentException otherwise
+     */
+    static void checkTrustedUrl(String url, String secureScheme, String plainScheme) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid URL: " + url);
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.US);
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.US);
+        if (host.isEmpty()) {
+            throw new IllegalArgumentException("Invalid URL: " + url);
+        }
+        boolean loopback = host.equals("localhost") || host.startsWith("127.") || host.equals("[::1]")
+            || host.equals("::1");
+        if (!scheme.equals(secureScheme) && !(scheme.equals(plainScheme) && loopback)) {
+            throw new IllegalArgumentException("Only " + secureScheme + " URLs, or " + plainScheme
+                + " to this device, may receive the bot token: " + url);
+        }
+    }
+
+    /**
+     * Latency histograms and counters of every request sent so far, across all components.
+     */
+    static RequestMetrics.Snapshot getMetrics() {
+        return metrics.snapshot(pendingRequests.get());
+    }
+
+    static void resetMetrics() {
+        metrics.reset();
+    }
+
+    public void makeRequestWithBody(String endpoint, String method, String tag, String jsonBody, String guildId,
                                     Callback callback) {
-        new Thread(() -> {
-            try {
-                URL url = new URL(BASE_URL + endpoint);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod(method);
-                conn.setRequestProperty("Authorization", "Bot " + tokenManager.getBotToken(context));
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
+        submit(endpoint, method, tag, jsonBody, guildId, Priority.NORMAL, 0, new TextCallback(guildId, callback));
+    }
 
-                if (jsonBody != null) {
-                    try (OutputStream os = conn.getOutputStream()) {
-                        os.write(jsonBody.getBytes());
-                        os.flush();
-                    }
-                }
+    /**
+     * Sends a request and hands the full response (status, headers and body) to the callback.
+     */
+    public void makeRequestWithBody(String endpoint, String method, String tag, String jsonBody, String guildId,
+                                    ResultCallback callback) {
+        submit(endpoint, method, tag, jsonBody, guildId, Priority.NORMAL, 0, callback);
+    }
 
-                int responseCode = conn.getResponseCode();
-                if (responseCode >= 200 && responseCode < 300) {
-                    uiHandler.post(() -> callback.onResponse(tag, "Success for guild: " + guildId + " with code: " + responseCode));
-                } else {
-                    uiHandler.post(() -> callback.onError(tag, "Error for guild: " + guildId + " with code: " + responseCode));
-                }
+    /**
+     * Sends a request with the given priority. Use {@link Priority#BULK} for traffic that may
+     * wait, such as purges and paging, and {@link #sendInteractionResponse} for interactions.
+     */
+    public void makeRequestWithBody(String endpoint, String method, String tag, String jsonBody, String guildId,
+                                    Priority priority, ResultCallback callback) {
+        submit(endpoint, method, tag, jsonBody, guildId, priority, 0, callback);
+    }
+
+    /**
+     * Sends a request on the interaction lane. The deadline, in wall-clock milliseconds, orders
+     * the lane and tells whether the response went out in time.
+     */
+    void sendInteractionResponse(String endpoint, String method, String tag, String jsonBody, long deadlineMillis,
+                                 ResultCallback callback) {
+        submit(endpoint, method, tag, jsonBody, null, Priority.INTERACTION, deadlineMillis, callback);
+    }
+
+    public void makeRequest(String endpoint, String method, String tag, String content, String guildId, Callback callback) {
+        makeRequest(endpoint, method, tag, content, guildId, new TextCallback(guildId, callback));
+    }
+
+    public void makeRequest(String endpoint, String method, String tag, String content, String guildId,
+                            ResultCallback callback) {
+        String body = null;
+        if (content != null) {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("content", content);
+                json.put("guild_id", guildId);
+                body = json.toString();
             } catch (Exception e) {
                 uiHandler.post(() -> callback.onError(tag, "Error for guild: " + guildId + " - " + e.getMessage()));
+                return;
             }
-        }).start();
+        }
+        submit(endpoint, method, tag, body, guildId, Priority.NORMAL, 0, callback);
     }
 
-    public void makeRequest(String endpoint, String method, String tag, String content, String guildId, Callback callback) {
-        new Thread(() -> {
-            try {
-                URL url = new URL(BASE_URL + endpoint);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod(method);
-                conn.setRequestProperty("Authorization", "Bot " + tokenManager.getBotToken(context));
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
+    private void submit(String endpoint, String method, String tag, String body, String guildId,
+                        Priority priority, long deadline, ResultCallback callback) {
+        boolean read = "GET".equals(method) && body == null;
+        String cacheKey = read ? baseUrl + endpoint : null;
+        if (read) {
+            DiscordResponse cached = responseCache.get(cacheKey, now());
+            if (cached != null) {
+                metrics.cacheHit();
+                uiHandler.post(() -> callback.onResult(tag, cached));
+                return;
+            }
+        }
+
+        int pending = pendingRequests.incrementAndGet();
+        if (priority != Priority.INTERACTION && pending > maxQueuedRequests + sharedExecutor.getMaximumPoolSize()) {
+            pendingRequests.decrementAndGet();
+            metrics.rejected();
+            uiHandler.post(() -> callback.onError(tag, "Error for guild: " + guildId + " - request queue is full ("
+                    + maxQueuedRequests + " pending requests)"));
+            return;
+        }
+        PendingRequest request = new PendingRequest(endpoint, method, tag, body, guildId, priority, deadline,
+            callback);
+        if (read) {
+            request.flight = responseCache.join(cacheKey, request.route, request);
+            if (request.flight == null) {
+                // An identical GET is already on the wire; this one is answered with it.
+                metrics.coalesced();
+                return;
+            }
+        }
+        dispatch(request);
+    }
+
+    private void dispatch(PendingRequest request) {
+        try {
+            (request.priority == Priority.INTERACTION ? interactionExecutor : sharedExecutor).execute(request);
+        } catch (RejectedExecutionException e) {
+            request.fail("Error for guild: " + request.guildId + " - " + e.getMessage());
+        }
+    }
+
+    private void dispatchLater(PendingRequest request, long delayMs) {
+        try {
+            delayScheduler.schedule(() -> dispatch(request), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            request.fail("Error for guild: " + request.guildId + " - " + e.getMessage());
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /**
+     * A request on its way through the pool. It may run several times: once for every rate
+     * limit wait and once for every 429 retry, and it settles its callback exactly once.
+     */
+    private final class PendingRequest implements Runnable {
+        final String endpoint;
+        final String method;
+        final String tag;
+        final String body;
+        final String guildId;
+        final ResultCallback callback;
+        final Priority priority;
+        /** Wall-clock milliseconds by which an interaction response must be sent, or Long.MAX_VALUE. */
+        final long deadline;
+        final long sequence = requestSequence.incrementAndGet();
+        final DiscordRoute route;
+        final RequestMetrics.Route stats;
+        int rateLimitRetries;
+        boolean tokenRetried;
+        ResponseCache.Flight<PendingRequest> flight;
+        boolean sent;
+
+        PendingRequest(String endpoint, String method, String tag, String body, String guildId,
+                       Priority priority, long deadline, ResultCallback callback) {
+            this.endpoint = endpoint;
+            this.method = method;
+            this.tag = tag;
+            this.body = body;
+            this.guildId = guildId;
+            this.callback = callback;
+            this.priority = priority;
+            this.deadline = deadline > 0 ? deadline : Long.MAX_VALUE;
+            this.route = DiscordRoute.of(method, endpoint);
+            this.stats = metrics.route(route);
+        }
+
+        @Override
+        public void run() {
+            long wait = rateLimiter.reserve(route, now());
+            if (wait > 0) {
+                dispatchLater(this, wait);
+                return;
+            }
+            execute(this);
+        }
+
+        void succeed(DiscordResponse response) {
+            for (PendingRequest request : settle(response)) {
+                request.deliver(response);
+            }
+        }
+
+        void fail(String error) {
+            for (PendingRequest request : settle(null)) {
+                request.deliver(error);
+            }
+        }
+
+        /** This request, plus the identical GETs that joined it. */
+        private List<PendingRequest> settle(DiscordResponse response) {
+            if (flight == null) {
+                return Collections.singletonList(this);
+            }
+            return responseCache.land(flight, response, now());
+        }
+
+        private void deliver(DiscordResponse response) {
+            pendingRequests.decrementAndGet();
+            uiHandler.post(() -> callback.onResult(tag, response));
+        }
+
+        private void deliver(String error) {
+            pendingRequests.decrementAndGet();
+            uiHandler.post(() -> callback.onError(tag, error));
+        }
+    }
 
-                if (content != null) {
-                    JSONObject json = new JSONObject();
-                    json.put("content", content);
-                    json.put("guild_id", guildId);
+    private void execute(PendingRequest request) {
+        HttpURLConnection conn = null;
+        long started = System.nanoTime();
+        int sent = 0;
+        boolean recorded = false;
+        if (!request.sent && request.deadline != Long.MAX_VALUE) {
+            metrics.interactionResponse(System.currentTimeMillis() > request.deadline);
+        }
+        request.sent = true;
+        request.stats.started();
+        try {
+            URL url = new URL(baseUrl + request.endpoint);
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestMethod(request.method);
+            TokenManager.Credentials credentials = tokenManager.getCredentials(context);
+            conn.setRequestProperty("Authorization", credentials.authorization);
+            conn.setRequestProperty("Content-Type", CONTENT_TYPE);
+            conn.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
 
-                    try (OutputStream os = conn.getOutputStream()) {
-                        os.write(json.toString().getBytes());
-                        os.flush();
-                    }
+            if (request.body != null) {
+                byte[] payload = request.body.getBytes("UTF-8");
+                sent = payload.length;
+                conn.setDoOutput(true);
+                try (OutputStream os = conn.getOutputStream()) {
+                    os.write(payload);
+                    os.flush();
                 }
+            }
+
+            DiscordResponse response = readResponse(conn);
+            int responseCode = response.getStatusCode();
+            request.stats.finished(System.nanoTime() - started, responseCode, sent, response.getBodyLength());
+            recorded = true;
+            invalidateAfter(request);
+
+            long retryAfter = rateLimiter.update(request.route, responseCode, response.getHeaders(), now());
+            if (responseCode == 429 && request.rateLimitRetries < MAX_RATE_LIMIT_RETRIES) {
+                request.rateLimitRetries++;
+                request.stats.retried();
+                dispatchLater(request, retryAfter);
+                return;
+            }
+            if (responseCode == 401 && !request.tokenRetried
+                    && !credentials.token.equals(tokenManager.getBotToken(context))) {
+                // The token changed while this request was on the wire; send it again with the new one.
+                request.tokenRetried = true;
+                request.stats.retried();
+                dispatch(request);
+                return;
+            }
+
+            if (response.isSuccessful()) {
+                request.succeed(response);
+            } else {
+                String message = response.getErrorMessage();
+                request.fail("Error for guild: " + request.guildId + " with code: " + responseCode
+                        + (message.isEmpty() ? "" : " - " + message));
+            }
+        } catch (Exception e) {
+            if (conn != null) {
+                // A broken connection must not go back to the keep-alive pool.
+                conn.disconnect();
+            }
+            if (!recorded) {
+                request.stats.finished(System.nanoTime() - started, 0, sent, 0);
+                // The change may have gone through even though the answer was lost.
+                invalidateAfter(request);
+            }
+            request.fail("Error for guild: " + request.guildId + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * A request that changes something drops the cached responses of its channel or guild.
+     */
+    private static void invalidateAfter(PendingRequest request) {
+        if (!"GET".equals(request.method)) {
+            responseCache.invalidate(request.route.majorParameter, null);
+        }
+    }
+
+    /**
+     * Copies the response headers into a map keyed by lower-case header name.
+     */
+    private static Map<String, String> readHeaders(HttpURLConnection conn) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : conn.getHeaderFields().entrySet()) {
+            if (entry.getKey() != null && !entry.getValue().isEmpty()) {
+                headers.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue().get(0));
+            }
+        }
+        return headers;
+    }
 
-                int responseCode = conn.getResponseCode();
-                if (responseCode >= 200 && responseCode < 300) {
-                    uiHandler.post(() -> callback.onResponse(tag, "Success for guild: " + guildId + " with code: " + responseCode));
-                } else {
-                    uiHandler.post(() -> callback.onError(tag, "Error for guild: " + guildId + " with code: " + responseCode));
+    /**
+     * Reads status, headers and the whole body. The body is streamed through the worker's
+     * scratch buffer into a single array sized from Content-Length when the server sends it,
+     * and gzip-encoded bodies are inflated on the way. Reading to the end and closing the
+     * stream also hands the socket back to the keep-alive pool.
+     */
+    static DiscordResponse readResponse(HttpURLConnection conn) throws IOException {
+        int responseCode = conn.getResponseCode();
+        Map<String, String> headers = readHeaders(conn);
+
+        InputStream in = responseCode >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (in == null) {
+            return new DiscordResponse(responseCode, headers, new byte[0], 0);
+        }
+
+        boolean gzip = "gzip".equalsIgnoreCase(headers.get("content-encoding"));
+        int contentLength = conn.getContentLength();
+        byte[] body = new byte[!gzip && contentLength > 0 ? contentLength : 8192];
+        int length = 0;
+
+        try {
+            InputStream stream = gzip ? new GZIPInputStream(in, READ_BUFFER_SIZE) : in;
+            byte[] buffer = readBuffer.get();
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                if (length + read > body.length) {
+                    byte[] grown = new byte[Math.max(body.length * 2, length + read)];
+                    System.arraycopy(body, 0, grown, 0, length);
+                    body = grown;
                 }
-            } catch (Exception e) {
-                uiHandler.post(() -> callback.onError(tag, "Error for guild: " + guildId + " - " + e.getMessage()));
+                System.arraycopy(buffer, 0, body, length, read);
+                length += read;
             }
-        }).start();
+        } finally {
+            in.close();
+        }
+        return new DiscordResponse(responseCode, headers, body, length);
+    }
+
+    /**
+     * Adapts the plain text callback: the response body is passed on as a String, or a short
+     * success message when Discord answers without a body (204 No Content).
+     */
+    private static final class TextCallback implements ResultCallback {
+        private final String guildId;
+        private final Callback callback;
+
+        TextCallback(String guildId, Callback callback) {
+            this.guildId = guildId;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onResult(String tag, DiscordResponse response) {
+            if (response.hasBody()) {
+                callback.onResponse(tag, response.getBody());
+            } else {
+                callback.onResponse(tag, "Success for guild: " + guildId + " with code: " + response.getStatusCode());
+            }
+        }
+
+        @Override
+        public void onError(String tag, String error) {
+            callback.onError(tag, error);
+        }
     }
 
     public interface Callback {
         void onResponse(String tag, String response);
         void onError(String tag, String error);
     }
-}
 
+    /**
+     * Receives the structured response of a successful (2xx) request. Non-2xx answers and
+     * transport failures arrive in {@link #onError} with the status code and Discord's message.
+     */
+    public interface ResultCallback {
+        void onResult(String tag, DiscordResponse response);
+        void onError(String tag, String error);
+    }
+}
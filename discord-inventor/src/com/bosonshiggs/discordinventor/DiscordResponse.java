@@ -0,0 +1,107 @@
+package com.bosonshiggs.discordinventor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The result of a Discord REST call: status code, headers and the raw body bytes.
+ *
+ * The body is kept as the bytes read from the socket and only decoded into a String the
+ * first time {@link #getBody()} is called, so large pages such as audit logs exist once.
+ */
+public final class DiscordResponse {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final int bodyLength;
+    private String text;
+
+    DiscordResponse(int statusCode, Map<String, String> headers, byte[] body, int bodyLength) {
+        this.statusCode = statusCode;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.bodyLength = bodyLength;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * Returns a response header, looked up case-insensitively, or null.
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * All response headers, keyed by lower-case name.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    public boolean hasBody() {
+        return bodyLength > 0;
+    }
+
+    /**
+     * Streams the body without copying it.
+     */
+    public InputStream openBody() {
+        return new ByteArrayInputStream(body, 0, bodyLength);
+    }
+
+    /**
+     * Decodes the body as UTF-8. The decoded String is cached.
+     */
+    public synchronized String getBody() {
+        if (text == null) {
+            text = bodyLength == 0 ? "" : new String(body, 0, bodyLength, UTF_8);
+        }
+        return text;
+    }
+
+    public JSONObject getJsonObject() throws JSONException {
+        return new JSONObject(getBody());
+    }
+
+    public JSONArray getJsonArray() throws JSONException {
+        return new JSONArray(getBody());
+    }
+
+    /**
+     * Returns the "message" field of a Discord error body, or an empty string.
+     */
+    public String getErrorMessage() {
+        if (bodyLength == 0) {
+            return "";
+        }
+        try {
+            JSONObject error = getJsonObject();
+            String message = error.optString("message");
+            int code = error.optInt("code");
+            return code != 0 ? message + " (" + code + ")" : message;
+        } catch (JSONException e) {
+            return getBody();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.bosonshiggs.discordinventor;
+
+/**
+ * Describes the REST route an endpoint belongs to. Discord shares rate limits between requests
+ * with the same method and route template, split by the "major parameter" (channel, guild or
+ * webhook) that appears right after the first path segment.
+ */
+public final class DiscordRoute {
+
+    public final String method;
+    public final String template;
+    public final String majorParameter;
+
+    private DiscordRoute(String method, String template, String majorParameter) {
+        this.method = method;
+        this.template = template;
+        this.majorParameter = majorParameter;
+    }
+
+    /**
+     * Builds the route for an endpoint such as "/channels/123/messages/456?limit=50".
+     * Ids are replaced with placeholders, except the major parameter that Discord keys buckets on.
+     */
+    public static DiscordRoute of(String method, String endpoint) {
+        int query = endpoint.indexOf('?');
+        String path = query >= 0 ? endpoint.substring(0, query) : endpoint;
+        String[] segments = path.split("/");
+
+        StringBuilder template = new StringBuilder(path.length());
+        String resource = "";
+        String major = "";
+        String previous = "";
+        int index = 0;
+
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            template.append('/');
+            if (index == 0) {
+                resource = segment;
+                template.append(segment);
+            } else if (index == 1 && isMajorResource(resource)) {
+                major = segment;
+                template.append(majorPlaceholder(resource));
+            } else if (index == 2 && isTokenResource(resource) && !isSnowflake(segment)) {
+                if ("webhooks".equals(resource)) {
+                    major = major + "/" + segment;
+                }
+                template.append("{token}");
+            } else if (isSnowflake(segment)) {
+                template.append("{id}");
+            } else if ("reactions".equals(previous)) {
+                template.append("{emoji}");
+            } else {
+                template.append(segment);
+            }
+            previous = segment;
+            index++;
+        }
+        return new DiscordRoute(method, template.toString(), major);
+    }
+
+    /**
+     * Key shared by every request that Discord may place in the same bucket.
+     */
+    public String routeKey() {
+        return method + " " + template;
+    }
+
+    /**
+     * Interaction responses are exempt from the bot's global rate limit; everything else counts.
+     */
+    public boolean isGloballyLimited() {
+        return !template.startsWith("/interactions/");
+    }
+
+    static boolean isSnowflake(String segment) {
+        if (segment.isEmpty() || segment.length() > 20) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMajorResource(String resource) {
+        return "channels".equals(resource) || "guilds".equals(resource) || isTokenResource(resource);
+    }
+
+    private static boolean isTokenResource(String resource) {
+        return "webhooks".equals(resource) || "interactions".equals(resource);
+    }
+
+    private static String majorPlaceholder(String resource) {
+        switch (resource) {
+            case "channels":
+                return "{channel_id}";
+            case "guilds":
+                return "{guild_id}";
+            case "webhooks":
+                return "{webhook_id}";
+            default:
+                return "{interaction_id}";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return routeKey();
+    }
+}
@@ -1,9 +1,9 @@
 package com.bosonshiggs.discordinventor;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -11,11 +11,17 @@ import android.os.Handler;
 import android.os.Looper;
 
 import com.google.appinventor.components.annotations.DesignerComponent;
+import com.google.appinventor.components.annotations.DesignerProperty;
+import com.google.appinventor.components.annotations.PropertyCategory;
 import com.google.appinventor.components.annotations.SimpleEvent;
 import com.google.appinventor.components.annotations.SimpleFunction;
+import com.google.appinventor.components.annotations.SimpleProperty;
+import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.AndroidNonvisibleComponent;
 import com.google.appinventor.components.runtime.ComponentContainer;
 import com.google.appinventor.components.runtime.EventDispatcher;
+import com.google.appinventor.components.runtime.util.YailDictionary;
+import com.google.appinventor.components.runtime.util.YailList;
 
 
 @DesignerComponent(
@@ -28,9 +34,27 @@ public class DiscordText extends AndroidNonvisibleComponent {
 	private final TokenManager tokenManager;
 	private DiscordRequestHelper requestHelper;
 	
-	private final String BASE_URL = "https://discord.com/api/v10";
 	private final Handler uiHandler = new Handler(Looper.getMainLooper());
+	private final RequestMetrics.Ticker metricsTicker = new RequestMetrics.Ticker(uiHandler, () -> MetricsSnapshot(GetMetrics()));
 	private final HashMap<String, Long> cooldowns = new HashMap<>();
+	private final DiscordPager.Registry pagers = new DiscordPager.Registry(new DiscordPager.Listener() {
+		@Override
+		public void onPage(String tag, String page, int pageNumber, int itemCount, int totalFetched) {
+			PageReceived(tag, page, pageNumber, itemCount, totalFetched);
+		}
+
+		@Override
+		public void onCompleted(String tag, int totalFetched, boolean cancelled) {
+			PagingCompleted(tag, totalFetched, cancelled);
+		}
+
+		@Override
+		public void onError(String tag, String error) {
+			Error(tag, error);
+		}
+	});
+
+	private static final int MAX_MESSAGES_PAGE_SIZE = 100;
 	
 	public DiscordText(ComponentContainer container) {
 		super(container.$form());
@@ -42,6 +66,79 @@ public class DiscordText extends AndroidNonvisibleComponent {
 		);
 	}
 
+	@SimpleProperty
+	public void MaxConcurrentRequests(int maxConcurrent) {
+		DiscordRequestHelper.setMaxConcurrentRequests(maxConcurrent);
+	}
+
+	@SimpleProperty(description = "Maximum number of Discord requests running at the same time. Shared by all Discord components, so it is only set from blocks: setting it on one changes it for the others.",
+					category = PropertyCategory.BEHAVIOR)
+	public int MaxConcurrentRequests() {
+		return DiscordRequestHelper.getMaxConcurrentRequests();
+	}
+
+	@SimpleProperty
+	public void MaxQueuedRequests(int maxQueued) {
+		DiscordRequestHelper.setMaxQueuedRequests(maxQueued);
+	}
+
+	@SimpleProperty(description = "Maximum number of Discord requests waiting for a free connection. Requests beyond this limit fail with an Error event. Shared by all Discord components, so it is only set from blocks: setting it on one changes it for the others.",
+					category = PropertyCategory.BEHAVIOR)
+	public int MaxQueuedRequests() {
+		return DiscordRequestHelper.getMaxQueuedRequests();
+	}
+
+	@SimpleProperty
+	public void ResponseCacheSize(int maxEntries) {
+		DiscordRequestHelper.setResponseCacheSize(maxEntries);
+	}
+
+	@SimpleProperty(description = "How many GET responses (messages, channels, guilds, members, bans, active threads) are kept for a few seconds to a minute and reused by repeated calls. Entries are dropped when the app or a Gateway event changes the data. 0 turns the cache off. Shared by all Discord components, so it is only set from blocks.",
+					category = PropertyCategory.BEHAVIOR)
+	public int ResponseCacheSize() {
+		return DiscordRequestHelper.getResponseCacheSize();
+	}
+
+	@SimpleProperty
+	public void ApiBaseUrl(String url) {
+		try {
+			requestHelper.setBaseUrl(url);
+		} catch (IllegalArgumentException e) {
+			uiHandler.post(() -> Error("ApiBaseUrl", e.getMessage()));
+		}
+	}
+
+	@SimpleProperty(description = "Root of the Discord REST API this component talks to, for testing against a local fake Discord server; empty restores the default. Must be https, or http to this device, since every request carries the bot token. Rate limits and cached responses are kept per root; request metrics are shared.",
+					category = PropertyCategory.BEHAVIOR)
+	public String ApiBaseUrl() {
+		return requestHelper.getBaseUrl();
+	}
+
+	@DesignerProperty(
+		editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+		defaultValue = "0"
+	)
+	@SimpleProperty
+	public void MetricsIntervalSeconds(int seconds) {
+		metricsTicker.setIntervalSeconds(seconds);
+	}
+
+	@SimpleProperty(description = "Seconds between MetricsSnapshot events. 0 turns them off.",
+					category = PropertyCategory.BEHAVIOR)
+	public int MetricsIntervalSeconds() {
+		return metricsTicker.getIntervalSeconds();
+	}
+
+	@SimpleFunction(description = "Returns request metrics shared by all Discord components: InFlight, Pending, Rejected (queue full), CacheHits, Coalesced (answered by an identical request already on the wire), InteractionResponses, DeadlineMisses (interaction responses sent after Discord's 3 seconds), AutoDefers, Requests, Errors, RateLimited (429s), Retries, BytesSent, BytesReceived, and Routes, a dictionary from route (such as \"POST /channels/{channel_id}/messages\") to the same counters plus MeanMs, P50Ms, P90Ms, P99Ms and MaxMs latencies. Every HTTP attempt counts, including retries.")
+	public YailDictionary GetMetrics() {
+		return DiscordRequestHelper.getMetrics().toDictionary();
+	}
+
+	@SimpleFunction(description = "Resets the request metrics of all Discord components.")
+	public void ResetMetrics() {
+		DiscordRequestHelper.resetMetrics();
+	}
+
 	private boolean isOnCooldown(String command, int cooldownSeconds, String tag) {
 		long currentTime = System.currentTimeMillis() / 1000;
 		long lastTime = cooldowns.getOrDefault(command, 0L);
@@ -79,6 +176,45 @@ public class DiscordText extends AndroidNonvisibleComponent {
 			});
 	}
 
+	@SimpleFunction(description = "Sends many messages in one call. Each item is a dictionary with channelId and content, or a list of [channelId, content]. Messages to the same channel are sent one after another in the order given; different channels are served in parallel, paced by Discord's rate limits. MessagesSent reports the outcome of every item.")
+	public void SendMessages(YailList messages, String tag) {
+		List<MessageBatch.Item> items = new ArrayList<>();
+		for (Object message : messages.toArray()) {
+			items.add(batchItem(message));
+		}
+		new MessageBatch(requestHelper, items, tag, new MessageBatch.Listener() {
+			@Override
+			public void onCompleted(int sent, int failed, List<MessageBatch.Result> results) {
+				List<YailDictionary> outcomes = new ArrayList<>(results.size());
+				for (MessageBatch.Result result : results) {
+					YailDictionary outcome = new YailDictionary();
+					outcome.put("Index", result.index);
+					outcome.put("ChannelId", result.channelId);
+					outcome.put("Success", result.success);
+					outcome.put("MessageId", result.messageId);
+					outcome.put("Error", result.error);
+					outcomes.add(outcome);
+				}
+				MessagesSent(tag, sent, failed, YailList.makeList(outcomes));
+			}
+		}).start();
+	}
+
+	private static MessageBatch.Item batchItem(Object message) {
+		if (message instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) message;
+			Object channelId = map.containsKey("channelId") ? map.get("channelId") : map.get("channel_id");
+			Object content = map.get("content");
+			return new MessageBatch.Item(channelId == null ? "" : channelId.toString(),
+					content == null ? "" : content.toString());
+		}
+		if (message instanceof YailList && ((YailList) message).length() >= 2) {
+			YailList pair = (YailList) message;
+			return new MessageBatch.Item(pair.getString(0), pair.getString(1));
+		}
+		return new MessageBatch.Item("", "");
+	}
+
 	@SimpleFunction(description = "Edits an existing message in the specified channel within the given server.")
 	public void EditMessage(String guildId, String channelId, String messageId, String newContent, String tag,
 			int cooldownSeconds) {
@@ -175,35 +311,46 @@ public class DiscordText extends AndroidNonvisibleComponent {
 			});
 	}
 
+	@SimpleFunction(description = "Walks a channel's message history from newest to oldest, one page at a time. Each page arrives in PageReceived. Leave beforeMessageId empty to start at the newest message. pageSize is 1 to 100; maxMessages 0 means the whole history.")
+	public void StreamMessages(String guildId, String channelId, String beforeMessageId, int pageSize, int maxMessages,
+			String tag) {
+		int size = Math.max(1, Math.min(MAX_MESSAGES_PAGE_SIZE, pageSize));
+		pagers.start(new DiscordPager(requestHelper, "/channels/" + channelId + "/messages", null, "before", "id",
+				beforeMessageId, size, maxMessages, tag, guildId, pagers));
+	}
+
+	@SimpleFunction(description = "Stops a StreamMessages walk after the page in flight. PagingCompleted then reports it as cancelled.")
+	public void CancelPaging(String tag) {
+		pagers.cancel(tag);
+	}
+
 	@SimpleFunction(description = "Creates a thread in a Discord channel with a specified message.")
 	public void CreateThread(String guildId, String channelId, String messageId, String threadName,
 			int autoArchiveDuration, String tag, int cooldownSeconds) {
 		if (isOnCooldown("CreateThread", cooldownSeconds, tag)) {
 			return;
 		}
-		new Thread(() -> {
-			try {
-				JSONObject json = new JSONObject();
-				json.put("name", threadName);
-				json.put("auto_archive_duration", autoArchiveDuration);
-
-				requestHelper.makeRequestWithBody("/channels/" + channelId + "/messages/" + messageId + "/threads", "POST", tag,
-						json.toString(), guildId,
-			new DiscordRequestHelper.Callback() {
-				@Override
-				public void onResponse(String tag, String response) {
-				    Response(tag, response); // Chama o método Response da extensão
-				}
-
-				@Override
-				public void onError(String tag, String error) {
-				    Error(tag, error); // Chama o método Error da extensão
-				}
-			});
-			} catch (Exception e) {
-				uiHandler.post(() -> Error(tag, "Error creating thread: " + e.getMessage()));
-			}
-		}).start();
+		try {
+			JSONObject json = new JSONObject();
+			json.put("name", threadName);
+			json.put("auto_archive_duration", autoArchiveDuration);
+
+			requestHelper.makeRequestWithBody("/channels/" + channelId + "/messages/" + messageId + "/threads", "POST", tag,
+					json.toString(), guildId,
+				new DiscordRequestHelper.Callback() {
+					@Override
+					public void onResponse(String tag, String response) {
+					    Response(tag, response); // Chama o método Response da extensão
+					}
+
+					@Override
+					public void onError(String tag, String error) {
+					    Error(tag, error); // Chama o método Error da extensão
+					}
+				});
+		} catch (Exception e) {
+			uiHandler.post(() -> Error(tag, "Error creating thread: " + e.getMessage()));
+		}
 	}
 
 	@SimpleFunction(description = "Updates the name or auto-archive duration of a thread in a Discord channel.")
@@ -212,31 +359,29 @@ public class DiscordText extends AndroidNonvisibleComponent {
 		if (isOnCooldown("UpdateThread", cooldownSeconds, tag)) {
 			return;
 		}
-		new Thread(() -> {
-			try {
-				JSONObject json = new JSONObject();
-				if (!newName.isEmpty()) {
-					json.put("name", newName);
-				}
-				if (autoArchiveDuration > 0) {
-					json.put("auto_archive_duration", autoArchiveDuration);
-				}
-				requestHelper.makeRequestWithBody("/channels/" + threadId, "PATCH", tag, json.toString(), guildId,
-			new DiscordRequestHelper.Callback() {
-				@Override
-				public void onResponse(String tag, String response) {
-				    Response(tag, response); // Chama o método Response da extensão
-				}
-
-				@Override
-				public void onError(String tag, String error) {
-				    Error(tag, error); // Chama o método Error da extensão
-				}
-			});
-			} catch (Exception e) {
-				uiHandler.post(() -> Error(tag, "Error updating thread: " + e.getMessage()));
+		try {
+			JSONObject json = new JSONObject();
+			if (!newName.isEmpty()) {
+				json.put("name", newName);
 			}
-		}).start();
+			if (autoArchiveDuration > 0) {
+				json.put("auto_archive_duration", autoArchiveDuration);
+			}
+			requestHelper.makeRequestWithBody("/channels/" + threadId, "PATCH", tag, json.toString(), guildId,
+				new DiscordRequestHelper.Callback() {
+					@Override
+					public void onResponse(String tag, String response) {
+					    Response(tag, response); // Chama o método Response da extensão
+					}
+
+					@Override
+					public void onError(String tag, String error) {
+					    Error(tag, error); // Chama o método Error da extensão
+					}
+				});
+		} catch (Exception e) {
+			uiHandler.post(() -> Error(tag, "Error updating thread: " + e.getMessage()));
+		}
 	}
 
 	@SimpleFunction(description = "Deletes a thread from a Discord channel.")
@@ -326,72 +471,28 @@ public class DiscordText extends AndroidNonvisibleComponent {
 		EventDispatcher.dispatchEvent(this, "Error", tag, error);
 	}
 
-	@SimpleEvent(description = "Triggered when a command is on cooldown. Returns the remaining cooldown time.")
-	public void Cooldown(String tag, String command, long secondsRemaining) {
-		EventDispatcher.dispatchEvent(this, "Cooldown", tag, command, secondsRemaining);
+	@SimpleEvent(description = "Triggered for each page of a StreamMessages walk. Page is the JSON text of the page as Discord returned it.")
+	public void PageReceived(String tag, String page, int pageNumber, int itemCount, int totalFetched) {
+		EventDispatcher.dispatchEvent(this, "PageReceived", tag, page, pageNumber, itemCount, totalFetched);
 	}
 
-	/* Private methods */
-	private void makeRequestWithBody(String endpoint, String method, String tag, String jsonBody, String guildId) {
-		new Thread(() -> {
-			try {
-				URL url = new URL(BASE_URL + endpoint);
-				HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-				conn.setRequestMethod(method);
-				conn.setRequestProperty("Authorization", "Bot " + tokenManager.getBotToken(form.getApplicationContext()));
-				conn.setRequestProperty("Content-Type", "application/json");
-				conn.setDoOutput(true);
-
-				if (jsonBody != null) {
-					OutputStream os = conn.getOutputStream();
-					os.write(jsonBody.getBytes());
-					os.flush();
-					os.close();
-				}
+	@SimpleEvent(description = "Triggered when a StreamMessages walk has reached the end of the list, its maximum or was cancelled.")
+	public void PagingCompleted(String tag, int totalFetched, boolean cancelled) {
+		EventDispatcher.dispatchEvent(this, "PagingCompleted", tag, totalFetched, cancelled);
+	}
 
-				int responseCode = conn.getResponseCode();
-				if (responseCode >= 200 && responseCode < 300) {
-					uiHandler.post(
-							() -> Response(tag, "Success for guild: " + guildId + " with code: " + responseCode));
-				} else {
-					uiHandler.post(() -> Error(tag, "Error for guild: " + guildId + " with code: " + responseCode));
-				}
-			} catch (Exception e) {
-				uiHandler.post(() -> Error(tag, "Error for guild: " + guildId + " - " + e.getMessage()));
-			}
-		}).start();
+	@SimpleEvent(description = "Triggered when a SendMessages call has finished. Results has one dictionary per item, in the order given, with Index, ChannelId, Success, MessageId and Error.")
+	public void MessagesSent(String tag, int sent, int failed, YailList results) {
+		EventDispatcher.dispatchEvent(this, "MessagesSent", tag, sent, failed, results);
 	}
 
-	private void makeRequest(String endpoint, String method, String tag, String content, String guildId) {
-		new Thread(() -> {
-			try {
-				URL url = new URL(BASE_URL + endpoint);
-				HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-				conn.setRequestMethod(method);
-				conn.setRequestProperty("Authorization", "Bot " + tokenManager.getBotToken(form.getApplicationContext()));
-				conn.setRequestProperty("Content-Type", "application/json");
-				conn.setDoOutput(true);
-
-				if (content != null) {
-					JSONObject json = new JSONObject();
-					json.put("content", content);
-					json.put("guild_id", guildId);
-					OutputStream os = conn.getOutputStream();
-					os.write(json.toString().getBytes());
-					os.flush();
-					os.close();
-				}
+	@SimpleEvent(description = "Triggered when a command is on cooldown. Returns the remaining cooldown time.")
+	public void Cooldown(String tag, String command, long secondsRemaining) {
+		EventDispatcher.dispatchEvent(this, "Cooldown", tag, command, secondsRemaining);
+	}
 
-				int responseCode = conn.getResponseCode();
-				if (responseCode >= 200 && responseCode < 300) {
-					uiHandler.post(
-							() -> Response(tag, "Success for guild: " + guildId + " with code: " + responseCode));
-				} else {
-					uiHandler.post(() -> Error(tag, "Error for guild: " + guildId + " with code: " + responseCode));
-				}
-			} catch (Exception e) {
-				uiHandler.post(() -> Error(tag, "Error for guild: " + guildId + " - " + e.getMessage()));
-			}
-		}).start();
+	@SimpleEvent(description = "Triggered every MetricsIntervalSeconds with the same dictionary GetMetrics returns.")
+	public void MetricsSnapshot(YailDictionary metrics) {
+		EventDispatcher.dispatchEvent(this, "MetricsSnapshot", metrics);
 	}
 }
@@ -0,0 +1,677 @@
+package com.bosonshiggs.discordinventor;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Guilds, channels, members and roles seen on the Gateway, kept current by the events that
+ * change them so lookups need no REST call.
+ *
+ * Entities are stored as small immutable objects keyed by their snowflake as a long; an update
+ * replaces the whole object. Each entity type has its own size cap and evicts the least recently
+ * used entries beyond it. Events are applied on the Gateway threads and queries usually come from
+ * the UI thread, so every access goes through the cache's lock. Guilds, channels and members
+ * loaded over REST instead have no events behind them and expire after a short time.
+ */
+public class EntityCache {
+
+    /** Events that change cached state. They are parsed even when the app filters them out. */
+    public static final Set<String> EVENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "GUILD_CREATE", "GUILD_UPDATE", "GUILD_DELETE",
+        "CHANNEL_CREATE", "CHANNEL_UPDATE", "CHANNEL_DELETE",
+        "GUILD_MEMBER_ADD", "GUILD_MEMBER_UPDATE", "GUILD_MEMBER_REMOVE", "GUILD_MEMBERS_CHUNK",
+        "GUILD_ROLE_CREATE", "GUILD_ROLE_UPDATE", "GUILD_ROLE_DELETE")));
+
+    private static final Pattern TIMESTAMP = Pattern.compile(
+        "(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2})(?:\\.(\\d+))?(Z|[+-]\\d{2}:\\d{2})?");
+
+    private static final EntityCache shared = new EntityCache();
+
+    public static EntityCache shared() {
+        return shared;
+    }
+
+    public static final class Guild {
+        public final long id;
+        public final String name;
+        public final long ownerId;
+        public final int memberCount;
+
+        Guild(long id, String name, long ownerId, int memberCount) {
+            this.id = id;
+            this.name = name;
+            this.ownerId = ownerId;
+            this.memberCount = memberCount;
+        }
+    }
+
+    public static final class Overwrite {
+        public static final int ROLE = 0;
+        public static final int MEMBER = 1;
+
+        public final long id;
+        public final int type;
+        public final long allow;
+        public final long deny;
+
+        Overwrite(long id, int type, long allow, long deny) {
+            this.id = id;
+            this.type = type;
+            this.allow = allow;
+            this.deny = deny;
+        }
+    }
+
+    public static final class Channel {
+        public final long id;
+        public final long guildId;
+        public final int type;
+        public final String name;
+        public final long parentId;
+        public final int position;
+        public final Overwrite[] overwrites;
+
+        Channel(long id, long guildId, int type, String name, long parentId, int position, Overwrite[] overwrites) {
+            this.id = id;
+            this.guildId = guildId;
+            this.type = type;
+            this.name = name;
+            this.parentId = parentId;
+            this.position = position;
+            this.overwrites = overwrites;
+        }
+    }
+
+    public static final class Member {
+        public final long guildId;
+        public final long userId;
+        public final String username;
+        public final String nick;
+        public final long[] roleIds;
+        /** When the member's timeout ends, in epoch milliseconds; 0 if never timed out. */
+        public final long timedOutUntil;
+
+        Member(long guildId, long userId, String username, String nick, long[] roleIds, long timedOutUntil) {
+            this.guildId = guildId;
+            this.userId = userId;
+            this.username = username;
+            this.nick = nick;
+            this.roleIds = roleIds;
+            this.timedOutUntil = timedOutUntil;
+        }
+    }
+
+    public static final class Role {
+        public final long id;
+        public final long guildId;
+        public final String name;
+        public final long permissions;
+        public final int position;
+
+        Role(long id, long guildId, String name, long permissions, int position) {
+            this.id = id;
+            this.guildId = guildId;
+            this.name = name;
+            this.permissions = permissions;
+            this.position = position;
+        }
+    }
+
+    /** Members are identified by guild and user together. */
+    private static final class MemberKey {
+        final long guildId;
+        final long userId;
+
+        MemberKey(long guildId, long userId) {
+            this.guildId = guildId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof MemberKey)) {
+                return false;
+            }
+            MemberKey key = (MemberKey) other;
+            return key.guildId == guildId && key.userId == userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (guildId ^ (guildId >>> 32)) * 31 + (int) (userId ^ (userId >>> 32));
+        }
+    }
+
+    /** A LinkedHashMap in access order that drops its least recently used entry beyond a cap. */
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+
+        void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            Iterator<K> keys = keySet().iterator();
+            while (size() > maxSize && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+
+    private final LruMap<Long, Guild> guilds = new LruMap<>(500);
+    private final LruMap<Long, Channel> channels = new LruMap<>(10000);
+    private final LruMap<MemberKey, Member> members = new LruMap<>(10000);
+    private final LruMap<Long, Role> roles = new LruMap<>(5000);
+
+    /** Bumped on every change, so results derived from the cache can tell when they are stale. */
+    private long version;
+
+    /**
+     * Per guild, the last value of {@link #permissionCounter} taken by a change that can alter a
+     * permission: a new owner, a role added, removed or given other permissions, or a channel
+     * added, removed, moved under another parent or given other overwrites. Member changes are
+     * not counted here; a memoized result remembers the member it was computed for instead.
+     */
+    private final Map<Long, Long> permissionVersions = new HashMap<>();
+    private long permissionCounter;
+
+    /**
+     * How long a guild, channel or member loaded with {@link #applyFetched} is used. No event keeps
+     * such an entry current, so it is dropped after this and whoever needs it loads it again.
+     */
+    static final long FETCHED_TTL_MS = 30000;
+
+    /** When each entry loaded over REST, and not updated by an event since, expires. */
+    private final Map<Long, Long> fetchedGuilds = new HashMap<>();
+    private final Map<Long, Long> fetchedChannels = new HashMap<>();
+    private final Map<MemberKey, Long> fetchedMembers = new HashMap<>();
+    /** The earliest of those times, so lookups scan them only once one may have passed. */
+    private long nextExpiry = Long.MAX_VALUE;
+
+    /**
+     * Updates the cache from a DISPATCH event. Events that don't affect cached state are ignored.
+     */
+    public void apply(String eventType, JSONObject data) {
+        apply(eventType, data, 0);
+    }
+
+    /**
+     * Updates the cache from an object loaded over REST, given as the event that would carry it
+     * (GUILD_UPDATE, CHANNEL_UPDATE or GUILD_MEMBER_UPDATE). The guild, channels and members it
+     * holds expire after {@link #FETCHED_TTL_MS} unless an event updates them first.
+     */
+    public void applyFetched(String eventType, JSONObject data) {
+        apply(eventType, data, System.currentTimeMillis() + FETCHED_TTL_MS);
+    }
+
+    private void apply(String eventType, JSONObject data, long expiresAt) {
+        switch (eventType) {
+            case "GUILD_CREATE":
+            case "GUILD_UPDATE":
+                putGuild(data, expiresAt);
+                break;
+            case "GUILD_DELETE":
+                removeGuild(snowflake(data, "id"));
+                break;
+            case "CHANNEL_CREATE":
+            case "CHANNEL_UPDATE":
+                putChannel(toChannel(data, snowflake(data, "guild_id")), expiresAt);
+                break;
+            case "CHANNEL_DELETE":
+                synchronized (this) {
+                    Channel removed = channels.remove(snowflake(data, "id"));
+                    if (removed != null) {
+                        bumpPermissions(removed.guildId);
+                    }
+                    version++;
+                }
+                break;
+            case "GUILD_MEMBER_ADD":
+            case "GUILD_MEMBER_UPDATE":
+                putMember(toMember(data, snowflake(data, "guild_id")), expiresAt);
+                break;
+            case "GUILD_MEMBER_REMOVE":
+                JSONObject user = data.optJSONObject("user");
+                if (user != null) {
+                    removeMember(snowflake(data, "guild_id"), snowflake(user, "id"));
+                }
+                break;
+            case "GUILD_MEMBERS_CHUNK":
+                putMembers(data.optJSONArray("members"), snowflake(data, "guild_id"), expiresAt);
+                break;
+            case "GUILD_ROLE_CREATE":
+            case "GUILD_ROLE_UPDATE":
+                JSONObject role = data.optJSONObject("role");
+                if (role != null) {
+                    putRole(toRole(role, snowflake(data, "guild_id")));
+                }
+                break;
+            case "GUILD_ROLE_DELETE":
+                synchronized (this) {
+                    roles.remove(snowflake(data, "role_id"));
+                    bumpPermissions(snowflake(data, "guild_id"));
+                    version++;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void putGuild(JSONObject data, long expiresAt) {
+        long guildId = snowflake(data, "id");
+        // An unavailable guild (outage) carries no data worth caching.
+        if (guildId == 0 || data.optBoolean("unavailable", false)) {
+            return;
+        }
+        Guild previous = getGuild(guildId);
+        int memberCount = data.optInt("member_count", previous != null ? previous.memberCount : 0);
+        Guild guild = new Guild(guildId, data.optString("name", ""), snowflake(data, "owner_id"), memberCount);
+        synchronized (this) {
+            guilds.put(guildId, guild);
+            markFetched(fetchedGuilds, guildId, expiresAt);
+            if (previous == null || previous.ownerId != guild.ownerId) {
+                bumpPermissions(guildId);
+            }
+            version++;
+        }
+
+        JSONArray roleArray = data.optJSONArray("roles");
+        if (roleArray != null) {
+            for (int i = 0; i < roleArray.length(); i++) {
+                JSONObject role = roleArray.optJSONObject(i);
+                if (role != null) {
+                    putRole(toRole(role, guildId));
+                }
+            }
+        }
+        JSONArray channelArray = data.optJSONArray("channels");
+        if (channelArray != null) {
+            for (int i = 0; i < channelArray.length(); i++) {
+                JSONObject channel = channelArray.optJSONObject(i);
+                if (channel != null) {
+                    putChannel(toChannel(channel, guildId), expiresAt);
+                }
+            }
+        }
+        putMembers(data.optJSONArray("members"), guildId, expiresAt);
+    }
+
+    private void putMembers(JSONArray memberArray, long guildId, long expiresAt) {
+        if (memberArray == null) {
+            return;
+        }
+        for (int i = 0; i < memberArray.length(); i++) {
+            JSONObject member = memberArray.optJSONObject(i);
+            if (member != null) {
+                putMember(toMember(member, guildId), expiresAt);
+            }
+        }
+    }
+
+    private synchronized void putChannel(Channel channel, long expiresAt) {
+        if (channel.id != 0) {
+            Channel previous = channels.put(channel.id, channel);
+            markFetched(fetchedChannels, channel.id, expiresAt);
+            if (previous == null || previous.parentId != channel.parentId
+                    || !sameOverwrites(previous.overwrites, channel.overwrites)) {
+                bumpPermissions(channel.guildId);
+            }
+            version++;
+        }
+    }
+
+    private synchronized void putMember(Member member, long expiresAt) {
+        if (member != null) {
+            MemberKey key = new MemberKey(member.guildId, member.userId);
+            members.put(key, member);
+            markFetched(fetchedMembers, key, expiresAt);
+            version++;
+        }
+    }
+
+    /**
+     * Drops a member, for callers that changed it over REST and shouldn't wait for the event.
+     */
+    public synchronized void removeMember(long guildId, long userId) {
+        MemberKey key = new MemberKey(guildId, userId);
+        members.remove(key);
+        fetchedMembers.remove(key);
+        version++;
+    }
+
+    /** Records when an entry loaded over REST expires, or that events keep it current (0). */
+    private <K> void markFetched(Map<K, Long> fetched, K key, long expiresAt) {
+        if (expiresAt == 0) {
+            fetched.remove(key);
+        } else {
+            fetched.put(key, expiresAt);
+            nextExpiry = Math.min(nextExpiry, expiresAt);
+        }
+    }
+
+    /** Drops the entries loaded over REST that have expired. Called with the lock held. */
+    private void expireFetched() {
+        long now = System.currentTimeMillis();
+        if (now < nextExpiry) {
+            return;
+        }
+        nextExpiry = Long.MAX_VALUE;
+        for (Iterator<Map.Entry<Long, Long>> it = fetchedGuilds.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> entry = it.next();
+            if (now < entry.getValue()) {
+                nextExpiry = Math.min(nextExpiry, entry.getValue());
+            } else {
+                it.remove();
+                guilds.remove(entry.getKey());
+                bumpPermissions(entry.getKey());
+                version++;
+            }
+        }
+        for (Iterator<Map.Entry<Long, Long>> it = fetchedChannels.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> entry = it.next();
+            if (now < entry.getValue()) {
+                nextExpiry = Math.min(nextExpiry, entry.getValue());
+            } else {
+                it.remove();
+                Channel removed = channels.remove(entry.getKey());
+                if (removed != null) {
+                    bumpPermissions(removed.guildId);
+                }
+                version++;
+            }
+        }
+        for (Iterator<Map.Entry<MemberKey, Long>> it = fetchedMembers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<MemberKey, Long> entry = it.next();
+            if (now < entry.getValue()) {
+                nextExpiry = Math.min(nextExpiry, entry.getValue());
+            } else {
+                it.remove();
+                members.remove(entry.getKey());
+                version++;
+            }
+        }
+    }
+
+    private synchronized void putRole(Role role) {
+        if (role.id != 0) {
+            Role previous = roles.put(role.id, role);
+            if (previous == null || previous.permissions != role.permissions) {
+                bumpPermissions(role.guildId);
+            }
+            version++;
+        }
+    }
+
+    private void bumpPermissions(long guildId) {
+        permissionVersions.put(guildId, ++permissionCounter);
+    }
+
+    private static boolean sameOverwrites(Overwrite[] a, Overwrite[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].id != b[i].id || a[i].type != b[i].type || a[i].allow != b[i].allow || a[i].deny != b[i].deny) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void removeGuild(long guildId) {
+        guilds.remove(guildId);
+        permissionVersions.remove(guildId);
+        version++;
+        for (Iterator<Channel> it = channels.values().iterator(); it.hasNext(); ) {
+            if (it.next().guildId == guildId) {
+                it.remove();
+            }
+        }
+        for (Iterator<Role> it = roles.values().iterator(); it.hasNext(); ) {
+            if (it.next().guildId == guildId) {
+                it.remove();
+            }
+        }
+        for (Iterator<Member> it = members.values().iterator(); it.hasNext(); ) {
+            if (it.next().guildId == guildId) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Channel toChannel(JSONObject data, long guildId) {
+        Overwrite[] overwrites = new Overwrite[0];
+        JSONArray overwriteArray = data.optJSONArray("permission_overwrites");
+        if (overwriteArray != null) {
+            overwrites = new Overwrite[overwriteArray.length()];
+            for (int i = 0; i < overwrites.length; i++) {
+                JSONObject overwrite = overwriteArray.optJSONObject(i);
+                overwrites[i] = overwrite == null
+                    ? new Overwrite(0, Overwrite.ROLE, 0, 0)
+                    : new Overwrite(snowflake(overwrite, "id"), overwrite.optInt("type"),
+                                    snowflake(overwrite, "allow"), snowflake(overwrite, "deny"));
+            }
+        }
+        return new Channel(snowflake(data, "id"), guildId, data.optInt("type"), data.optString("name", ""),
+                           snowflake(data, "parent_id"), data.optInt("position"), overwrites);
+    }
+
+    private static Member toMember(JSONObject data, long guildId) {
+        JSONObject user = data.optJSONObject("user");
+        if (user == null) {
+            return null;
+        }
+        long[] roleIds = new long[0];
+        JSONArray roleArray = data.optJSONArray("roles");
+        if (roleArray != null) {
+            roleIds = new long[roleArray.length()];
+            for (int i = 0; i < roleIds.length; i++) {
+                roleIds[i] = parseSnowflake(roleArray.optString(i));
+            }
+        }
+        String nick = data.isNull("nick") ? "" : data.optString("nick", "");
+        long timedOutUntil = data.isNull("communication_disabled_until")
+            ? 0 : parseTimestamp(data.optString("communication_disabled_until", ""));
+        return new Member(guildId, snowflake(user, "id"), user.optString("username", ""), nick, roleIds,
+                          timedOutUntil);
+    }
+
+    private static Role toRole(JSONObject data, long guildId) {
+        return new Role(snowflake(data, "id"), guildId, data.optString("name", ""),
+                        snowflake(data, "permissions"), data.optInt("position"));
+    }
+
+    /**
+     * Reads a snowflake (or any id sent as a decimal string), returning 0 when missing or invalid.
+     */
+    static long snowflake(JSONObject data, String key) {
+        return data.isNull(key) ? 0 : parseSnowflake(data.optString(key, ""));
+    }
+
+    /**
+     * Reads an ISO 8601 timestamp as Discord sends it, such as 2021-12-22T14:02:58.123000+00:00,
+     * returning epoch milliseconds, or 0 when invalid.
+     */
+    static long parseTimestamp(String value) {
+        Matcher matcher = TIMESTAMP.matcher(value);
+        if (!matcher.matches()) {
+            return 0;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long millis;
+        try {
+            millis = format.parse(matcher.group(1)).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+        String fraction = matcher.group(2);
+        if (fraction != null) {
+            millis += Integer.parseInt((fraction + "00").substring(0, 3));
+        }
+        String offset = matcher.group(3);
+        if (offset != null && !offset.equals("Z")) {
+            long offsetMillis = (Integer.parseInt(offset.substring(1, 3)) * 60
+                                 + Integer.parseInt(offset.substring(4, 6))) * 60000L;
+            millis += offset.charAt(0) == '+' ? -offsetMillis : offsetMillis;
+        }
+        return millis;
+    }
+
+    static long parseSnowflake(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Changes whenever something that decides permissions in the guild changes, other than a
+     * member's roles. Never repeats a value the guild had before.
+     */
+    public synchronized long getPermissionVersion(long guildId) {
+        expireFetched();
+        Long permissionVersion = permissionVersions.get(guildId);
+        return permissionVersion != null ? permissionVersion : 0;
+    }
+
+    public synchronized Guild getGuild(long guildId) {
+        expireFetched();
+        return guilds.get(guildId);
+    }
+
+    public synchronized Channel getChannel(long channelId) {
+        expireFetched();
+        return channels.get(channelId);
+    }
+
+    public synchronized Member getMember(long guildId, long userId) {
+        expireFetched();
+        return members.get(new MemberKey(guildId, userId));
+    }
+
+    public synchronized Role getRole(long roleId) {
+        return roles.get(roleId);
+    }
+
+    /**
+     * Channels of a guild, in no particular order.
+     */
+    public synchronized List<Channel> getChannels(long guildId) {
+        expireFetched();
+        List<Channel> result = new ArrayList<>();
+        for (Channel channel : channels.values()) {
+            if (channel.guildId == guildId) {
+                result.add(channel);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Roles of a guild, in no particular order.
+     */
+    public synchronized List<Role> getRoles(long guildId) {
+        List<Role> result = new ArrayList<>();
+        for (Role role : roles.values()) {
+            if (role.guildId == guildId) {
+                result.add(role);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void setMaxGuilds(int maxGuilds) {
+        guilds.setMaxSize(maxGuilds);
+    }
+
+    public synchronized int getMaxGuilds() {
+        return guilds.maxSize;
+    }
+
+    public synchronized void setMaxChannels(int maxChannels) {
+        channels.setMaxSize(maxChannels);
+    }
+
+    public synchronized int getMaxChannels() {
+        return channels.maxSize;
+    }
+
+    public synchronized void setMaxMembers(int maxMembers) {
+        members.setMaxSize(maxMembers);
+    }
+
+    public synchronized int getMaxMembers() {
+        return members.maxSize;
+    }
+
+    public synchronized void setMaxRoles(int maxRoles) {
+        roles.setMaxSize(maxRoles);
+    }
+
+    public synchronized int getMaxRoles() {
+        return roles.maxSize;
+    }
+
+    public synchronized int getGuildCount() {
+        return guilds.size();
+    }
+
+    public synchronized int getChannelCount() {
+        return channels.size();
+    }
+
+    public synchronized int getMemberCount() {
+        return members.size();
+    }
+
+    public synchronized int getRoleCount() {
+        return roles.size();
+    }
+
+    public synchronized void clear() {
+        guilds.clear();
+        channels.clear();
+        members.clear();
+        roles.clear();
+        permissionVersions.clear();
+        fetchedGuilds.clear();
+        fetchedChannels.clear();
+        fetchedMembers.clear();
+        nextExpiry = Long.MAX_VALUE;
+        version++;
+    }
+}
@@ -0,0 +1,577 @@
+package com.bosonshiggs.discordinventor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Append-only store of the messages seen on the Gateway, so history survives app restarts.
+ *
+ * Records go to numbered segment files of a bounded size. Each record is a small fixed header
+ * (payload length, channel id, message id, kind) followed by the message JSON. An in-memory index
+ * keeps, per channel, the message ids in snowflake order with the location of their latest
+ * record; since snowflakes embed a timestamp, a time range is a binary search in that index. The
+ * index is rebuilt from the record headers when the archive is opened, and a record cut short by
+ * a crash is truncated away.
+ *
+ * Edits append a new version and deletes append a tombstone; {@link #compact} rewrites the
+ * segments with only the live latest versions, dropping messages past the retention period.
+ *
+ * All file and index work happens on one writer thread, so appends never block the Gateway thread
+ * and queries see every append made before them.
+ */
+public class EventArchive {
+
+    public interface QueryCallback {
+        /** Message JSON texts, oldest first. Called on the writer thread. */
+        void onResult(List<String> messages);
+
+        void onError(String error);
+    }
+
+    public interface CompactCallback {
+        /** Called on the writer thread with the number of messages kept. */
+        void onCompacted(int messages);
+
+        void onError(String error);
+    }
+
+    /** Events the archive stores. They are parsed even when the app filters them out. */
+    public static final Set<String> EVENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "MESSAGE_CREATE", "MESSAGE_UPDATE", "MESSAGE_DELETE", "MESSAGE_DELETE_BULK")));
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 1;
+    private static final byte KIND_MESSAGE = 0;
+    private static final byte KIND_DELETE = 1;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private static final Map<String, EventArchive> archives = new HashMap<>();
+
+    /**
+     * The archive stored in a directory. Components sharing a directory share the archive.
+     */
+    public static synchronized EventArchive open(File directory) {
+        String path = directory.getAbsolutePath();
+        EventArchive archive = archives.get(path);
+        if (archive == null) {
+            archive = new EventArchive(directory);
+            archives.put(path, archive);
+        }
+        return archive;
+    }
+
+    /** Message ids of one channel in snowflake order, with the location of their latest record. */
+    private static final class ChannelIndex {
+        long[] ids = new long[16];
+        long[] locations = new long[16];
+        int size;
+
+        /** @return whether the id is new to the index */
+        boolean put(long id, long location) {
+            if (size == 0 || id > ids[size - 1]) {
+                ensureCapacity();
+                ids[size] = id;
+                locations[size] = location;
+                size++;
+                return true;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                locations[index] = location;
+                return false;
+            }
+            index = -index - 1;
+            ensureCapacity();
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            System.arraycopy(locations, index, locations, index + 1, size - index);
+            ids[index] = id;
+            locations[index] = location;
+            size++;
+            return true;
+        }
+
+        boolean remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            System.arraycopy(locations, index + 1, locations, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        /** First position whose id is at least {@code id}. */
+        int lowerBound(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                locations = Arrays.copyOf(locations, size * 2);
+            }
+        }
+    }
+
+    private final File directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "DiscordArchive");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicInteger pendingAppends = new AtomicInteger();
+
+    // Owned by the writer thread.
+    private final HashMap<Long, ChannelIndex> index = new HashMap<>();
+    private final HashMap<Integer, RandomAccessFile> readers = new HashMap<>();
+    private int firstSegment;
+    private int segment;
+    private long segmentLength;
+    private DataOutputStream output;
+    private boolean opened;
+    private int liveMessages;
+    private long bytesWritten;
+
+    private volatile long maxSegmentBytes = 4L * 1024 * 1024;
+    private volatile int messageCount;
+    private volatile int channelCount;
+    private volatile long totalBytes;
+    private volatile int segmentCount;
+
+    private EventArchive(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the size at which a new segment is started. Index locations keep the offset in a
+     * segment in 32 bits, so the size is capped at Integer.MAX_VALUE.
+     */
+    public void setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = Math.min(Integer.MAX_VALUE, Math.max(64 * 1024, maxSegmentBytes));
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Opens the archive and rebuilds its index in the background, so the statistics reflect what
+     * is on disk before anything new is written.
+     */
+    public void load() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ensureOpen();
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues a Gateway event for storage. Events other than {@link #EVENT_TYPES} are ignored.
+     */
+    public void append(final String eventType, final JSONObject data) {
+        if (!EVENT_TYPES.contains(eventType)) {
+            return;
+        }
+        pendingAppends.incrementAndGet();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ensureOpen();
+                    write(eventType, data);
+                    if (pendingAppends.decrementAndGet() == 0) {
+                        // Flush once the burst is written rather than after every record.
+                        output.flush();
+                    }
+                } catch (Exception e) {
+                    pendingAppends.decrementAndGet();
+                    // Reopen from disk on the next call; the index is rebuilt from what was written.
+                    closeQuietly();
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the archived messages of a channel created between two times.
+     *
+     * @param fromMillis start of the range in Unix milliseconds, or 0 for no lower bound
+     * @param toMillis   end of the range in Unix milliseconds, or 0 for no upper bound
+     * @param limit      maximum number of messages, the newest of the range, or 0 for all
+     */
+    public void query(final long channelId, final long fromMillis, final long toMillis, final int limit,
+                      final QueryCallback callback) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ensureOpen();
+                    output.flush();
+                    callback.onResult(read(channelId, fromMillis, toMillis, limit));
+                } catch (Exception e) {
+                    callback.onError(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Rewrites the archive with only the latest version of each live message, dropping messages
+     * older than {@code retentionDays} (0 keeps everything).
+     */
+    public void compact(final int retentionDays, final CompactCallback callback) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ensureOpen();
+                    rewrite(retentionDays);
+                    callback.onCompacted(liveMessages);
+                } catch (Exception e) {
+                    closeQuietly();
+                    callback.onError(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes every archived message.
+     */
+    public void clear() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeQuietly();
+                for (File file : segmentFiles()) {
+                    file.delete();
+                }
+                index.clear();
+                liveMessages = 0;
+                bytesWritten = 0;
+                opened = false;
+                updateStats();
+            }
+        });
+    }
+
+    private void ensureOpen() throws IOException {
+        if (opened) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        index.clear();
+        liveMessages = 0;
+        bytesWritten = 0;
+        List<File> files = segmentFiles();
+        for (File file : files) {
+            loadSegment(file);
+            bytesWritten += file.length();
+        }
+        firstSegment = files.isEmpty() ? 0 : segmentNumber(files.get(0));
+        segment = files.isEmpty() ? 0 : segmentNumber(files.get(files.size() - 1));
+        openSegment(segment);
+        opened = true;
+        updateStats();
+    }
+
+    /**
+     * Rebuilds the index from the record headers of one segment, skipping the payloads.
+     */
+    private void loadSegment(File file) throws IOException {
+        int number = segmentNumber(file);
+        long offset = 0;
+        long length = file.length();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (offset + HEADER_SIZE <= length) {
+                int payloadLength = input.readInt();
+                long channelId = input.readLong();
+                long messageId = input.readLong();
+                byte kind = input.readByte();
+                if (payloadLength < 0 || offset + HEADER_SIZE + payloadLength > length) {
+                    break;
+                }
+                skipFully(input, payloadLength);
+                apply(channelId, messageId, kind, location(number, offset));
+                offset += HEADER_SIZE + payloadLength;
+            }
+        } catch (EOFException e) {
+            // Handled below like any other incomplete record.
+        }
+        if (offset < length) {
+            // The app stopped in the middle of a write; drop the incomplete record.
+            try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                truncate.setLength(offset);
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream input, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private void write(String eventType, JSONObject data) throws IOException {
+        long channelId = EntityCache.snowflake(data, "channel_id");
+        switch (eventType) {
+            case "MESSAGE_UPDATE":
+                // Updates without an author are partial (e.g. embeds resolving) and would replace
+                // the full message with a fragment.
+                if (!data.has("author")) {
+                    return;
+                }
+                writeRecord(channelId, EntityCache.snowflake(data, "id"), KIND_MESSAGE, data.toString());
+                break;
+            case "MESSAGE_CREATE":
+                writeRecord(channelId, EntityCache.snowflake(data, "id"), KIND_MESSAGE, data.toString());
+                break;
+            case "MESSAGE_DELETE":
+                writeRecord(channelId, EntityCache.snowflake(data, "id"), KIND_DELETE, "");
+                break;
+            case "MESSAGE_DELETE_BULK":
+                JSONArray ids = data.optJSONArray("ids");
+                for (int i = 0; ids != null && i < ids.length(); i++) {
+                    writeRecord(channelId, EntityCache.parseSnowflake(ids.optString(i)), KIND_DELETE, "");
+                }
+                break;
+            default:
+                break;
+        }
+        updateStats();
+    }
+
+    private void writeRecord(long channelId, long messageId, byte kind, String payload) throws IOException {
+        if (channelId == 0 || messageId == 0) {
+            return;
+        }
+        if (kind == KIND_DELETE && indexFor(channelId, false) == null) {
+            return;
+        }
+        byte[] bytes = payload.getBytes(UTF_8);
+        if (segmentLength > 0 && segmentLength + HEADER_SIZE + bytes.length > maxSegmentBytes) {
+            output.close();
+            openSegment(segment + 1);
+        }
+        long location = location(segment, segmentLength);
+        output.writeInt(bytes.length);
+        output.writeLong(channelId);
+        output.writeLong(messageId);
+        output.writeByte(kind);
+        output.write(bytes);
+        segmentLength += HEADER_SIZE + bytes.length;
+        bytesWritten += HEADER_SIZE + bytes.length;
+        apply(channelId, messageId, kind, location);
+    }
+
+    private void apply(long channelId, long messageId, byte kind, long location) {
+        if (kind == KIND_DELETE) {
+            ChannelIndex channel = indexFor(channelId, false);
+            if (channel != null && channel.remove(messageId)) {
+                liveMessages--;
+            }
+        } else if (indexFor(channelId, true).put(messageId, location)) {
+            liveMessages++;
+        }
+    }
+
+    private ChannelIndex indexFor(long channelId, boolean create) {
+        ChannelIndex channel = index.get(channelId);
+        if (channel == null && create) {
+            channel = new ChannelIndex();
+            index.put(channelId, channel);
+        }
+        return channel;
+    }
+
+    private List<String> read(long channelId, long fromMillis, long toMillis, int limit) throws IOException {
+        ChannelIndex channel = index.get(channelId);
+        if (channel == null) {
+            return Collections.emptyList();
+        }
+        int start = fromMillis > 0 ? channel.lowerBound(snowflakeAt(fromMillis)) : 0;
+        int end = toMillis > 0 ? channel.lowerBound(snowflakeAt(toMillis + 1)) : channel.size;
+        if (limit > 0 && end - start > limit) {
+            start = end - limit;
+        }
+        List<String> messages = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            messages.add(readPayload(channel.locations[i]));
+        }
+        return messages;
+    }
+
+    private String readPayload(long location) throws IOException {
+        int number = (int) (location >>> 32);
+        RandomAccessFile file = readers.get(number);
+        if (file == null) {
+            file = new RandomAccessFile(segmentFile(number), "r");
+            readers.put(number, file);
+        }
+        file.seek(location & 0xFFFFFFFFL);
+        int payloadLength = file.readInt();
+        file.skipBytes(HEADER_SIZE - 4);
+        byte[] payload = new byte[payloadLength];
+        file.readFully(payload);
+        return new String(payload, UTF_8);
+    }
+
+    private void rewrite(int retentionDays) throws IOException {
+        output.flush();
+        long oldest = retentionDays > 0 ? snowflakeAt(System.currentTimeMillis() - retentionDays * DAY_MS) : 0;
+
+        // Copy the live records into fresh segments numbered after the current ones.
+        List<File> oldFiles = segmentFiles();
+        int firstNew = segment + 1;
+        output.close();
+        firstSegment = firstNew;
+        openSegment(firstNew);
+        HashMap<Long, ChannelIndex> oldIndex = new HashMap<>(index);
+        index.clear();
+        liveMessages = 0;
+        bytesWritten = 0;
+        for (Map.Entry<Long, ChannelIndex> entry : oldIndex.entrySet()) {
+            ChannelIndex channel = entry.getValue();
+            for (int i = channel.lowerBound(oldest); i < channel.size; i++) {
+                writeRecord(entry.getKey(), channel.ids[i], KIND_MESSAGE, readPayload(channel.locations[i]));
+            }
+        }
+        output.flush();
+
+        closeReaders();
+        for (File file : oldFiles) {
+            file.delete();
+        }
+        updateStats();
+    }
+
+    private void openSegment(int number) throws IOException {
+        segment = number;
+        File file = segmentFile(number);
+        segmentLength = file.length();
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+    }
+
+    private void closeQuietly() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException ignored) {
+        }
+        output = null;
+        closeReaders();
+        opened = false;
+    }
+
+    private void closeReaders() {
+        for (RandomAccessFile reader : readers.values()) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+        readers.clear();
+    }
+
+    /** Publishes the writer thread's counters for readers on other threads. */
+    private void updateStats() {
+        messageCount = liveMessages;
+        channelCount = index.size();
+        totalBytes = bytesWritten;
+        segmentCount = opened ? segment - firstSegment + 1 : 0;
+    }
+
+    private List<File> segmentFiles() {
+        File[] files = directory.listFiles();
+        List<File> segments = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(file);
+                }
+            }
+        }
+        Collections.sort(segments, (a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static long location(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    /** The smallest snowflake created at the given time. */
+    private static long snowflakeAt(long millis) {
+        return Math.max(0, millis - MessagePurge.DISCORD_EPOCH) << 22;
+    }
+}
@@ -0,0 +1,548 @@
+package com.bosonshiggs.discordinventor;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * One connection to the Discord Gateway.
+ *
+ * Keeps the session alive across socket drops: the sequence number, session_id and
+ * resume_gateway_url from READY are remembered, so a reconnect sends RESUME (op 6) and Discord
+ * replays the events missed in between instead of starting a new session with IDENTIFY.
+ * Reconnects back off exponentially with jitter.
+ *
+ * With compression enabled the connection asks for compress=zlib-stream and inflates the binary
+ * frames through a {@link ZlibStreamDecoder} that is reset for every new socket.
+ *
+ * A connection can be one shard of a sharded bot. It then sends [shard_id, num_shards] in IDENTIFY
+ * and waits for its turn in the shared {@link GatewayIdentifyLimiter} before identifying.
+ */
+public class GatewayConnection {
+
+    public interface Listener {
+        /** Connection state changes worth showing to the app, e.g. "Connected". */
+        void onStatus(String message);
+
+        void onError(String source, String message);
+
+        /** A DISPATCH (op 0) event, including events replayed after a RESUME. */
+        void onDispatch(String eventType, JSONObject data, long receivedNanos);
+
+        /**
+         * Every parsed DISPATCH event, including observed events the filter keeps from the app.
+         * Called on the socket thread before {@link #onDispatch}.
+         */
+        void onStateEvent(String eventType, JSONObject data);
+
+        /**
+         * A DISPATCH event the filter drops without parsing, as the raw frame. Called on the socket
+         * thread.
+         */
+        void onSkippedEvent(String eventType, String frame);
+    }
+
+    private static final long RECONNECT_BASE_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60000;
+
+    public static final String STATE_CONNECTING = "Connecting";
+    public static final String STATE_WAITING_TO_IDENTIFY = "WaitingToIdentify";
+    public static final String STATE_IDENTIFYING = "Identifying";
+    public static final String STATE_RESUMING = "Resuming";
+    public static final String STATE_READY = "Ready";
+    public static final String STATE_RECONNECTING = "Reconnecting";
+    public static final String STATE_STOPPED = "Stopped";
+    public static final String STATE_FAILED = "Failed";
+
+    /** Close code used when we drop the socket ourselves but want to resume afterwards. */
+    private static final int CLOSE_RESUMABLE = 4900;
+
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DiscordGateway");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private final Random random = new Random();
+    private final String gatewayUrl;
+    private final String query;
+    private final String token;
+    private final int intents;
+    private final Listener listener;
+    private final GatewayEventFilter filter;
+    private final ZlibStreamDecoder decoder;
+    private final int shardId;
+    private final int shardCount;
+    private final GatewayIdentifyLimiter identifyLimiter;
+
+    private volatile WebSocketClient webSocketClient;
+    private final GatewayHeartbeat heartbeat;
+
+    private volatile int sequence = -1;
+    private volatile String sessionId;
+    private volatile String resumeGatewayUrl;
+
+    private volatile String state = STATE_STOPPED;
+    private volatile boolean stopped;
+    private boolean reconnectScheduled;
+    private int reconnectAttempts;
+
+    public GatewayConnection(String gatewayUrl, String token, int intents, boolean compress,
+                             GatewayEventFilter filter, Listener listener) {
+        this(gatewayUrl, token, intents, compress, filter, 0, 1, null, listener);
+    }
+
+    /**
+     * @param shardId         this connection's shard, from 0 to shardCount - 1
+     * @param shardCount      total number of shards; 1 sends no shard field
+     * @param identifyLimiter shared by all shards of the bot, or null to identify right away
+     */
+    public GatewayConnection(String gatewayUrl, String token, int intents, boolean compress,
+                             GatewayEventFilter filter, int shardId, int shardCount,
+                             GatewayIdentifyLimiter identifyLimiter, Listener listener) {
+        if (compress) {
+            gatewayUrl += (gatewayUrl.indexOf('?') >= 0 ? "&" : "?") + "compress=zlib-stream";
+        }
+        int queryStart = gatewayUrl.indexOf('?');
+        this.gatewayUrl = gatewayUrl;
+        this.query = queryStart >= 0 ? gatewayUrl.substring(queryStart) : "";
+        this.token = token;
+        this.intents = intents;
+        this.listener = listener;
+        this.filter = filter;
+        this.decoder = compress ? new ZlibStreamDecoder() : null;
+        this.shardId = shardId;
+        this.shardCount = shardCount;
+        this.identifyLimiter = identifyLimiter;
+        this.heartbeat = new GatewayHeartbeat(scheduler, new GatewayHeartbeat.Listener() {
+            @Override
+            public void sendHeartbeat() {
+                WebSocketClient client = webSocketClient;
+                if (client != null && client.isOpen()) {
+                    GatewayConnection.this.sendHeartbeat(client);
+                }
+            }
+
+            @Override
+            public void onAckMissed() {
+                WebSocketClient client = webSocketClient;
+                listener.onError("HEARTBEAT", "Heartbeat not acknowledged, reconnecting");
+                if (client != null) {
+                    // The socket may be half dead, so don't wait for a closing handshake.
+                    client.closeConnection(CLOSE_RESUMABLE, "Heartbeat ACK missed");
+                }
+            }
+        });
+    }
+
+    public void connect() {
+        stopped = false;
+        open();
+    }
+
+    /**
+     * Closes the connection for good. No reconnect is attempted afterwards.
+     */
+    public void close() {
+        stopped = true;
+        state = STATE_STOPPED;
+        heartbeat.stop();
+        WebSocketClient client = webSocketClient;
+        if (client != null) {
+            client.close();
+        }
+        if (decoder != null) {
+            synchronized (decoder) {
+                decoder.close();
+            }
+        }
+    }
+
+    /**
+     * Compressed bytes received so far, or 0 when compression is off.
+     */
+    public long getCompressedBytes() {
+        return decoder != null ? decoder.getCompressedBytes() : 0;
+    }
+
+    /**
+     * JSON bytes produced by inflating, or 0 when compression is off.
+     */
+    public long getInflatedBytes() {
+        return decoder != null ? decoder.getInflatedBytes() : 0;
+    }
+
+    public int getShardId() {
+        return shardId;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * One of the STATE_ constants.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Reconnects since the session was last READY or RESUMED.
+     */
+    public synchronized int getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    public boolean canResume() {
+        return sessionId != null && sequence >= 0;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Round trip of the last acknowledged heartbeat in milliseconds, or -1 if unknown.
+     */
+    public long getLatencyMs() {
+        return heartbeat.getLatencyMs();
+    }
+
+    private void open() {
+        String url = canResume() && resumeGatewayUrl != null ? resumeGatewayUrl + "/" + query : gatewayUrl;
+        state = STATE_CONNECTING;
+        try {
+            if (decoder != null) {
+                synchronized (decoder) {
+                    decoder.reset();
+                }
+            }
+            final WebSocketClient client = new WebSocketClient(new URI(url)) {
+                @Override
+                public void onOpen(ServerHandshake handshake) {
+                    listener.onStatus("Connected to Discord Gateway");
+                }
+
+                @Override
+                public void onMessage(String message) {
+                    handleMessage(this, message);
+                }
+
+                @Override
+                public void onMessage(ByteBuffer bytes) {
+                    if (decoder == null) {
+                        return;
+                    }
+                    String message;
+                    try {
+                        synchronized (decoder) {
+                            message = decoder.feed(bytes);
+                        }
+                    } catch (Exception e) {
+                        listener.onError("INFLATE_ERROR", e.getMessage());
+                        closeConnection(CLOSE_RESUMABLE, "Corrupt zlib stream");
+                        return;
+                    }
+                    if (message != null) {
+                        handleMessage(this, message);
+                    }
+                }
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                    handleClose(this, code, reason);
+                }
+
+                @Override
+                public void onError(Exception ex) {
+                    listener.onError("GATEWAY", ex.getMessage());
+                }
+            };
+            webSocketClient = client;
+            client.connect();
+        } catch (Exception e) {
+            listener.onError("GATEWAY", e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void handleMessage(WebSocketClient client, String message) {
+        long receivedNanos = System.nanoTime();
+        try {
+            // Decide from the envelope whether the frame is worth a full parse. The sequence
+            // number still has to be tracked for frames that are skipped.
+            boolean wanted = true;
+            GatewayFrames.Header header = GatewayFrames.peek(message);
+            if (header != null && header.op == 0 && header.type != null) {
+                if (header.sequence >= 0) {
+                    sequence = header.sequence;
+                }
+                wanted = filter.accept(header.type);
+                if (!wanted && !isSessionEvent(header.type) && !filter.isObserved(header.type)) {
+                    listener.onSkippedEvent(header.type, message);
+                    return;
+                }
+            }
+
+            JSONObject json = new JSONObject(message);
+            int opCode = json.optInt("op", -1);
+
+            switch (opCode) {
+                case 0: // DISPATCH
+                    if (!json.isNull("s")) {
+                        sequence = json.optInt("s", sequence);
+                    }
+                    String eventType = json.optString("t");
+                    JSONObject data = json.optJSONObject("d");
+                    if ("READY".equals(eventType) && data != null) {
+                        sessionId = data.optString("session_id", null);
+                        resumeGatewayUrl = trimTrailingSlash(data.optString("resume_gateway_url", null));
+                        state = STATE_READY;
+                        resetBackoff();
+                    } else if ("RESUMED".equals(eventType)) {
+                        state = STATE_READY;
+                        resetBackoff();
+                        listener.onStatus("Session resumed");
+                    }
+
+                    if (header == null || header.type == null) {
+                        wanted = filter.accept(eventType);
+                    }
+                    if (data != null) {
+                        listener.onStateEvent(eventType, data);
+                    }
+                    if (wanted && data != null) {
+                        filter.countDispatched(eventType);
+                        listener.onDispatch(eventType, data, receivedNanos);
+                    }
+                    break;
+
+                case 1: // HEARTBEAT requested by Discord
+                    heartbeat.sendNow();
+                    break;
+
+                case 7: // RECONNECT
+                    listener.onStatus("Discord requested a reconnect");
+                    client.close(CLOSE_RESUMABLE, "Reconnect requested");
+                    break;
+
+                case 9: // INVALID_SESSION
+                    boolean resumable = json.optBoolean("d", false);
+                    if (!resumable) {
+                        clearSession();
+                    }
+                    listener.onStatus("Invalid session" + (resumable ? ", resuming" : ", identifying again"));
+                    // Discord asks clients to wait 1-5 seconds before identifying again.
+                    final long delay = 1000 + random.nextInt(4000);
+                    heartbeat.stop();
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            client.close(CLOSE_RESUMABLE, "Invalid session");
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                    break;
+
+                case 10: // HELLO
+                    int heartbeatInterval = json.getJSONObject("d").optInt("heartbeat_interval");
+                    heartbeat.start(heartbeatInterval);
+                    if (canResume()) {
+                        state = STATE_RESUMING;
+                        sendResume(client);
+                    } else {
+                        identifyWhenAllowed(client);
+                    }
+                    break;
+
+                case 11: // HEARTBEAT_ACK
+                    heartbeat.onAck();
+                    break;
+
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            listener.onError("PARSE_ERROR", e.getMessage());
+        }
+    }
+
+    private void handleClose(WebSocketClient client, int code, String reason) {
+        if (client != webSocketClient) {
+            return;
+        }
+        heartbeat.stop();
+        listener.onStatus("Connection closed: " + reason);
+        if (stopped) {
+            return;
+        }
+
+        switch (code) {
+            case 4004: // Authentication failed
+            case 4010: // Invalid shard
+            case 4011: // Sharding required
+            case 4012: // Invalid API version
+            case 4013: // Invalid intents
+            case 4014: // Disallowed intents
+                stopped = true;
+                state = STATE_FAILED;
+                listener.onError("GATEWAY", "Connection closed by Discord with code " + code + ": " + reason);
+                return;
+            case 4007: // Invalid seq
+            case 4009: // Session timed out
+                clearSession();
+                break;
+            default:
+                break;
+        }
+        scheduleReconnect();
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (stopped || reconnectScheduled) {
+            return;
+        }
+        reconnectScheduled = true;
+        state = STATE_RECONNECTING;
+
+        long ceiling = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(reconnectAttempts, 16));
+        // Equal jitter: wait between half and the whole backoff so clients don't reconnect in lockstep.
+        long delay = ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+        reconnectAttempts++;
+
+        listener.onStatus("Attempting to reconnect in " + delay + " ms...");
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (GatewayConnection.this) {
+                    reconnectScheduled = false;
+                }
+                if (!stopped) {
+                    open();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void resetBackoff() {
+        reconnectAttempts = 0;
+    }
+
+    private void clearSession() {
+        sessionId = null;
+        resumeGatewayUrl = null;
+        sequence = -1;
+    }
+
+    /**
+     * Sends op 1 with the last sequence number received, or null before the first dispatch.
+     */
+    private void sendHeartbeat(WebSocketClient client) {
+        try {
+            JSONObject heartbeat = new JSONObject();
+            heartbeat.put("op", 1);
+            heartbeat.put("d", sequence >= 0 ? (Object) sequence : JSONObject.NULL);
+            client.send(heartbeat.toString());
+        } catch (Exception e) {
+            listener.onError("HEARTBEAT", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends IDENTIFY once the identify limiter gives this shard a slot.
+     */
+    private void identifyWhenAllowed(final WebSocketClient client) {
+        long wait = identifyLimiter != null ? identifyLimiter.reserve(shardId) : 0;
+        if (wait <= 0) {
+            sendIdentify(client);
+            return;
+        }
+        state = STATE_WAITING_TO_IDENTIFY;
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (client == webSocketClient && client.isOpen() && !stopped) {
+                    sendIdentify(client);
+                }
+            }
+        }, wait, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the IDENTIFY payload to authenticate with the Discord Gateway.
+     */
+    private void sendIdentify(WebSocketClient client) {
+        try {
+            JSONObject identify = new JSONObject();
+            identify.put("op", 2);
+            JSONObject data = new JSONObject();
+            data.put("token", token);
+            data.put("intents", intents);
+            if (shardCount > 1) {
+                JSONArray shard = new JSONArray();
+                shard.put(shardId);
+                shard.put(shardCount);
+                data.put("shard", shard);
+            }
+            JSONObject properties = new JSONObject();
+            properties.put("os", "android");
+            properties.put("browser", "appinventor");
+            properties.put("device", "appinventor");
+            data.put("properties", properties);
+            identify.put("d", data);
+
+            state = STATE_IDENTIFYING;
+            client.send(identify.toString());
+        } catch (Exception e) {
+            listener.onError("IDENTIFY", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends RESUME (op 6) so Discord replays the events sent since the last sequence we saw.
+     */
+    private void sendResume(WebSocketClient client) {
+        try {
+            JSONObject resume = new JSONObject();
+            resume.put("op", 6);
+            JSONObject data = new JSONObject();
+            data.put("token", token);
+            data.put("session_id", sessionId);
+            data.put("seq", sequence);
+            resume.put("d", data);
+
+            client.send(resume.toString());
+        } catch (Exception e) {
+            listener.onError("RESUME", e.getMessage());
+        }
+    }
+
+    /** Events the connection needs for its own session state even when the app filters them out. */
+    private static boolean isSessionEvent(String eventType) {
+        return "READY".equals(eventType) || "RESUMED".equals(eventType);
+    }
+
+    private static String trimTrailingSlash(String url) {
+        if (url == null) {
+            return null;
+        }
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
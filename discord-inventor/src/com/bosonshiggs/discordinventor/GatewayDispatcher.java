@@ -0,0 +1,294 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import android.os.Handler;
+
+/**
+ * Hands Gateway events from the socket thread to the UI thread.
+ *
+ * Events wait in a bounded queue. Whenever the queue goes from empty to non-empty a drain task is
+ * posted to the UI handler; each run delivers at most {@code maxEventsPerFrame} events and re-posts
+ * itself while events remain, so the UI thread keeps drawing frames between batches while the
+ * queue is emptied as fast as the UI can take it.
+ */
+public class GatewayDispatcher<T> {
+
+    public enum OverflowPolicy {
+        /** Drop the oldest queued event to make room. */
+        DROP_OLDEST,
+        /** Drop the oldest queued event of a droppable type, then fall back to the oldest event. */
+        DROP_BY_TYPE,
+        /**
+         * Make the socket thread wait until the UI thread frees a slot, for at most
+         * {@link #MAX_BLOCK_MILLIS}. After a wait runs out, new events are dropped without waiting
+         * until a slot frees, so the socket keeps reading heartbeat ACKs and the connection is not
+         * taken for dead.
+         */
+        BLOCK
+    }
+
+    public interface Listener<T> {
+        void onEvent(String type, T payload);
+    }
+
+    private static final class Entry<T> {
+        final String type;
+        final T payload;
+        final long receivedNanos;
+
+        Entry(String type, T payload, long receivedNanos) {
+            this.type = type;
+            this.payload = payload;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    static final long MAX_BLOCK_MILLIS = 1000;
+
+    private final Handler uiHandler;
+    private final Listener<T> listener;
+    private final ArrayDeque<Entry<T>> queue = new ArrayDeque<>();
+
+    private int capacity = 1000;
+    private int maxEventsPerFrame = 50;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private Set<String> droppableTypes = Collections.emptySet();
+    private boolean drainScheduled;
+    private int clearGeneration;
+    /** Set when a BLOCK wait ran out; cleared once the UI thread frees a slot. */
+    private boolean blockExpired;
+
+    // Metrics, guarded by this.
+    private long enqueued;
+    private long dispatched;
+    private long dropped;
+    private int maxDepth;
+    private long lastLagNanos;
+    private long maxLagNanos;
+    private long totalLagNanos;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public GatewayDispatcher(Handler uiHandler, Listener<T> listener) {
+        this.uiHandler = uiHandler;
+        this.listener = listener;
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        notifyAll();
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void setMaxEventsPerFrame(int maxEventsPerFrame) {
+        this.maxEventsPerFrame = Math.max(1, maxEventsPerFrame);
+    }
+
+    public synchronized int getMaxEventsPerFrame() {
+        return maxEventsPerFrame;
+    }
+
+    public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        notifyAll();
+    }
+
+    public synchronized OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets the event types that DROP_BY_TYPE may discard when the queue is full.
+     */
+    public synchronized void setDroppableTypes(Set<String> types) {
+        this.droppableTypes = new HashSet<>(types);
+    }
+
+    /**
+     * Queues an event. Called from the socket thread.
+     *
+     * @param receivedNanos {@link System#nanoTime()} when the frame arrived, used for the lag metric
+     * @return false if the event itself was dropped
+     */
+    public synchronized boolean offer(String type, T payload, long receivedNanos) {
+        int generation = clearGeneration;
+        long deadline = 0;
+        while (queue.size() >= capacity) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (blockExpired) {
+                        dropped++;
+                        return false;
+                    }
+                    if (deadline == 0) {
+                        deadline = System.nanoTime() + MAX_BLOCK_MILLIS * 1000000L;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        blockExpired = true;
+                        dropped++;
+                        return false;
+                    }
+                    try {
+                        wait(Math.max(1, remaining / 1000000L));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped++;
+                        return false;
+                    }
+                    if (generation != clearGeneration) {
+                        dropped++;
+                        return false;
+                    }
+                    break;
+                case DROP_BY_TYPE:
+                    if (removeOldestDroppable()) {
+                        break;
+                    }
+                    if (droppableTypes.contains(type)) {
+                        dropped++;
+                        return false;
+                    }
+                    queue.pollFirst();
+                    dropped++;
+                    break;
+                default:
+                    queue.pollFirst();
+                    dropped++;
+                    break;
+            }
+        }
+
+        queue.addLast(new Entry<>(type, payload, receivedNanos));
+        enqueued++;
+        maxDepth = Math.max(maxDepth, queue.size());
+        if (!drainScheduled) {
+            drainScheduled = true;
+            uiHandler.post(drainTask);
+        }
+        return true;
+    }
+
+    private boolean removeOldestDroppable() {
+        Iterator<Entry<T>> it = queue.iterator();
+        while (it.hasNext()) {
+            if (droppableTypes.contains(it.next().type)) {
+                it.remove();
+                dropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delivers one frame's worth of events on the UI thread.
+     */
+    private void drain() {
+        List<Entry<T>> batch;
+        int count;
+        synchronized (this) {
+            count = Math.min(queue.size(), maxEventsPerFrame);
+            if (count == 0) {
+                drainScheduled = false;
+                return;
+            }
+            batch = new ArrayList<>(count);
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Entry<T> entry = queue.pollFirst();
+                batch.add(entry);
+                long lag = now - entry.receivedNanos;
+                lastLagNanos = lag;
+                maxLagNanos = Math.max(maxLagNanos, lag);
+                totalLagNanos += lag;
+            }
+            dispatched += count;
+            blockExpired = false;
+            notifyAll();
+        }
+
+        try {
+            for (int i = 0; i < count; i++) {
+                Entry<T> entry = batch.get(i);
+                listener.onEvent(entry.type, entry.payload);
+            }
+        } finally {
+            // Even when a handler throws, so later events are still delivered.
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    drainScheduled = false;
+                } else {
+                    uiHandler.post(drainTask);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards queued events and releases a socket thread blocked in {@link #offer}.
+     */
+    public synchronized void clear() {
+        dropped += queue.size();
+        queue.clear();
+        clearGeneration++;
+        blockExpired = false;
+        notifyAll();
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized Metrics getMetrics() {
+        Metrics metrics = new Metrics();
+        metrics.queueDepth = queue.size();
+        metrics.maxQueueDepth = maxDepth;
+        metrics.enqueued = enqueued;
+        metrics.dispatched = dispatched;
+        metrics.dropped = dropped;
+        metrics.lastLagMs = lastLagNanos / 1e6;
+        metrics.maxLagMs = maxLagNanos / 1e6;
+        metrics.averageLagMs = dispatched == 0 ? 0 : totalLagNanos / 1e6 / dispatched;
+        return metrics;
+    }
+
+    public synchronized void resetMetrics() {
+        enqueued = 0;
+        dispatched = 0;
+        dropped = 0;
+        maxDepth = queue.size();
+        lastLagNanos = 0;
+        maxLagNanos = 0;
+        totalLagNanos = 0;
+    }
+
+    /**
+     * A snapshot of the dispatcher counters. Lag is measured from frame arrival to delivery.
+     */
+    public static final class Metrics {
+        public int queueDepth;
+        public int maxQueueDepth;
+        public long enqueued;
+        public long dispatched;
+        public long dropped;
+        public double lastLagMs;
+        public double maxLagMs;
+        public double averageLagMs;
+    }
+}
@@ -0,0 +1,67 @@
+package com.bosonshiggs.discordinventor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A Gateway event handed to the app as a handle on the already-parsed payload.
+ *
+ * Nothing is copied or serialized when the event is dispatched. Fields are read from the parsed
+ * tree when a block asks for them, and the JSON text is only produced if the app wants it, once.
+ */
+public class GatewayEvent {
+    private final String type;
+    private final JSONObject data;
+    private String rawJson;
+
+    public GatewayEvent(String type, JSONObject data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public JSONObject getData() {
+        return data;
+    }
+
+    /**
+     * The payload as JSON text, serialized on first use.
+     */
+    public synchronized String getRawJson() {
+        if (rawJson == null) {
+            rawJson = data.toString();
+        }
+        return rawJson;
+    }
+
+    /**
+     * Reads a value by path, e.g. "author.id" or "embeds.0.title"; numeric segments index arrays.
+     *
+     * @return a String, Number, Boolean, JSONObject or JSONArray, or null if the path does not exist
+     *         or ends at a JSON null
+     */
+    public Object getField(String path) {
+        Object current = data;
+        for (String segment : path.split("\\.")) {
+            if (current instanceof JSONObject) {
+                current = ((JSONObject) current).opt(segment);
+            } else if (current instanceof JSONArray && DiscordRoute.isSnowflake(segment) && segment.length() < 10) {
+                current = ((JSONArray) current).opt(Integer.parseInt(segment));
+            } else {
+                return null;
+            }
+            if (current == null || current == JSONObject.NULL) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return getRawJson();
+    }
+}
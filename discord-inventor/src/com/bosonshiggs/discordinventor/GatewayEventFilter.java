@@ -0,0 +1,106 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which Gateway events are worth parsing, and counts what happened to every event type.
+ *
+ * The decision is made from the event name alone (see {@link GatewayFrames#peek}), before the
+ * frame is parsed. When the allow list is non-empty only those events pass; events on the deny
+ * list never pass.
+ *
+ * Observed events are parsed even when they don't pass, because the extension keeps its own state
+ * from them (see {@link EntityCache}); they are still not delivered to the app.
+ */
+public class GatewayEventFilter {
+
+    public static final class Counters {
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong dispatched = new AtomicLong();
+
+        public long getReceived() {
+            return received.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        public long getDispatched() {
+            return dispatched.get();
+        }
+    }
+
+    private volatile Set<String> allowed = Collections.emptySet();
+    private volatile Set<String> denied = Collections.emptySet();
+    private volatile Set<String> observed = Collections.emptySet();
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public void setAllowed(Set<String> types) {
+        allowed = Collections.unmodifiableSet(new HashSet<>(types));
+    }
+
+    public void setDenied(Set<String> types) {
+        denied = Collections.unmodifiableSet(new HashSet<>(types));
+    }
+
+    public void setObserved(Set<String> types) {
+        observed = Collections.unmodifiableSet(new HashSet<>(types));
+    }
+
+    /**
+     * Whether an event must be parsed for internal state even if {@link #accept} rejected it.
+     */
+    public boolean isObserved(String type) {
+        return observed.contains(type);
+    }
+
+    /**
+     * Counts a received event and tells whether it should be parsed and dispatched.
+     */
+    public boolean accept(String type) {
+        Counters counter = countersFor(type);
+        counter.received.incrementAndGet();
+        Set<String> allow = allowed;
+        boolean accepted = (allow.isEmpty() || allow.contains(type)) && !denied.contains(type);
+        if (!accepted) {
+            counter.skipped.incrementAndGet();
+        }
+        return accepted;
+    }
+
+    public void countDispatched(String type) {
+        countersFor(type).dispatched.incrementAndGet();
+    }
+
+    private Counters countersFor(String type) {
+        String key = type != null ? type : "";
+        Counters counter = counters.get(key);
+        if (counter == null) {
+            Counters created = new Counters();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Counters per event type, sorted by name.
+     */
+    public Map<String, Counters> getCounters() {
+        return new TreeMap<>(counters);
+    }
+
+    public void resetCounters() {
+        counters.clear();
+    }
+}
@@ -0,0 +1,200 @@
+package com.bosonshiggs.discordinventor;
+
+/**
+ * Reads the envelope fields of a Gateway payload ("op", "s" and "t") without parsing it.
+ *
+ * The scan only looks at keys of the outer object and steps over nested values character by
+ * character, so deciding whether a frame is worth a full JSON parse allocates only the small
+ * {@link Header} and the event name, never the payload. Discord puts the envelope fields before
+ * "d", so the scan usually stops before reaching the payload at all.
+ *
+ * {@link #peekData} reads single fields of the payload the same way, for frames that are dropped
+ * unparsed but still carry an ID worth acting on.
+ */
+public final class GatewayFrames {
+
+    private GatewayFrames() {
+    }
+
+    public static final class Header {
+        /** Opcode, or -1 if the frame has none. */
+        public int op = -1;
+        /** Sequence number, or -1 if absent or null. */
+        public int sequence = -1;
+        /** Event name for DISPATCH frames, otherwise null. */
+        public String type;
+    }
+
+    /**
+     * Scans the outer object of a frame.
+     *
+     * @return the header, or null if the text is not a JSON object
+     */
+    public static Header peek(String frame) {
+        int length = frame.length();
+        int i = skipWhitespace(frame, 0);
+        if (i >= length || frame.charAt(i) != '{') {
+            return null;
+        }
+
+        Header header = new Header();
+        boolean seenOp = false;
+        boolean seenSequence = false;
+        boolean seenType = false;
+        int depth = 0;
+
+        while (i < length) {
+            char c = frame.charAt(i);
+            if (c == '"') {
+                int end = skipString(frame, i);
+                if (end < 0) {
+                    return null;
+                }
+                int next = skipWhitespace(frame, end);
+                if (depth == 1 && next < length && frame.charAt(next) == ':') {
+                    int valueStart = skipWhitespace(frame, next + 1);
+                    if (isKey(frame, i, end, 't')) {
+                        header.type = readString(frame, valueStart);
+                        seenType = true;
+                    } else if (isKey(frame, i, end, 's')) {
+                        header.sequence = readInt(frame, valueStart);
+                        seenSequence = true;
+                    } else if (end - i == 4 && frame.charAt(i + 1) == 'o' && frame.charAt(i + 2) == 'p') {
+                        header.op = readInt(frame, valueStart);
+                        seenOp = true;
+                    }
+                    if (seenOp && seenSequence && seenType) {
+                        return header;
+                    }
+                    i = valueStart;
+                } else {
+                    i = end;
+                }
+            } else {
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        break;
+                    }
+                }
+                i++;
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Reads a string field of the payload object "d" without parsing it. Only fields directly in
+     * "d" count; nested objects such as "author" are stepped over.
+     *
+     * @return the value, or null if the field is missing or not a string
+     */
+    public static String peekData(String frame, String key) {
+        int length = frame.length();
+        int i = skipWhitespace(frame, 0);
+        if (i >= length || frame.charAt(i) != '{') {
+            return null;
+        }
+
+        boolean inData = false;
+        int depth = 0;
+        while (i < length) {
+            char c = frame.charAt(i);
+            if (c == '"') {
+                int end = skipString(frame, i);
+                if (end < 0) {
+                    return null;
+                }
+                int next = skipWhitespace(frame, end);
+                if (next < length && frame.charAt(next) == ':') {
+                    int valueStart = skipWhitespace(frame, next + 1);
+                    if (depth == 1 && isKey(frame, i, end, 'd')) {
+                        inData = valueStart < length && frame.charAt(valueStart) == '{';
+                    } else if (depth == 2 && inData && end - i - 2 == key.length()
+                            && frame.regionMatches(i + 1, key, 0, key.length())) {
+                        return readString(frame, valueStart);
+                    }
+                    i = valueStart;
+                } else {
+                    i = end;
+                }
+            } else {
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth <= 1 && inData) {
+                        return null;
+                    }
+                    if (depth == 0) {
+                        break;
+                    }
+                }
+                i++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isKey(String frame, int quote, int end, char name) {
+        return end - quote == 3 && frame.charAt(quote + 1) == name;
+    }
+
+    private static int skipWhitespace(String frame, int i) {
+        int length = frame.length();
+        while (i < length) {
+            char c = frame.charAt(i);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index just past the closing quote of the string starting at {@code quote}
+     */
+    private static int skipString(String frame, int quote) {
+        int length = frame.length();
+        for (int i = quote + 1; i < length; i++) {
+            char c = frame.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static String readString(String frame, int start) {
+        if (start >= frame.length() || frame.charAt(start) != '"') {
+            return null;
+        }
+        int end = skipString(frame, start);
+        if (end < 0) {
+            return null;
+        }
+        String value = frame.substring(start + 1, end - 1);
+        // Event names never contain escapes; fall back to the full parser if one does.
+        return value.indexOf('\\') >= 0 ? null : value;
+    }
+
+    private static int readInt(String frame, int start) {
+        int length = frame.length();
+        int value = 0;
+        int i = start;
+        while (i < length) {
+            char c = frame.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            i++;
+        }
+        return i == start ? -1 : value;
+    }
+}
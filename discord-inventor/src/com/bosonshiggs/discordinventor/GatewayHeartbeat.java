@@ -0,0 +1,103 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeats for one Gateway connection.
+ *
+ * The first beat waits heartbeat_interval * jitter as Discord specifies, later beats run at a
+ * fixed rate on the shared Gateway scheduler so they don't drift. Every beat must be answered by
+ * HEARTBEAT_ACK (op 11) before the next one is due; if it isn't, the connection is considered a
+ * zombie and the listener is told to drop it.
+ */
+public class GatewayHeartbeat {
+
+    public interface Listener {
+        /** Sends op 1 with the last sequence number. */
+        void sendHeartbeat();
+
+        /** No ACK arrived for the previous beat: the connection is dead and should be resumed. */
+        void onAckMissed();
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Listener listener;
+    private final Random random = new Random();
+
+    private ScheduledFuture<?> future;
+    private volatile boolean ackReceived = true;
+    private volatile long lastSentNanos;
+    private volatile long latencyMs = -1;
+    private volatile int intervalMs;
+
+    public GatewayHeartbeat(ScheduledExecutorService scheduler, Listener listener) {
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts beating after HELLO (op 10).
+     */
+    public synchronized void start(int heartbeatIntervalMs) {
+        stop();
+        intervalMs = heartbeatIntervalMs;
+        ackReceived = true;
+        long initialDelay = (long) (heartbeatIntervalMs * random.nextDouble());
+        future = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                beat();
+            }
+        }, initialDelay, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    private void beat() {
+        if (!ackReceived) {
+            stop();
+            listener.onAckMissed();
+            return;
+        }
+        sendNow();
+    }
+
+    /**
+     * Sends a beat right away, e.g. when Discord asks for one with op 1.
+     */
+    public void sendNow() {
+        ackReceived = false;
+        lastSentNanos = System.nanoTime();
+        listener.sendHeartbeat();
+    }
+
+    /**
+     * Records HEARTBEAT_ACK (op 11) and the round trip of the beat it answers.
+     */
+    public void onAck() {
+        long sent = lastSentNanos;
+        if (sent != 0) {
+            latencyMs = (System.nanoTime() - sent) / 1000000L;
+        }
+        ackReceived = true;
+    }
+
+    /**
+     * Round trip of the last acknowledged heartbeat in milliseconds, or -1 before the first ACK.
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public int getIntervalMs() {
+        return intervalMs;
+    }
+}
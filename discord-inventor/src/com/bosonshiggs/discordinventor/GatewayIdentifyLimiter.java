@@ -0,0 +1,38 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Arrays;
+
+/**
+ * Spaces out IDENTIFY calls across shards.
+ *
+ * Discord allows one IDENTIFY per rate limit bucket every 5 seconds, with max_concurrency buckets
+ * running in parallel. A shard belongs to bucket shard_id % max_concurrency. RESUME does not count
+ * against this limit.
+ */
+public class GatewayIdentifyLimiter {
+    static final long IDENTIFY_INTERVAL_MS = 5000;
+
+    private final long[] nextAllowed;
+
+    public GatewayIdentifyLimiter(int maxConcurrency) {
+        nextAllowed = new long[Math.max(1, maxConcurrency)];
+        Arrays.fill(nextAllowed, Long.MIN_VALUE);
+    }
+
+    public int getMaxConcurrency() {
+        return nextAllowed.length;
+    }
+
+    /**
+     * Reserves the next IDENTIFY slot for a shard.
+     *
+     * @return how many milliseconds to wait before sending IDENTIFY
+     */
+    public synchronized long reserve(int shardId) {
+        long now = System.nanoTime() / 1000000L;
+        int bucket = shardId % nextAllowed.length;
+        long start = Math.max(now, nextAllowed[bucket]);
+        nextAllowed[bucket] = start + IDENTIFY_INTERVAL_MS;
+        return start - now;
+    }
+}
@@ -0,0 +1,82 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Gateway intent names and their bits. Discord only sends the events covered by the intents a
+ * connection identifies with, so leaving out an intent removes that traffic at the source.
+ */
+public final class GatewayIntents {
+
+    /** The mask the extension used to hard-code: every intent up to AUTO_MODERATION_EXECUTION. */
+    public static final int LEGACY_ALL = 3276799;
+
+    private static final Map<String, Integer> BITS = new LinkedHashMap<>();
+
+    static {
+        BITS.put("GUILDS", 1);
+        BITS.put("GUILD_MEMBERS", 1 << 1);
+        BITS.put("GUILD_MODERATION", 1 << 2);
+        BITS.put("GUILD_BANS", 1 << 2);
+        BITS.put("GUILD_EXPRESSIONS", 1 << 3);
+        BITS.put("GUILD_EMOJIS_AND_STICKERS", 1 << 3);
+        BITS.put("GUILD_INTEGRATIONS", 1 << 4);
+        BITS.put("GUILD_WEBHOOKS", 1 << 5);
+        BITS.put("GUILD_INVITES", 1 << 6);
+        BITS.put("GUILD_VOICE_STATES", 1 << 7);
+        BITS.put("GUILD_PRESENCES", 1 << 8);
+        BITS.put("GUILD_MESSAGES", 1 << 9);
+        BITS.put("GUILD_MESSAGE_REACTIONS", 1 << 10);
+        BITS.put("GUILD_MESSAGE_TYPING", 1 << 11);
+        BITS.put("DIRECT_MESSAGES", 1 << 12);
+        BITS.put("DIRECT_MESSAGE_REACTIONS", 1 << 13);
+        BITS.put("DIRECT_MESSAGE_TYPING", 1 << 14);
+        BITS.put("MESSAGE_CONTENT", 1 << 15);
+        BITS.put("GUILD_SCHEDULED_EVENTS", 1 << 16);
+        BITS.put("AUTO_MODERATION_CONFIGURATION", 1 << 20);
+        BITS.put("AUTO_MODERATION_EXECUTION", 1 << 21);
+        BITS.put("GUILD_MESSAGE_POLLS", 1 << 24);
+        BITS.put("DIRECT_MESSAGE_POLLS", 1 << 25);
+    }
+
+    private GatewayIntents() {
+    }
+
+    /**
+     * Computes the bitmask for intent names.
+     *
+     * Each entry may be an intent name (case-insensitive), "ALL" for the legacy mask, or a number.
+     *
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static int fromNames(Iterable<?> names) {
+        int mask = 0;
+        for (Object entry : names) {
+            String name = entry.toString().trim().toUpperCase(Locale.ROOT);
+            if (name.isEmpty()) {
+                continue;
+            }
+            Integer bit = BITS.get(name);
+            if (bit != null) {
+                mask |= bit;
+            } else if ("ALL".equals(name)) {
+                mask |= LEGACY_ALL;
+            } else if (DiscordRoute.isSnowflake(name)) {
+                mask |= Integer.parseInt(name);
+            } else {
+                throw new IllegalArgumentException("Unknown intent: " + entry);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Parses a comma-separated list of intent names.
+     */
+    public static int fromString(String names) {
+        return fromNames(Arrays.asList(names.split(",")));
+    }
+}
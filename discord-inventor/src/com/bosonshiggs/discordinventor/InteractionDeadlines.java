@@ -0,0 +1,225 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+/**
+ * Keeps track of interactions received through the Gateway until the app answers them, and
+ * defers the ones it has not answered in time.
+ *
+ * Discord drops an interaction that gets no callback within 3 seconds of its creation, and the
+ * user sees "This interaction failed". With {@link #setAutoDeferMillis} above 0, an interaction
+ * still unanswered that long after it was created is deferred (callback type 5, "thinking..."),
+ * and the app's answer is then sent as an edit of the original response. The app and the timer
+ * race for each interaction with a compare-and-set, so exactly one of them sends the callback.
+ */
+final class InteractionDeadlines {
+
+    /** How long Discord waits for the first callback. */
+    static final long RESPONSE_WINDOW_MS = 3000;
+    static final long DEFAULT_AUTO_DEFER_MS = 2500;
+
+    /** Interaction tokens stay valid this long, so a deferred interaction can still be edited. */
+    private static final long TOKEN_LIFETIME_MS = 15 * 60 * 1000L;
+    /**
+     * Longest Gateway delay taken at face value. An interaction that looks older than this when it
+     * arrives is assumed to be off by the device clock, not late.
+     */
+    private static final long MAX_DELIVERY_DELAY_MS = 1000;
+
+    /** Gateway events to observe so interactions are tracked even when the app doesn't receive them. */
+    static final Set<String> EVENT_TYPES = Collections.singleton("INTERACTION_CREATE");
+
+    private static final int PENDING = 0;
+    private static final int ANSWERED = 1;
+    private static final int DEFERRED = 2;
+
+    /** An interaction whose first callback the app has not claimed yet. */
+    static final class Interaction {
+        final String id;
+        final String token;
+        final String applicationId;
+        /** Wall-clock milliseconds by which the first callback must reach Discord. */
+        final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // Guarded by this; edits wait here until the automatic defer is answered.
+        private boolean deferSettled;
+        private String deferError;
+        private final List<Runnable> afterDefer = new ArrayList<>();
+
+        Interaction(String id, String token, String applicationId, long deadline) {
+            this.id = id;
+            this.token = token;
+            this.applicationId = applicationId;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final Map<String, Interaction> interactions = new ConcurrentHashMap<>();
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "DiscordAutoDefer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /** Off until a DiscordInteractions component sets it, so apps that never answer interactions are left alone. */
+    private static volatile long autoDeferMillis;
+
+    private InteractionDeadlines() {
+    }
+
+    static void setAutoDeferMillis(long millis) {
+        autoDeferMillis = Math.max(0, millis);
+    }
+
+    static long getAutoDeferMillis() {
+        return autoDeferMillis;
+    }
+
+    /**
+     * Starts tracking an INTERACTION_CREATE payload. The automatic defer is sent through the given
+     * helper. Called on the Gateway socket thread.
+     */
+    static void track(JSONObject data, final DiscordRequestHelper sender) {
+        long delay = autoDeferMillis;
+        String id = data.optString("id");
+        String token = data.optString("token");
+        if (delay <= 0 || !DiscordRoute.isSnowflake(id) || token.isEmpty()) {
+            return;
+        }
+        final Interaction interaction = new Interaction(id, token, data.optString("application_id"),
+            deadlineOf(id, System.currentTimeMillis()));
+        interactions.put(id, interaction);
+        long created = interaction.deadline - RESPONSE_WINDOW_MS;
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                autoDefer(interaction, sender);
+            }
+        }, Math.max(0, created + delay - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The deadline of an interaction's first callback, from the creation time in its ID. The time
+     * is clamped to what the device clock makes plausible, so a clock that is off neither makes
+     * every interaction look late nor pushes the deadline into the future.
+     */
+    static long deadlineOf(String interactionId, long now) {
+        Interaction tracked = interactions.get(interactionId);
+        if (tracked != null) {
+            return tracked.deadline;
+        }
+        if (!DiscordRoute.isSnowflake(interactionId)) {
+            return 0;
+        }
+        long created = MessagePurge.timestampOf(Long.parseLong(interactionId));
+        created = Math.min(now, Math.max(now - MAX_DELIVERY_DELAY_MS, created));
+        return created + RESPONSE_WINDOW_MS;
+    }
+
+    /**
+     * Claims the first callback of an interaction for the app. Returns null when the app should
+     * send its callback as usual, or the interaction when it was already deferred automatically.
+     */
+    static Interaction claim(String interactionId) {
+        Interaction interaction = interactions.get(interactionId);
+        if (interaction == null) {
+            return null;
+        }
+        if (interaction.state.compareAndSet(PENDING, ANSWERED)) {
+            interactions.remove(interactionId);
+            return null;
+        }
+        return interaction.state.get() == DEFERRED ? interaction : null;
+    }
+
+    /**
+     * Replaces the "thinking..." response of an automatically deferred interaction with the given
+     * message. Waits for the defer to be answered first; if it failed, so does the edit.
+     */
+    static void editOriginal(final Interaction interaction, final DiscordRequestHelper helper, final String tag,
+                             final JSONObject message, final DiscordRequestHelper.ResultCallback callback) {
+        Runnable edit = new Runnable() {
+            @Override
+            public void run() {
+                String error;
+                synchronized (interaction) {
+                    error = interaction.deferError;
+                }
+                if (error != null) {
+                    callback.onError(tag, "Automatic defer failed: " + error);
+                    return;
+                }
+                helper.sendInteractionResponse(
+                    "/webhooks/" + interaction.applicationId + "/" + interaction.token + "/messages/@original",
+                    "PATCH", tag, message.toString(), 0, callback);
+            }
+        };
+        synchronized (interaction) {
+            if (!interaction.deferSettled) {
+                interaction.afterDefer.add(edit);
+                return;
+            }
+        }
+        edit.run();
+    }
+
+    private static void autoDefer(final Interaction interaction, DiscordRequestHelper sender) {
+        if (!interaction.state.compareAndSet(PENDING, DEFERRED)) {
+            return;
+        }
+        DiscordRequestHelper.countAutoDefer();
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                interactions.remove(interaction.id);
+            }
+        }, TOKEN_LIFETIME_MS, TimeUnit.MILLISECONDS);
+
+        sender.sendInteractionResponse(
+            "/interactions/" + interaction.id + "/" + interaction.token + "/callback",
+            "POST", "", "{\"type\":5}", interaction.deadline,
+            new DiscordRequestHelper.ResultCallback() {
+                @Override
+                public void onResult(String tag, DiscordResponse response) {
+                    settle(interaction, null);
+                }
+
+                @Override
+                public void onError(String tag, String error) {
+                    settle(interaction, error);
+                }
+            });
+    }
+
+    private static void settle(Interaction interaction, String error) {
+        List<Runnable> waiting;
+        synchronized (interaction) {
+            interaction.deferSettled = true;
+            interaction.deferError = error;
+            waiting = new ArrayList<>(interaction.afterDefer);
+            interaction.afterDefer.clear();
+        }
+        for (Runnable edit : waiting) {
+            edit.run();
+        }
+    }
+}
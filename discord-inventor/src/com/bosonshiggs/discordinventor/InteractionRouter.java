@@ -0,0 +1,207 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Matches the custom_id of button, select menu and modal interactions against routes the app
+ * registered, so they can be raised as typed events instead of raw JSON.
+ *
+ * A route is either an exact custom_id, looked up in a hash set, or a prefix such as "vote:",
+ * looked up in a character trie; an exact route wins, then the longest prefix. Routes change on
+ * the UI thread and are matched on the Gateway socket thread, so every change publishes a new
+ * immutable index and matching never takes a lock.
+ */
+final class InteractionRouter {
+
+    static final int KIND_BUTTON = 1;
+    static final int KIND_SELECT = 2;
+    static final int KIND_MODAL = 3;
+
+    private static final int INTERACTION_MESSAGE_COMPONENT = 3;
+    private static final int INTERACTION_MODAL_SUBMIT = 5;
+    private static final int COMPONENT_BUTTON = 2;
+
+    /** A routed interaction, with its fields already read from the payload. */
+    static final class Routed extends GatewayEvent {
+        final int kind;
+        final String interactionId;
+        final String interactionToken;
+        final String customId;
+        /** The exact custom_id or prefix that matched. */
+        final String route;
+        final String userId;
+        final String guildId;
+        final String channelId;
+        final String messageId;
+        /** Chosen values of a select menu. */
+        final List<String> values = new ArrayList<>();
+        /** Text input custom_id to value, for a modal. */
+        final Map<String, String> fields = new LinkedHashMap<>();
+
+        Routed(JSONObject data, int kind, String customId, String route) {
+            super("INTERACTION_CREATE", data);
+            this.kind = kind;
+            this.interactionId = data.optString("id");
+            this.interactionToken = data.optString("token");
+            this.customId = customId;
+            this.route = route;
+            JSONObject member = data.optJSONObject("member");
+            JSONObject user = member != null ? member.optJSONObject("user") : data.optJSONObject("user");
+            this.userId = user != null ? user.optString("id") : "";
+            this.guildId = data.optString("guild_id");
+            this.channelId = data.optString("channel_id");
+            JSONObject message = data.optJSONObject("message");
+            this.messageId = message != null ? message.optString("id") : "";
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        /** The prefix ending at this node, or null. */
+        String prefix;
+    }
+
+    private static final class Index {
+        final Set<String> exact;
+        final Node prefixes;
+
+        Index(Set<String> exact, Node prefixes) {
+            this.exact = exact;
+            this.prefixes = prefixes;
+        }
+    }
+
+    private final Set<String> exactRoutes = new HashSet<>();
+    private final Set<String> prefixRoutes = new HashSet<>();
+    private volatile Index index = new Index(Collections.<String>emptySet(), new Node());
+
+    void addExact(String customId) {
+        exactRoutes.add(customId);
+        publish();
+    }
+
+    void addPrefix(String prefix) {
+        prefixRoutes.add(prefix);
+        publish();
+    }
+
+    /** Removes an exact route and a prefix route with the given text. */
+    void remove(String route) {
+        exactRoutes.remove(route);
+        prefixRoutes.remove(route);
+        publish();
+    }
+
+    void clear() {
+        exactRoutes.clear();
+        prefixRoutes.clear();
+        publish();
+    }
+
+    private void publish() {
+        Node root = new Node();
+        for (String prefix : prefixRoutes) {
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                char c = prefix.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.prefix = prefix;
+        }
+        index = new Index(Collections.unmodifiableSet(new HashSet<>(exactRoutes)), root);
+    }
+
+    /**
+     * The route a custom_id matches, or null.
+     */
+    String match(String customId) {
+        Index current = index;
+        if (current.exact.contains(customId)) {
+            return customId;
+        }
+        Node node = current.prefixes;
+        String longest = node.prefix;
+        for (int i = 0; i < customId.length() && node != null; i++) {
+            node = node.children.get(customId.charAt(i));
+            if (node != null && node.prefix != null) {
+                longest = node.prefix;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Reads an INTERACTION_CREATE payload. Returns null for slash commands and the like, and for
+     * components and modals whose custom_id matches no route.
+     */
+    Routed route(JSONObject data) {
+        int type = data.optInt("type");
+        if (type != INTERACTION_MESSAGE_COMPONENT && type != INTERACTION_MODAL_SUBMIT) {
+            return null;
+        }
+        JSONObject payload = data.optJSONObject("data");
+        if (payload == null) {
+            return null;
+        }
+        String customId = payload.optString("custom_id");
+        String route = match(customId);
+        if (route == null) {
+            return null;
+        }
+
+        if (type == INTERACTION_MODAL_SUBMIT) {
+            Routed routed = new Routed(data, KIND_MODAL, customId, route);
+            collectInputs(payload.optJSONArray("components"), routed.fields);
+            return routed;
+        }
+        if (payload.optInt("component_type") == COMPONENT_BUTTON) {
+            return new Routed(data, KIND_BUTTON, customId, route);
+        }
+        Routed routed = new Routed(data, KIND_SELECT, customId, route);
+        JSONArray values = payload.optJSONArray("values");
+        if (values != null) {
+            for (int i = 0; i < values.length(); i++) {
+                routed.values.add(values.optString(i));
+            }
+        }
+        return routed;
+    }
+
+    /**
+     * Text inputs sit in action rows, or under "component" in label components.
+     */
+    private static void collectInputs(JSONArray components, Map<String, String> fields) {
+        if (components == null) {
+            return;
+        }
+        for (int i = 0; i < components.length(); i++) {
+            JSONObject component = components.optJSONObject(i);
+            if (component == null) {
+                continue;
+            }
+            if (component.has("value") && component.has("custom_id")) {
+                fields.put(component.optString("custom_id"), component.optString("value"));
+            }
+            collectInputs(component.optJSONArray("components"), fields);
+            JSONObject child = component.optJSONObject("component");
+            if (child != null) {
+                collectInputs(new JSONArray().put(child), fields);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.bosonshiggs.discordinventor;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+import com.google.appinventor.components.runtime.util.YailDictionary;
+import com.google.appinventor.components.runtime.util.YailList;
+
+/**
+ * Converts JSON text straight into YailDictionary and YailList values in one pass.
+ *
+ * The text is tokenized character by character and containers are built on an explicit stack, so
+ * deep payloads cost no recursion and no intermediate JSON tree. Objects become YailDictionary
+ * (keys in document order), arrays become YailList, integers become Long or BigInteger when they
+ * don't fit, other numbers Double, and JSON null an empty string, since blocks have no null.
+ */
+public final class JsonYailConverter {
+
+    /** Thrown for malformed JSON or input over the configured limits. */
+    public static final class JsonParseException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        JsonParseException(String message, int position) {
+            super(message + " at character " + position);
+        }
+    }
+
+    /** An object or array being filled. */
+    private static final class Frame {
+        final YailDictionary object;
+        final ArrayList<Object> array;
+        String key;
+
+        Frame(boolean isObject) {
+            object = isObject ? new YailDictionary() : null;
+            array = isObject ? null : new ArrayList<>();
+        }
+
+        Object close() {
+            return object != null ? object : YailList.makeList(array);
+        }
+    }
+
+    private final String text;
+    private final int length;
+    private final int maxDepth;
+    private final StringBuilder buffer = new StringBuilder();
+    private int pos;
+
+    private JsonYailConverter(String text, int maxDepth) {
+        this.text = text;
+        this.length = text.length();
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Parses a JSON document.
+     *
+     * @param maxDepth  deepest nesting of objects and arrays allowed, or 0 for no limit
+     * @param maxLength longest text accepted in characters, or 0 for no limit
+     * @return a YailDictionary, YailList, String, Number or Boolean
+     */
+    public static Object parse(String text, int maxDepth, int maxLength) throws JsonParseException {
+        if (maxLength > 0 && text.length() > maxLength) {
+            throw new JsonParseException("JSON text longer than " + maxLength + " characters", maxLength);
+        }
+        return new JsonYailConverter(text, maxDepth > 0 ? maxDepth : Integer.MAX_VALUE).parseDocument();
+    }
+
+    private Object parseDocument() throws JsonParseException {
+        ArrayList<Frame> stack = new ArrayList<>();
+        Object result = null;
+        boolean done = false;
+
+        skipWhitespace();
+        while (!done) {
+            Frame top = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+
+            if (top != null) {
+                skipWhitespace();
+                char c = peek();
+                boolean empty = top.object != null ? top.object.isEmpty() && top.key == null : top.array.isEmpty();
+                if (c == (top.object != null ? '}' : ']')) {
+                    if (top.object != null && top.key != null) {
+                        throw error("Expected a value");
+                    }
+                    pos++;
+                    stack.remove(stack.size() - 1);
+                    Object value = top.close();
+                    if (stack.isEmpty()) {
+                        result = value;
+                        done = true;
+                    } else {
+                        add(stack.get(stack.size() - 1), value);
+                    }
+                    continue;
+                }
+                if (!empty && top.key == null) {
+                    if (c != ',') {
+                        throw error("Expected ',' or '" + (top.object != null ? '}' : ']') + "'");
+                    }
+                    pos++;
+                    skipWhitespace();
+                }
+                if (top.object != null && top.key == null) {
+                    if (peek() != '"') {
+                        throw error("Expected a key");
+                    }
+                    pos++;
+                    top.key = readString();
+                    skipWhitespace();
+                    if (peek() != ':') {
+                        throw error("Expected ':'");
+                    }
+                    pos++;
+                    skipWhitespace();
+                }
+            }
+
+            char c = peek();
+            if (c == '{' || c == '[') {
+                pos++;
+                if (stack.size() >= maxDepth) {
+                    throw error("JSON nested deeper than " + maxDepth + " levels");
+                }
+                stack.add(new Frame(c == '{'));
+                continue;
+            }
+
+            Object value = readScalar();
+            if (top == null) {
+                result = value;
+                done = true;
+            } else {
+                add(top, value);
+            }
+        }
+
+        skipWhitespace();
+        if (pos < length) {
+            throw error("Unexpected text after the JSON value");
+        }
+        return result;
+    }
+
+    private static void add(Frame frame, Object value) {
+        if (frame.object != null) {
+            frame.object.put(frame.key, value);
+            frame.key = null;
+        } else {
+            frame.array.add(value);
+        }
+    }
+
+    private Object readScalar() throws JsonParseException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            return readString();
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            return readNumber();
+        }
+        if (text.startsWith("true", pos)) {
+            pos += 4;
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", pos)) {
+            pos += 5;
+            return Boolean.FALSE;
+        }
+        if (text.startsWith("null", pos)) {
+            pos += 4;
+            return "";
+        }
+        throw error("Unexpected character '" + c + "'");
+    }
+
+    /**
+     * Reads a string whose opening quote has been consumed.
+     */
+    private String readString() throws JsonParseException {
+        int start = pos;
+        // Fast path: no escapes, so the string is a plain substring.
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                return text.substring(start, pos++);
+            }
+            if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+
+        buffer.setLength(0);
+        buffer.append(text, start, pos);
+        while (pos < length) {
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return buffer.toString();
+            }
+            if (c != '\\') {
+                buffer.append(c);
+                continue;
+            }
+            if (pos >= length) {
+                break;
+            }
+            char escape = text.charAt(pos++);
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    buffer.append(escape);
+                    break;
+                case 'b':
+                    buffer.append('\b');
+                    break;
+                case 'f':
+                    buffer.append('\f');
+                    break;
+                case 'n':
+                    buffer.append('\n');
+                    break;
+                case 'r':
+                    buffer.append('\r');
+                    break;
+                case 't':
+                    buffer.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > length) {
+                        throw error("Truncated \\u escape");
+                    }
+                    try {
+                        buffer.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid \\u escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Invalid escape '\\" + escape + "'");
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Object readNumber() throws JsonParseException {
+        int start = pos;
+        boolean integer = true;
+        if (peek() == '-') {
+            pos++;
+        }
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                pos++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integer = false;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        String number = text.substring(start, pos);
+        try {
+            if (integer) {
+                // Up to 18 digits always fit in a long.
+                int digits = number.length() - (number.charAt(0) == '-' ? 1 : 0);
+                if (digits <= 18) {
+                    return Long.parseLong(number);
+                }
+                BigInteger big = new BigInteger(number);
+                return big.bitLength() < 64 ? (Object) big.longValue() : big;
+            }
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+
+    private char peek() throws JsonParseException {
+        if (pos >= length) {
+            throw error("Unexpected end of JSON");
+        }
+        return text.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private JsonParseException error(String message) {
+        return new JsonParseException(message, pos);
+    }
+}
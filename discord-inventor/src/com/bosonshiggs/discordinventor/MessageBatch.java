@@ -0,0 +1,156 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Sends a list of messages to any number of channels.
+ *
+ * Messages for the same channel are sent one after another, each only once the previous one has
+ * been answered, so they appear in the order given. Different channels are worked on side by side,
+ * a few at a time; {@link DiscordRequestHelper} paces every request by its channel's rate limit
+ * bucket and the global limit, so a busy channel does not hold up the others.
+ *
+ * Request callbacks arrive on the UI thread, which is the only thread touching the batch state.
+ */
+public class MessageBatch {
+
+    public interface Listener {
+        void onCompleted(int sent, int failed, List<Result> results);
+    }
+
+    /** One message to send. */
+    public static final class Item {
+        final String channelId;
+        final String content;
+
+        public Item(String channelId, String content) {
+            this.channelId = channelId == null ? "" : channelId.trim();
+            this.content = content == null ? "" : content;
+        }
+    }
+
+    /** What happened to one item; {@code messageId} is set on success, {@code error} otherwise. */
+    public static final class Result {
+        public final int index;
+        public final String channelId;
+        public boolean success;
+        public String messageId = "";
+        public String error = "";
+
+        Result(int index, String channelId) {
+            this.index = index;
+            this.channelId = channelId;
+        }
+    }
+
+    private static final int MAX_CHANNELS_IN_FLIGHT = 8;
+
+    private final DiscordRequestHelper requestHelper;
+    private final String tag;
+    private final Listener listener;
+
+    private final Item[] items;
+    private final Result[] results;
+    /** Items still to send, per channel, in the order given. */
+    private final Iterator<ArrayDeque<Integer>> waitingChannels;
+    private int activeChannels;
+    private int finished;
+    private int sent;
+    private int failed;
+    private boolean completed;
+
+    public MessageBatch(DiscordRequestHelper requestHelper, List<Item> items, String tag, Listener listener) {
+        this.requestHelper = requestHelper;
+        this.tag = tag;
+        this.listener = listener;
+        this.items = items.toArray(new Item[0]);
+        this.results = new Result[this.items.length];
+
+        Map<String, ArrayDeque<Integer>> channels = new LinkedHashMap<>();
+        for (int i = 0; i < this.items.length; i++) {
+            Item item = this.items[i];
+            results[i] = new Result(i + 1, item.channelId);
+            if (!DiscordRoute.isSnowflake(item.channelId)) {
+                fail(i, "Invalid channel ID: " + item.channelId);
+                continue;
+            }
+            ArrayDeque<Integer> queue = channels.get(item.channelId);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                channels.put(item.channelId, queue);
+            }
+            queue.add(i);
+        }
+        this.waitingChannels = channels.values().iterator();
+    }
+
+    public void start() {
+        while (activeChannels < MAX_CHANNELS_IN_FLIGHT && waitingChannels.hasNext()) {
+            activeChannels++;
+            sendNext(waitingChannels.next());
+        }
+        if (finished == items.length && !completed) {
+            completed = true;
+            listener.onCompleted(sent, failed, Arrays.asList(results));
+        }
+    }
+
+    private void sendNext(final ArrayDeque<Integer> channel) {
+        if (channel.isEmpty()) {
+            activeChannels--;
+            start();
+            return;
+        }
+        final int index = channel.poll();
+        Item item = items[index];
+        String body;
+        try {
+            body = new JSONObject().put("content", item.content).toString();
+        } catch (Exception e) {
+            fail(index, e.getMessage());
+            sendNext(channel);
+            return;
+        }
+        requestHelper.makeRequestWithBody(
+            "/channels/" + item.channelId + "/messages",
+            "POST",
+            tag,
+            body,
+            null,
+            DiscordRequestHelper.Priority.BULK,
+            new DiscordRequestHelper.ResultCallback() {
+                @Override
+                public void onResult(String tag, DiscordResponse response) {
+                    Result result = results[index];
+                    result.success = true;
+                    try {
+                        result.messageId = response.getJsonObject().optString("id");
+                    } catch (Exception e) {
+                        // Sent all the same; the ID is only a convenience.
+                    }
+                    sent++;
+                    finished++;
+                    sendNext(channel);
+                }
+
+                @Override
+                public void onError(String tag, String error) {
+                    fail(index, error);
+                    sendNext(channel);
+                }
+            });
+    }
+
+    private void fail(int index, String error) {
+        results[index].error = error == null ? "" : error;
+        failed++;
+        finished++;
+    }
+}
@@ -0,0 +1,203 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Deletes any number of messages from one channel.
+ *
+ * Discord's bulk-delete endpoint takes 2 to 100 messages, none older than 14 days. The IDs are
+ * sorted newest first and sent in bulk batches of up to 100 while they are young enough; a batch
+ * is only formed right before it is sent, so messages that age past the limit during a long purge
+ * are not put into a batch that would be rejected. The rest, and a lone leftover message, are
+ * deleted one by one. A few requests are kept in flight; {@link DiscordRequestHelper} paces them
+ * by the channel's rate limit buckets.
+ *
+ * Request callbacks arrive on the UI thread, which is the only thread touching the purge state.
+ */
+public class MessagePurge {
+
+    public interface Listener {
+        void onProgress(int deleted, int failed, int total);
+
+        void onCompleted(int deleted, int failed, int total, List<String> failedIds);
+    }
+
+    /** Discord's epoch, 2015-01-01, in Unix milliseconds. */
+    static final long DISCORD_EPOCH = 1420070400000L;
+
+    private static final int MAX_BULK_SIZE = 100;
+    private static final long BULK_MAX_AGE_MS = 14L * 24 * 60 * 60 * 1000;
+    /** Keeps messages that are about to turn 14 days old out of bulk batches. */
+    private static final long BULK_AGE_MARGIN_MS = 60 * 1000;
+    private static final int MAX_IN_FLIGHT = 4;
+
+    private final DiscordRequestHelper requestHelper;
+    private final String channelId;
+    private final String tag;
+    private final Listener listener;
+
+    private final long[] ids;
+    private final int total;
+    private int next;
+    private int inFlight;
+    private int deleted;
+    private int failed;
+    private final List<String> failedIds = new ArrayList<>();
+
+    public MessagePurge(DiscordRequestHelper requestHelper, String channelId, List<?> messageIds, String tag,
+                        Listener listener) {
+        this.requestHelper = requestHelper;
+        this.channelId = channelId;
+        this.tag = tag;
+        this.listener = listener;
+
+        long[] parsed = new long[messageIds.size()];
+        int count = 0;
+        for (Object messageId : messageIds) {
+            long id = EntityCache.parseSnowflake(messageId.toString().trim());
+            if (id > 0) {
+                parsed[count++] = id;
+            } else {
+                failedIds.add(messageId.toString());
+            }
+        }
+        Arrays.sort(parsed, 0, count);
+        // Newest first, without duplicates: bulk delete rejects a batch that repeats an ID.
+        long[] unique = new long[count];
+        int uniqueCount = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (uniqueCount == 0 || unique[uniqueCount - 1] != parsed[i]) {
+                unique[uniqueCount++] = parsed[i];
+            }
+        }
+        this.ids = Arrays.copyOf(unique, uniqueCount);
+        this.failed = failedIds.size();
+        this.total = uniqueCount + failed;
+    }
+
+    /**
+     * Milliseconds since the Unix epoch at which a snowflake was created.
+     */
+    static long timestampOf(long snowflake) {
+        return (snowflake >>> 22) + DISCORD_EPOCH;
+    }
+
+    public void start() {
+        if (ids.length == 0) {
+            listener.onCompleted(deleted, failed, total, failedIds);
+            return;
+        }
+        pump();
+    }
+
+    private void pump() {
+        while (inFlight < MAX_IN_FLIGHT && next < ids.length) {
+            int from = next;
+            int batchSize = bulkBatchSize();
+            if (batchSize >= 2) {
+                next += batchSize;
+                sendBulk(from, batchSize);
+            } else {
+                next++;
+                sendSingle(from);
+            }
+        }
+        if (inFlight == 0 && next == ids.length) {
+            listener.onCompleted(deleted, failed, total, failedIds);
+        }
+    }
+
+    /**
+     * How many of the next IDs can go into one bulk request, checked against the clock now.
+     */
+    private int bulkBatchSize() {
+        long oldestAllowed = System.currentTimeMillis() - BULK_MAX_AGE_MS + BULK_AGE_MARGIN_MS;
+        int end = Math.min(ids.length, next + MAX_BULK_SIZE);
+        int size = 0;
+        // Sorted newest first, so the first message too old ends the batch.
+        while (next + size < end && timestampOf(ids[next + size]) > oldestAllowed) {
+            size++;
+        }
+        return size;
+    }
+
+    private void sendBulk(final int from, final int count) {
+        JSONArray messages = new JSONArray();
+        for (int i = from; i < from + count; i++) {
+            messages.put(Long.toString(ids[i]));
+        }
+        String body;
+        try {
+            body = new JSONObject().put("messages", messages).toString();
+        } catch (Exception e) {
+            record(from, count, false);
+            return;
+        }
+        inFlight++;
+        requestHelper.makeRequestWithBody(
+            "/channels/" + channelId + "/messages/bulk-delete",
+            "POST",
+            tag,
+            body,
+            null,
+            DiscordRequestHelper.Priority.BULK,
+            new DiscordRequestHelper.ResultCallback() {
+                @Override
+                public void onResult(String tag, DiscordResponse response) {
+                    inFlight--;
+                    record(from, count, true);
+                    pump();
+                }
+
+                @Override
+                public void onError(String tag, String error) {
+                    inFlight--;
+                    record(from, count, false);
+                    pump();
+                }
+            });
+    }
+
+    private void sendSingle(final int index) {
+        inFlight++;
+        requestHelper.makeRequestWithBody(
+            "/channels/" + channelId + "/messages/" + ids[index],
+            "DELETE",
+            tag,
+            null,
+            null,
+            DiscordRequestHelper.Priority.BULK,
+            new DiscordRequestHelper.ResultCallback() {
+                @Override
+                public void onResult(String tag, DiscordResponse response) {
+                    inFlight--;
+                    record(index, 1, true);
+                    pump();
+                }
+
+                @Override
+                public void onError(String tag, String error) {
+                    inFlight--;
+                    record(index, 1, false);
+                    pump();
+                }
+            });
+    }
+
+    private void record(int from, int count, boolean success) {
+        if (success) {
+            deleted += count;
+        } else {
+            failed += count;
+            for (int i = from; i < from + count; i++) {
+                failedIds.add(Long.toString(ids[i]));
+            }
+        }
+        listener.onProgress(deleted, failed, total);
+    }
+}
@@ -0,0 +1,226 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes a member's permissions from the {@link EntityCache}, following Discord's rules.
+ *
+ * Guild level: the guild owner has every permission; otherwise the @everyone role's permissions
+ * are OR-ed with those of the member's roles, and ADMINISTRATOR grants everything. In a channel
+ * the overwrites are then applied in order: @everyone, the member's roles together, the member.
+ * Threads use the overwrites of their parent channel. A member who cannot view the channel has no
+ * permissions in it, and a timed out member keeps only VIEW_CHANNEL and READ_MESSAGE_HISTORY.
+ *
+ * Results are memoized per (guild, member, channel). A memoized result is used only while the
+ * guild's permission version (see {@link EntityCache#getPermissionVersion}) is unchanged and the
+ * cache still holds the same member object, so role, overwrite, owner and member-role updates are
+ * seen by the next lookup while unrelated churn elsewhere leaves the memo alone. A result cut down
+ * by a timeout is used only until the timeout ends.
+ */
+public class PermissionCalculator {
+
+    private static final int MAX_MEMOIZED = 4096;
+
+    /** All a timed out member keeps; the owner and administrators can't be timed out. */
+    private static final long TIMED_OUT_PERMISSIONS =
+        DiscordPermissions.VIEW_CHANNEL | DiscordPermissions.READ_MESSAGE_HISTORY;
+
+    private static final PermissionCalculator shared = new PermissionCalculator(EntityCache.shared());
+
+    public static PermissionCalculator shared() {
+        return shared;
+    }
+
+    /** What a computation was missing, when it returns null. */
+    public enum Missing {
+        GUILD, MEMBER, CHANNEL, ROLE
+    }
+
+    private static final class Key {
+        final long guildId;
+        final long userId;
+        final long channelId;
+
+        Key(long guildId, long userId, long channelId) {
+            this.guildId = guildId;
+            this.userId = userId;
+            this.channelId = channelId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return key.guildId == guildId && key.userId == userId && key.channelId == channelId;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = (int) (guildId ^ (guildId >>> 32));
+            hash = hash * 31 + (int) (userId ^ (userId >>> 32));
+            return hash * 31 + (int) (channelId ^ (channelId >>> 32));
+        }
+    }
+
+    private static final class Memo {
+        final long version;
+        final EntityCache.Member member;
+        final long permissions;
+        final long validUntil;
+
+        Memo(long version, EntityCache.Member member, long permissions, long validUntil) {
+            this.version = version;
+            this.member = member;
+            this.permissions = permissions;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private final EntityCache cache;
+    private final Map<Key, Memo> memo = new LinkedHashMap<Key, Memo>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Memo> eldest) {
+            return size() > MAX_MEMOIZED;
+        }
+    };
+
+    public PermissionCalculator(EntityCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Permissions of a member in a guild, or in a channel when channelId is not 0.
+     *
+     * @return the permission bitmask, or null if something needed is not cached
+     */
+    public Long compute(long guildId, long userId, long channelId) {
+        return compute(guildId, userId, channelId, null);
+    }
+
+    /**
+     * Like {@link #compute(long, long, long)}, reporting in {@code missing[0]} what was not cached.
+     */
+    public Long compute(long guildId, long userId, long channelId, Missing[] missing) {
+        Key key = new Key(guildId, userId, channelId);
+        // Read before calculating, so a change made meanwhile leaves a result that never matches.
+        long version = cache.getPermissionVersion(guildId);
+        EntityCache.Member member = cache.getMember(guildId, userId);
+        long now = System.currentTimeMillis();
+        synchronized (memo) {
+            Memo memoized = memo.get(key);
+            if (memoized != null && memoized.version == version && memoized.member == member
+                    && now < memoized.validUntil) {
+                return memoized.permissions;
+            }
+        }
+
+        Long permissions = calculate(guildId, userId, member, channelId, now, missing);
+        if (permissions != null) {
+            long validUntil = member.timedOutUntil > now ? member.timedOutUntil : Long.MAX_VALUE;
+            synchronized (memo) {
+                memo.put(key, new Memo(version, member, permissions, validUntil));
+            }
+        }
+        return permissions;
+    }
+
+    private Long calculate(long guildId, long userId, EntityCache.Member member, long channelId, long now,
+                           Missing[] missing) {
+        EntityCache.Guild guild = cache.getGuild(guildId);
+        if (guild == null) {
+            return missing(missing, Missing.GUILD);
+        }
+        if (member == null) {
+            return missing(missing, Missing.MEMBER);
+        }
+        EntityCache.Channel channel = null;
+        if (channelId != 0) {
+            channel = cache.getChannel(channelId);
+            if (channel != null && isThread(channel.type)) {
+                channel = cache.getChannel(channel.parentId);
+            }
+            if (channel == null) {
+                return missing(missing, Missing.CHANNEL);
+            }
+        }
+
+        if (guild.ownerId == userId) {
+            return DiscordPermissions.ALL;
+        }
+
+        // The @everyone role has the guild's id.
+        EntityCache.Role everyone = cache.getRole(guildId);
+        if (everyone == null) {
+            return missing(missing, Missing.ROLE);
+        }
+        long permissions = everyone.permissions;
+        for (long roleId : member.roleIds) {
+            EntityCache.Role role = cache.getRole(roleId);
+            if (role == null) {
+                return missing(missing, Missing.ROLE);
+            }
+            permissions |= role.permissions;
+        }
+        if ((permissions & DiscordPermissions.ADMINISTRATOR) != 0) {
+            return DiscordPermissions.ALL;
+        }
+        boolean timedOut = member.timedOutUntil > now;
+        if (channel == null) {
+            return timedOut ? permissions & TIMED_OUT_PERMISSIONS : permissions;
+        }
+
+        long roleAllow = 0;
+        long roleDeny = 0;
+        EntityCache.Overwrite memberOverwrite = null;
+        for (EntityCache.Overwrite overwrite : channel.overwrites) {
+            if (overwrite.type == EntityCache.Overwrite.MEMBER) {
+                if (overwrite.id == userId) {
+                    memberOverwrite = overwrite;
+                }
+            } else if (overwrite.id == guildId) {
+                permissions &= ~overwrite.deny;
+                permissions |= overwrite.allow;
+            } else if (hasRole(member, overwrite.id)) {
+                roleAllow |= overwrite.allow;
+                roleDeny |= overwrite.deny;
+            }
+        }
+        // @everyone was applied in the loop; roles and then the member follow it.
+        permissions &= ~roleDeny;
+        permissions |= roleAllow;
+        if (memberOverwrite != null) {
+            permissions &= ~memberOverwrite.deny;
+            permissions |= memberOverwrite.allow;
+        }
+        if ((permissions & DiscordPermissions.VIEW_CHANNEL) == 0) {
+            return 0L;
+        }
+        return timedOut ? permissions & TIMED_OUT_PERMISSIONS : permissions;
+    }
+
+    private static boolean hasRole(EntityCache.Member member, long roleId) {
+        for (long id : member.roleIds) {
+            if (id == roleId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isThread(int channelType) {
+        // ANNOUNCEMENT_THREAD, PUBLIC_THREAD and PRIVATE_THREAD
+        return channelType == 10 || channelType == 11 || channelType == 12;
+    }
+
+    private static Long missing(Missing[] missing, Missing what) {
+        if (missing != null && missing.length > 0) {
+            missing[0] = what;
+        }
+        return null;
+    }
+}
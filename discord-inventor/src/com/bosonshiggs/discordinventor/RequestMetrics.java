@@ -0,0 +1,377 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.Handler;
+
+import com.google.appinventor.components.runtime.util.YailDictionary;
+
+/**
+ * Counters and latency histograms for REST calls, kept per route template such as
+ * "POST /channels/{channel_id}/messages".
+ *
+ * Recording is lock-free: a request looks up its {@link Route} once and then only touches
+ * atomics. Latency goes into a log-linear histogram (16 sub-buckets per power of two, so any
+ * percentile is within about 6% of the true value) with a fixed number of buckets, so memory
+ * does not grow with traffic. A snapshot reads the counters one by one while requests keep
+ * running, so its numbers may be off by the few requests that finished in between.
+ *
+ * There is one set of metrics for all components, whichever API root each one talks to.
+ */
+final class RequestMetrics {
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong interactionResponses = new AtomicLong();
+    private final AtomicLong deadlineMisses = new AtomicLong();
+    private final AtomicLong autoDefers = new AtomicLong();
+
+    /**
+     * Returns the counters for a route, creating them on first use.
+     */
+    Route route(DiscordRoute route) {
+        String key = route.routeKey();
+        Route stats = routes.get(key);
+        if (stats == null) {
+            Route created = new Route();
+            stats = routes.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /** Counts a request turned away because the queue was full. */
+    void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    /** Counts a GET answered from the response cache without a request. */
+    void cacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    /** Counts a GET that shared the answer of an identical one already on the wire. */
+    void coalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    /** Counts an interaction response as it goes out, and whether its 3 seconds were already up. */
+    void interactionResponse(boolean late) {
+        interactionResponses.incrementAndGet();
+        if (late) {
+            deadlineMisses.incrementAndGet();
+        }
+    }
+
+    /** Counts an interaction deferred automatically because the app had not answered in time. */
+    void autoDeferred() {
+        autoDefers.incrementAndGet();
+    }
+
+    Snapshot snapshot(int pending) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.inFlight = inFlight.get();
+        snapshot.pending = pending;
+        snapshot.rejected = rejected.get();
+        snapshot.cacheHits = cacheHits.get();
+        snapshot.coalesced = coalesced.get();
+        snapshot.interactionResponses = interactionResponses.get();
+        snapshot.deadlineMisses = deadlineMisses.get();
+        snapshot.autoDefers = autoDefers.get();
+        List<String> keys = new ArrayList<>(routes.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            Route route = routes.get(key);
+            if (route == null) {
+                continue;
+            }
+            RouteSnapshot stats = route.snapshot(key);
+            snapshot.requests += stats.requests;
+            snapshot.errors += stats.errors;
+            snapshot.rateLimited += stats.rateLimited;
+            snapshot.retries += stats.retries;
+            snapshot.bytesSent += stats.bytesSent;
+            snapshot.bytesReceived += stats.bytesReceived;
+            snapshot.routes.add(stats);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets every route and counter. Requests on the wire are still counted as in flight.
+     */
+    void reset() {
+        routes.clear();
+        rejected.set(0);
+        cacheHits.set(0);
+        coalesced.set(0);
+        interactionResponses.set(0);
+        deadlineMisses.set(0);
+        autoDefers.set(0);
+    }
+
+    /**
+     * The counters of one route. Each HTTP attempt is recorded, so a request retried after a 429
+     * counts once per attempt.
+     */
+    final class Route {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(Histogram.BUCKETS);
+
+        void started() {
+            inFlight.incrementAndGet();
+            RequestMetrics.this.inFlight.incrementAndGet();
+        }
+
+        /**
+         * Records a finished attempt. A status of 0 means the request failed before Discord answered.
+         */
+        void finished(long elapsedNanos, int status, long sent, long received) {
+            RequestMetrics.this.inFlight.decrementAndGet();
+            inFlight.decrementAndGet();
+            requests.incrementAndGet();
+            if (status == 429) {
+                rateLimited.incrementAndGet();
+            } else if (status < 200 || status >= 300) {
+                errors.incrementAndGet();
+            }
+            if (sent > 0) {
+                bytesSent.addAndGet(sent);
+            }
+            if (received > 0) {
+                bytesReceived.addAndGet(received);
+            }
+
+            long micros = Math.max(0, elapsedNanos / 1000);
+            totalMicros.addAndGet(micros);
+            histogram.incrementAndGet(Histogram.indexOf(micros));
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+        }
+
+        /** Counts an attempt that is sent again, after a 429 or a token change. */
+        void retried() {
+            retries.incrementAndGet();
+        }
+
+        RouteSnapshot snapshot(String key) {
+            RouteSnapshot snapshot = new RouteSnapshot();
+            snapshot.route = key;
+            snapshot.inFlight = inFlight.get();
+            snapshot.requests = requests.get();
+            snapshot.errors = errors.get();
+            snapshot.rateLimited = rateLimited.get();
+            snapshot.retries = retries.get();
+            snapshot.bytesSent = bytesSent.get();
+            snapshot.bytesReceived = bytesReceived.get();
+
+            long[] counts = new long[Histogram.BUCKETS];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = histogram.get(i);
+                total += counts[i];
+            }
+            long max = maxMicros.get();
+            snapshot.meanMs = total == 0 ? 0 : totalMicros.get() / 1e3 / total;
+            snapshot.p50Ms = Histogram.percentile(counts, total, 0.50, max) / 1e3;
+            snapshot.p90Ms = Histogram.percentile(counts, total, 0.90, max) / 1e3;
+            snapshot.p99Ms = Histogram.percentile(counts, total, 0.99, max) / 1e3;
+            snapshot.maxMs = max / 1e3;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Bucket layout of the latency histogram, in microseconds. Values below 16 get a bucket each;
+     * above that every power of two is split into 16 equal buckets. Anything past about 19 hours
+     * lands in the last bucket.
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_EXPONENT = 35;
+        static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+        private Histogram() {
+        }
+
+        static int indexOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent > MAX_EXPONENT) {
+                return BUCKETS - 1;
+            }
+            int shift = exponent - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        /** The largest value that falls in the bucket. */
+        static long highestValueAt(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        static long percentile(long[] counts, long total, double fraction, long max) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * fraction));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueAt(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Totals over all routes plus one entry per route, sorted by route.
+     */
+    static final class Snapshot {
+        int inFlight;
+        int pending;
+        long rejected;
+        long cacheHits;
+        long coalesced;
+        long interactionResponses;
+        long deadlineMisses;
+        long autoDefers;
+        long requests;
+        long errors;
+        long rateLimited;
+        long retries;
+        long bytesSent;
+        long bytesReceived;
+        final List<RouteSnapshot> routes = new ArrayList<>();
+
+        YailDictionary toDictionary() {
+            YailDictionary result = new YailDictionary();
+            result.put("InFlight", inFlight);
+            result.put("Pending", pending);
+            result.put("Rejected", rejected);
+            result.put("CacheHits", cacheHits);
+            result.put("Coalesced", coalesced);
+            result.put("InteractionResponses", interactionResponses);
+            result.put("DeadlineMisses", deadlineMisses);
+            result.put("AutoDefers", autoDefers);
+            result.put("Requests", requests);
+            result.put("Errors", errors);
+            result.put("RateLimited", rateLimited);
+            result.put("Retries", retries);
+            result.put("BytesSent", bytesSent);
+            result.put("BytesReceived", bytesReceived);
+            YailDictionary perRoute = new YailDictionary();
+            for (RouteSnapshot route : routes) {
+                YailDictionary stats = new YailDictionary();
+                stats.put("InFlight", route.inFlight);
+                stats.put("Requests", route.requests);
+                stats.put("Errors", route.errors);
+                stats.put("RateLimited", route.rateLimited);
+                stats.put("Retries", route.retries);
+                stats.put("BytesSent", route.bytesSent);
+                stats.put("BytesReceived", route.bytesReceived);
+                stats.put("MeanMs", route.meanMs);
+                stats.put("P50Ms", route.p50Ms);
+                stats.put("P90Ms", route.p90Ms);
+                stats.put("P99Ms", route.p99Ms);
+                stats.put("MaxMs", route.maxMs);
+                perRoute.put(route.route, stats);
+            }
+            result.put("Routes", perRoute);
+            return result;
+        }
+    }
+
+    /**
+     * Calls back on the UI thread every few seconds, for a component's MetricsSnapshot event.
+     * Changing the interval drops the pending tick, so only one chain of ticks runs at a time.
+     */
+    static final class Ticker {
+        interface Listener {
+            void onTick();
+        }
+
+        private final Handler uiHandler;
+        private final Listener listener;
+        private int intervalSeconds;
+        private int generation;
+
+        Ticker(Handler uiHandler, Listener listener) {
+            this.uiHandler = uiHandler;
+            this.listener = listener;
+        }
+
+        /** 0 stops the ticks. Call on the UI thread. */
+        void setIntervalSeconds(int seconds) {
+            intervalSeconds = Math.max(0, seconds);
+            schedule(++generation);
+        }
+
+        int getIntervalSeconds() {
+            return intervalSeconds;
+        }
+
+        private void schedule(final int scheduled) {
+            if (intervalSeconds <= 0) {
+                return;
+            }
+            uiHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (scheduled != generation) {
+                        return;
+                    }
+                    listener.onTick();
+                    schedule(scheduled);
+                }
+            }, intervalSeconds * 1000L);
+        }
+    }
+
+    static final class RouteSnapshot {
+        String route;
+        int inFlight;
+        long requests;
+        long errors;
+        long rateLimited;
+        long retries;
+        long bytesSent;
+        long bytesReceived;
+        double meanMs;
+        double p50Ms;
+        double p90Ms;
+        double p99Ms;
+        double maxMs;
+    }
+}
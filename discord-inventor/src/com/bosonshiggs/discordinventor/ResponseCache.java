@@ -0,0 +1,259 @@
+package com.bosonshiggs.discordinventor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONObject;
+
+/**
+ * Short-lived cache of GET responses, shared by every component.
+ *
+ * Only routes listed in {@link #TTL_MS} are kept, each for its own time to live, and the least
+ * recently used entry goes once {@link #setMaxEntries} is reached. While a GET is on the wire,
+ * identical GETs join it instead of sending their own ("single flight"); this applies to every
+ * GET, cached route or not.
+ *
+ * Entries are dropped when the app changes the same channel or guild through the API, and when a
+ * Gateway event says the data changed. A response that was in flight while its channel or guild
+ * was invalidated is delivered but not stored, since it may already be out of date.
+ *
+ * Entries are keyed by full URL, so components pointed at different API roots never share a
+ * response; invalidation by channel or guild ID still applies to every root.
+ */
+final class ResponseCache {
+
+    /** Time to live per route template. Routes not listed here are never stored. */
+    private static final Map<String, Long> TTL_MS = new HashMap<>();
+
+    static {
+        TTL_MS.put("/channels/{channel_id}", 60000L);
+        TTL_MS.put("/channels/{channel_id}/messages", 5000L);
+        TTL_MS.put("/channels/{channel_id}/messages/{id}", 30000L);
+        TTL_MS.put("/channels/{channel_id}/pins", 30000L);
+        TTL_MS.put("/channels/{channel_id}/threads/active", 30000L);
+        TTL_MS.put("/guilds/{guild_id}", 60000L);
+        TTL_MS.put("/guilds/{guild_id}/bans", 60000L);
+        TTL_MS.put("/guilds/{guild_id}/members/{id}", 60000L);
+    }
+
+    /** Gateway events that make cached responses stale. */
+    public static final Set<String> EVENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "MESSAGE_CREATE", "MESSAGE_UPDATE", "MESSAGE_DELETE", "MESSAGE_DELETE_BULK", "CHANNEL_PINS_UPDATE",
+        "CHANNEL_UPDATE", "CHANNEL_DELETE", "THREAD_CREATE", "THREAD_UPDATE", "THREAD_DELETE",
+        "GUILD_UPDATE", "GUILD_DELETE", "GUILD_ROLE_CREATE", "GUILD_ROLE_UPDATE", "GUILD_ROLE_DELETE",
+        "GUILD_BAN_ADD", "GUILD_BAN_REMOVE", "GUILD_MEMBER_UPDATE", "GUILD_MEMBER_REMOVE")));
+
+    static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final class Cached {
+        final DiscordRoute route;
+        final DiscordResponse response;
+        final long expiresAt;
+
+        Cached(DiscordRoute route, DiscordResponse response, long expiresAt) {
+            this.route = route;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** A GET on the wire and the identical requests waiting for its answer. */
+    static final class Flight<T> {
+        final String key;
+        final DiscordRoute route;
+        final List<T> waiters = new ArrayList<>();
+        /** Set when something the response covers was invalidated while it was on the wire. */
+        boolean stale;
+
+        Flight(String key, DiscordRoute route) {
+            this.key = key;
+            this.route = route;
+        }
+    }
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final Map<String, Flight<?>> flights = new HashMap<>();
+
+    synchronized void setMaxEntries(int max) {
+        maxEntries = Math.max(0, max);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a fresh cached response, or null.
+     */
+    synchronized DiscordResponse get(String key, long now) {
+        Cached entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now >= entry.expiresAt) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.response;
+    }
+
+    /**
+     * Adds the request to the flight already on the wire for the key and returns null, or opens a
+     * new flight with the request as its first waiter and returns it; the caller then sends it.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> Flight<T> join(String key, DiscordRoute route, T request) {
+        Flight<T> flight = (Flight<T>) flights.get(key);
+        if (flight != null) {
+            flight.waiters.add(request);
+            return null;
+        }
+        flight = new Flight<>(key, route);
+        flight.waiters.add(request);
+        flights.put(key, flight);
+        return flight;
+    }
+
+    /**
+     * Closes the flight and returns everyone waiting on it. A successful response is stored when
+     * its route is cacheable and nothing was invalidated while it was in flight.
+     */
+    synchronized <T> List<T> land(Flight<T> flight, DiscordResponse response, long now) {
+        flights.remove(flight.key);
+        if (response != null && response.isSuccessful() && !flight.stale && maxEntries > 0) {
+            Long ttl = TTL_MS.get(flight.route.template);
+            if (ttl != null) {
+                entries.put(flight.key, new Cached(flight.route, response, now + ttl));
+            }
+        }
+        return flight.waiters;
+    }
+
+    /**
+     * Drops every entry for the channel or guild whose route template starts with the prefix,
+     * or every entry for it when the prefix is null.
+     */
+    synchronized void invalidate(String majorParameter, String templatePrefix) {
+        if (majorParameter == null || majorParameter.isEmpty()) {
+            return;
+        }
+        Iterator<Cached> values = entries.values().iterator();
+        while (values.hasNext()) {
+            if (matches(values.next().route, majorParameter, templatePrefix)) {
+                values.remove();
+            }
+        }
+        for (Flight<?> flight : flights.values()) {
+            if (matches(flight.route, majorParameter, templatePrefix)) {
+                flight.stale = true;
+            }
+        }
+    }
+
+    private static boolean matches(DiscordRoute route, String majorParameter, String templatePrefix) {
+        return majorParameter.equals(route.majorParameter)
+            && (templatePrefix == null || route.template.startsWith(templatePrefix));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        for (Flight<?> flight : flights.values()) {
+            flight.stale = true;
+        }
+    }
+
+    synchronized boolean isIdle() {
+        return entries.isEmpty() && flights.isEmpty();
+    }
+
+    /** Reads a string field of an event payload, or returns null or "" if it is missing. */
+    private interface Fields {
+        String get(String key);
+    }
+
+    /**
+     * Drops the entries a Gateway event makes stale.
+     */
+    void onGatewayEvent(String eventType, JSONObject data) {
+        invalidateFor(eventType, key -> data.optString(key));
+    }
+
+    /**
+     * Drops the entries an event the filter skipped makes stale, reading the IDs from the raw
+     * frame. Frames are only scanned while something is cached or in flight, so a filtered bot
+     * with an empty cache keeps skipping them without any work.
+     */
+    void onGatewayFrame(String eventType, String frame) {
+        if (!EVENT_TYPES.contains(eventType) || isIdle()) {
+            return;
+        }
+        invalidateFor(eventType, key -> GatewayFrames.peekData(frame, key));
+    }
+
+    private void invalidateFor(String eventType, Fields data) {
+        switch (eventType) {
+            case "MESSAGE_CREATE":
+            case "MESSAGE_UPDATE":
+            case "MESSAGE_DELETE":
+            case "MESSAGE_DELETE_BULK":
+                invalidate(data.get("channel_id"), "/channels/{channel_id}/messages");
+                break;
+            case "CHANNEL_PINS_UPDATE":
+                invalidate(data.get("channel_id"), "/channels/{channel_id}/pins");
+                break;
+            case "CHANNEL_UPDATE":
+            case "CHANNEL_DELETE":
+                invalidate(data.get("id"), null);
+                break;
+            case "THREAD_CREATE":
+            case "THREAD_UPDATE":
+            case "THREAD_DELETE":
+                invalidate(data.get("parent_id"), "/channels/{channel_id}/threads");
+                invalidate(data.get("id"), null);
+                break;
+            case "GUILD_UPDATE":
+            case "GUILD_DELETE":
+                invalidate(data.get("id"), null);
+                break;
+            case "GUILD_ROLE_CREATE":
+            case "GUILD_ROLE_UPDATE":
+            case "GUILD_ROLE_DELETE":
+                // Roles are part of the guild object and decide what members may do.
+                invalidate(data.get("guild_id"), null);
+                break;
+            case "GUILD_BAN_ADD":
+            case "GUILD_BAN_REMOVE":
+                invalidate(data.get("guild_id"), "/guilds/{guild_id}/bans");
+                break;
+            case "GUILD_MEMBER_UPDATE":
+            case "GUILD_MEMBER_REMOVE":
+                invalidate(data.get("guild_id"), "/guilds/{guild_id}/members");
+                break;
+            default:
+                break;
+        }
+    }
+}
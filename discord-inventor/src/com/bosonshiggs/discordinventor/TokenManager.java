@@ -1,20 +1,86 @@
 package com.bosonshiggs.discordinventor;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import android.content.Context;
 import android.content.SharedPreferences;
 
+/**
+ * Holds the bot token for every Discord component.
+ *
+ * The token lives in memory, together with the Authorization header built from it, so a request
+ * only reads a volatile field. SharedPreferences is read once, the first time the token is needed,
+ * and written in the background with apply() so setting the token never blocks the UI thread.
+ */
 public class TokenManager {
+    private static final String PREFERENCES = "TokenManager";
+    private static final String TOKEN_KEY = "botToken";
+
+    /** A token and the header value sent with it, swapped as one. */
+    static final class Credentials {
+        final String token;
+        final String authorization;
+
+        Credentials(String token) {
+            this.token = token;
+            this.authorization = "Bot " + token;
+        }
+    }
+
+    /** Told when the token changes, on the thread that changed it. */
+    interface Listener {
+        void onTokenChanged(Credentials credentials);
+    }
+
+    private static final Object lock = new Object();
+    private static volatile Credentials credentials;
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
     protected void setBotToken(Context context, String token) {
-        // Store the bot token in TinyDb
-        SharedPreferences sharedPreferences = context.getSharedPreferences("TokenManager", Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString("botToken", token);
-        editor.commit();
+        String value = token == null ? "" : token;
+        Credentials previous;
+        Credentials updated = new Credentials(value);
+        synchronized (lock) {
+            previous = credentials;
+            credentials = updated;
+        }
+        SharedPreferences sharedPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        sharedPreferences.edit().putString(TOKEN_KEY, value).apply();
+
+        if (previous == null || !previous.token.equals(value)) {
+            for (Listener listener : listeners) {
+                listener.onTokenChanged(updated);
+            }
+        }
     }
 
     protected String getBotToken(Context context) {
-        // Retrieve the bot token from TinyDb
-        SharedPreferences sharedPreferences = context.getSharedPreferences("TokenManager", Context.MODE_PRIVATE);
-        return sharedPreferences.getString("botToken", "");
+        return getCredentials(context).token;
+    }
+
+    /**
+     * The current token and its Authorization header, loaded from SharedPreferences on first use.
+     */
+    Credentials getCredentials(Context context) {
+        Credentials current = credentials;
+        if (current != null) {
+            return current;
+        }
+        synchronized (lock) {
+            if (credentials == null) {
+                SharedPreferences sharedPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+                credentials = new Credentials(sharedPreferences.getString(TOKEN_KEY, ""));
+            }
+            return credentials;
+        }
+    }
+
+    static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(Listener listener) {
+        listeners.remove(listener);
     }
 }
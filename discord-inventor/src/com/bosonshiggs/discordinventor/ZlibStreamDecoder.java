@@ -0,0 +1,123 @@
+package com.bosonshiggs.discordinventor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates a Gateway connection opened with compress=zlib-stream.
+ *
+ * The whole connection is one zlib stream, so a single Inflater lives as long as the socket.
+ * A payload may span several binary frames; it is complete when the buffered data ends with the
+ * Z_SYNC_FLUSH marker 00 00 FF FF. Input and output buffers are reused between payloads and only
+ * shrunk back after an unusually large one (such as a big GUILD_CREATE).
+ */
+public class ZlibStreamDecoder {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int INITIAL_INPUT_SIZE = 8 * 1024;
+    private static final int INITIAL_OUTPUT_SIZE = 32 * 1024;
+    private static final int RETAINED_BUFFER_LIMIT = 1024 * 1024;
+
+    private Inflater inflater = new Inflater();
+    private byte[] input = new byte[INITIAL_INPUT_SIZE];
+    private int inputLength;
+    private byte[] output = new byte[INITIAL_OUTPUT_SIZE];
+    private boolean closed;
+
+    private volatile long compressedBytes;
+    private volatile long inflatedBytes;
+
+    /**
+     * Adds one binary frame.
+     *
+     * @return the decoded JSON payload, or null while the payload is still incomplete or after
+     *         {@link #close}
+     */
+    public String feed(ByteBuffer frame) throws DataFormatException {
+        if (closed) {
+            return null;
+        }
+        int length = frame.remaining();
+        if (inputLength + length > input.length) {
+            byte[] grown = new byte[Math.max(input.length * 2, inputLength + length)];
+            System.arraycopy(input, 0, grown, 0, inputLength);
+            input = grown;
+        }
+        frame.get(input, inputLength, length);
+        inputLength += length;
+        compressedBytes += length;
+
+        if (!endsWithSyncFlush()) {
+            return null;
+        }
+
+        inflater.setInput(input, 0, inputLength);
+        int outputLength = 0;
+        do {
+            if (outputLength == output.length) {
+                byte[] grown = new byte[output.length * 2];
+                System.arraycopy(output, 0, grown, 0, outputLength);
+                output = grown;
+            }
+            outputLength += inflater.inflate(output, outputLength, output.length - outputLength);
+            if (inflater.needsDictionary()) {
+                throw new DataFormatException("zlib-stream requested a preset dictionary");
+            }
+            // Discord never ends the stream. If a peer does, inflate() returns 0 from here on
+            // without asking for input; fail so the connection resumes on a fresh stream.
+            if (inflater.finished()) {
+                throw new DataFormatException("zlib-stream ended");
+            }
+        } while (!inflater.needsInput() || outputLength == output.length);
+
+        inputLength = 0;
+        inflatedBytes += outputLength;
+        String payload = new String(output, 0, outputLength, UTF_8);
+
+        if (input.length > RETAINED_BUFFER_LIMIT) {
+            input = new byte[INITIAL_INPUT_SIZE];
+        }
+        if (output.length > RETAINED_BUFFER_LIMIT) {
+            output = new byte[INITIAL_OUTPUT_SIZE];
+        }
+        return payload;
+    }
+
+    private boolean endsWithSyncFlush() {
+        return inputLength >= 4
+                && input[inputLength - 4] == 0x00
+                && input[inputLength - 3] == 0x00
+                && input[inputLength - 2] == (byte) 0xFF
+                && input[inputLength - 1] == (byte) 0xFF;
+    }
+
+    /**
+     * Starts a fresh zlib stream for a new socket. The byte counters keep running.
+     */
+    public void reset() {
+        inflater.end();
+        inflater = new Inflater();
+        inputLength = 0;
+        closed = false;
+    }
+
+    /**
+     * Releases the native inflater. Frames still arriving from the closing socket are ignored.
+     */
+    public void close() {
+        inflater.end();
+        inputLength = 0;
+        closed = true;
+    }
+
+    /** Bytes received from the socket. */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /** Bytes of JSON after inflating. */
+    public long getInflatedBytes() {
+        return inflatedBytes;
+    }
+}